@@ -0,0 +1,358 @@
+package edu.umass.cs.MHLClient.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates a {@code SensorFieldAccessor} for every concrete {@code SensorReading} subclass
+ * with {@code @SensorField} fields, so that the readings are encoded by plain field reads
+ * rather than by reflection, which is slow on older Dalvik runtimes. The accessor is placed
+ * in the package of the reading class and named after its binary name with the suffix
+ * {@code _SensorFieldAccessor}.
+ * <br><br>
+ * Fields of an unsupported type are reported as errors, unless the class defines its own
+ * JSON encoding. Private fields, and fields or classes the generated code cannot otherwise
+ * access, are reported as warnings; such classes are left to the reflective encoder.
+ *
+ * @author Sean Noran
+ */
+@SupportedAnnotationTypes("*")
+public class SensorFieldProcessor extends AbstractProcessor {
+
+    private static final String SENSOR_READING = "edu.umass.cs.MHLClient.sensors.SensorReading";
+    private static final String SENSOR_FIELD = "edu.umass.cs.MHLClient.sensors.SensorField";
+    private static final String ACCESSOR = "edu.umass.cs.MHLClient.sensors.SensorFieldAccessor";
+    private static final String ENCODER = "edu.umass.cs.MHLClient.sensors.SensorReadingEncoder";
+    private static final String SUFFIX = "_SensorFieldAccessor";
+
+    /** An annotated field and how it is written. **/
+    private static class Property {
+        final VariableElement field;
+        final TypeElement declaringClass;
+        final String key;
+        final TypeMirror type;
+
+        Property(VariableElement field, TypeElement declaringClass, String key, TypeMirror type){
+            this.field = field;
+            this.declaringClass = declaringClass;
+            this.key = key;
+            this.type = type;
+        }
+
+        boolean isChannel(){
+            switch (type.getKind()) {
+                case BYTE: case SHORT: case INT: case LONG: case FLOAT: case DOUBLE: return true;
+                default: return false;
+            }
+        }
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements()))
+            processType(type);
+        //other processors may handle the same annotations
+        return false;
+    }
+
+    private void processType(TypeElement type){
+        for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements()))
+            processType(nested);
+        if (type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.ABSTRACT))
+            return;
+
+        List<TypeElement> hierarchy = getHierarchy(type);
+        if (hierarchy == null)
+            return;
+        boolean customJSON = definesJSON(hierarchy);
+        List<Property> properties = new ArrayList<>();
+        boolean accessible = isAccessible(type, true);
+        boolean valid = true;
+        for (TypeElement c : hierarchy) {
+            for (VariableElement field : ElementFilter.fieldsIn(c.getEnclosedElements())) {
+                AnnotationMirror annotation = getSensorField(field);
+                if (annotation == null || field.getModifiers().contains(Modifier.STATIC))
+                    continue;
+                if (!isSupported(field.asType())) {
+                    //the runtime encoder skips these fields as well when the class writes its own JSON
+                    if (!customJSON) {
+                        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                                "Unsupported type of @SensorField: " + field.asType(), field);
+                        valid = false;
+                    }
+                    continue;
+                }
+                if (accessible && !isAccessible(field, c, getPackage(type))) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                            "@SensorField " + c.getSimpleName() + "." + field.getSimpleName() + " is not accessible from generated code, "
+                                    + type.getSimpleName() + " will be encoded by reflection", type);
+                    accessible = false;
+                }
+                properties.add(new Property(field, c, getKey(annotation, field), field.asType()));
+            }
+        }
+        if (!valid || properties.isEmpty())
+            return;
+        if (!accessible) {
+            if (!isAccessible(type, true))
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                        type.getSimpleName() + " is not accessible from generated code and will be encoded by reflection", type);
+            return;
+        }
+        try {
+            write(type, properties);
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Could not write the accessor of " + type.getQualifiedName() + ": " + e.getMessage(), type);
+        }
+    }
+
+    /**
+     * Gets the classes between {@code SensorReading} and the given class, superclasses first.
+     * @return the classes, or null if the class does not extend {@code SensorReading}.
+     */
+    private List<TypeElement> getHierarchy(TypeElement type){
+        List<TypeElement> hierarchy = new ArrayList<>();
+        for (TypeElement c = type; c != null; c = getSuperclass(c)) {
+            if (c.getQualifiedName().contentEquals(SENSOR_READING)) {
+                Collections.reverse(hierarchy);
+                return hierarchy;
+            }
+            hierarchy.add(c);
+        }
+        return null;
+    }
+
+    private TypeElement getSuperclass(TypeElement type){
+        TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED)
+            return null;
+        return (TypeElement) processingEnv.getTypeUtils().asElement(superclass);
+    }
+
+    /**
+     * Indicates whether any of the classes overrides {@code toJSONObject()} or {@code toDataJSONObject()}.
+     */
+    private static boolean definesJSON(List<TypeElement> hierarchy){
+        for (TypeElement c : hierarchy) {
+            for (ExecutableElement method : ElementFilter.methodsIn(c.getEnclosedElements())) {
+                String name = method.getSimpleName().toString();
+                if ((name.equals("toJSONObject") || name.equals("toDataJSONObject")) && method.getParameters().isEmpty())
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private static AnnotationMirror getSensorField(Element element){
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            Element type = annotation.getAnnotationType().asElement();
+            if (((TypeElement) type).getQualifiedName().contentEquals(SENSOR_FIELD))
+                return annotation;
+        }
+        return null;
+    }
+
+    private static String getKey(AnnotationMirror annotation, VariableElement field){
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals("value")) {
+                String key = (String) entry.getValue().getValue();
+                if (!key.isEmpty())
+                    return key;
+            }
+        }
+        return field.getSimpleName().toString();
+    }
+
+    /**
+     * Indicates whether the type is one the encoder can write, see {@code SensorReadingEncoder}.
+     */
+    private static boolean isSupported(TypeMirror type){
+        switch (type.getKind()) {
+            case BOOLEAN: case BYTE: case SHORT: case INT: case LONG: case FLOAT: case DOUBLE:
+                return true;
+            case ARRAY:
+                switch (((ArrayType) type).getComponentType().getKind()) {
+                    case BYTE: case SHORT: case INT: case LONG: case FLOAT: case DOUBLE: return true;
+                    default: return false;
+                }
+            case DECLARED:
+                return type.toString().equals("java.lang.String");
+            default:
+                return false;
+        }
+    }
+
+    private PackageElement getPackage(Element element){
+        return processingEnv.getElementUtils().getPackageOf(element);
+    }
+
+    /**
+     * Indicates whether generated code can refer to the class and its enclosing classes.
+     * @param samePackage whether the generated code is in the package of the class.
+     */
+    private static boolean isAccessible(TypeElement type, boolean samePackage){
+        for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            Set<Modifier> modifiers = e.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE))
+                return false;
+            if (!samePackage && !modifiers.contains(Modifier.PUBLIC))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Indicates whether code in the given package can read the field through a cast to its declaring class.
+     */
+    private boolean isAccessible(VariableElement field, TypeElement declaringClass, PackageElement from){
+        boolean samePackage = getPackage(declaringClass).equals(from);
+        Set<Modifier> modifiers = field.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE) || (!samePackage && !modifiers.contains(Modifier.PUBLIC)))
+            return false;
+        return isAccessible(declaringClass, samePackage);
+    }
+
+    private void write(TypeElement type, List<Property> properties) throws IOException {
+        PackageElement pkg = getPackage(type);
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String simpleName = binaryName.substring(binaryName.lastIndexOf('.') + 1) + SUFFIX;
+        String qualifiedName = pkg.isUnnamed() ? simpleName : pkg.getQualifiedName() + "." + simpleName;
+        String readingType = type.getQualifiedName().toString();
+
+        StringBuilder src = new StringBuilder();
+        if (!pkg.isUnnamed())
+            src.append("package ").append(pkg.getQualifiedName()).append(";\n\n");
+        src.append("/** Generated by ").append(SensorFieldProcessor.class.getName())
+                .append(" from ").append(readingType).append(", do not edit. **/\n");
+        src.append("public final class ").append(simpleName).append(" implements ").append(ACCESSOR).append(" {\n\n");
+
+        src.append("    private static final String[] NAMES = {");
+        for (int i = 0; i < properties.size(); i++) {
+            if (i > 0)
+                src.append(", ");
+            appendLiteral(src, properties.get(i).key);
+        }
+        src.append("};\n\n");
+
+        src.append("    @Override\n    public String[] getFieldNames() {\n        return NAMES.clone();\n    }\n\n");
+
+        src.append("    @Override\n    public void appendFields(").append(SENSOR_READING).append(" reading, StringBuilder sb) {\n");
+        for (Property p : properties) {
+            src.append("        sb.append(");
+            appendLiteral(src, "," + quote(p.key) + ":");
+            src.append(");\n        ");
+            String value = "((" + p.declaringClass.getQualifiedName() + ") reading)." + p.field.getSimpleName();
+            switch (p.type.getKind()) {
+                case FLOAT: case DOUBLE:
+                    src.append(ENCODER).append(".appendNumber(sb, ").append(value).append(");\n"); break;
+                case DECLARED:
+                    src.append(ENCODER).append(".appendString(sb, ").append(value).append(");\n"); break;
+                case ARRAY:
+                    src.append(ENCODER).append(".appendArray(sb, ").append(value).append(");\n"); break;
+                default:
+                    src.append("sb.append(").append(value).append(");\n");
+            }
+        }
+        src.append("    }\n");
+
+        for (String precision : new String[]{"float", "double"}) {
+            src.append("\n    @Override\n    public void readChannels(").append(SENSOR_READING)
+                    .append(" reading, ").append(precision).append("[] out) {\n");
+            int channel = 0;
+            for (Property p : properties) {
+                if (!p.isChannel())
+                    continue;
+                src.append("        out[").append(channel++).append("] = ");
+                if (precision.equals("float") && p.type.getKind() == TypeKind.DOUBLE)
+                    src.append("(float) ");
+                src.append("((").append(p.declaringClass.getQualifiedName()).append(") reading).")
+                        .append(p.field.getSimpleName()).append(";\n");
+            }
+            src.append("    }\n");
+        }
+        src.append("}\n");
+
+        Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter();
+        try {
+            writer.write(src.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Quotes and escapes a JSON key the way {@code SensorReadingEncoder.appendString} does.
+     */
+    private static String quote(String value){
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/': sb.append('\\').append(c); break;
+                case '\t': sb.append("\\t"); break;
+                case '\b': sb.append("\\b"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\f': sb.append("\\f"); break;
+                default:
+                    if (c < 0x20)
+                        sb.append(String.format("\\u%04x", (int) c));
+                    else
+                        sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * Appends a Java string literal. Only printable ASCII is written as is, so that the
+     * generated source does not depend on the encoding of the compiler.
+     */
+    private static void appendLiteral(StringBuilder src, String value){
+        src.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\')
+                src.append('\\').append(c);
+            else if (c >= 0x20 && c < 0x7F)
+                src.append(c);
+            else if (c <= 0xFF)
+                src.append(String.format("\\%03o", (int) c));
+            else
+                src.append(String.format("\\u%04x", (int) c));
+        }
+        src.append('"');
+    }
+}
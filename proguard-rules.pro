@@ -9,6 +9,19 @@
 
 # Add any project specific keep options here:
 
+# Sensor readings are serialized from their @SensorField fields, using the field
+# name as the key unless one is given in the annotation. The fields are read by the
+# accessors generated at compile time, which are looked up by the name of the reading
+# class, or by reflection if there is no accessor.
+-keepattributes *Annotation*
+-keepclassmembers class * extends edu.umass.cs.MHLClient.sensors.SensorReading {
+    @edu.umass.cs.MHLClient.sensors.SensorField <fields>;
+}
+-keepnames class * extends edu.umass.cs.MHLClient.sensors.SensorReading
+-keep class * implements edu.umass.cs.MHLClient.sensors.SensorFieldAccessor {
+    <init>();
+}
+
 # If your project uses WebView with JS, uncomment the following
 # and specify the fully qualified class name to the JavaScript interface
 # class:
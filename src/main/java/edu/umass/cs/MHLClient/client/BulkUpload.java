@@ -0,0 +1,518 @@
+package edu.umass.cs.MHLClient.client;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import javax.net.ssl.SSLSocket;
+
+import edu.umass.cs.MHLClient.structures.TokenBucket;
+
+/**
+ * Uploads a recorded session file over a dedicated connection, separate from the live
+ * sensor stream. The file is read through memory-mapped regions and sent in chunks of
+ * {@link #CHUNK_SIZE} bytes, each compressed and checksummed. The server acknowledges
+ * every chunk, and up to {@link #WINDOW} chunks are sent ahead of the acknowledgements,
+ * so the link does not idle for a round trip per chunk. If the connection is lost, the
+ * upload reconnects with an exponential backoff and resumes after the last chunk the
+ * server acknowledged.
+ * <br><br>
+ * After authenticating like the live connection, the client and server exchange lines
+ * of comma-separated values, each chunk's compressed bytes following its header line:
+ * <pre>
+ * client: UPLOAD,&lt;upload ID&gt;,&lt;file size&gt;,&lt;chunk size&gt;
+ * server: RESUME,&lt;upload ID&gt;,&lt;index of the first chunk the server is missing&gt;
+ * client: CHUNK,&lt;index&gt;,&lt;length&gt;,&lt;compressed length&gt;,&lt;CRC-32 of the uncompressed chunk&gt;
+ * server: ACK,&lt;index&gt; once the chunk is stored, or NAK,&lt;index&gt; if its checksum does not match
+ * client: DONE,&lt;upload ID&gt; after the last chunk
+ * server: COMPLETE,&lt;upload ID&gt;
+ * </pre>
+ * Chunks are compressed in the zlib format. The upload ID is derived from the file's name,
+ * size and modification time, so an upload that is started again, e.g. after the app was
+ * restarted, resumes where the previous one stopped.
+ * <br><br>
+ * To leave the bandwidth to live readings, the upload is limited by the client's
+ * {@link MobileIOClient#setUploadRate(long) upload rate} and pauses whenever live readings
+ * back up in the transmission queue.
+ *
+ * @author Sean Noran
+ *
+ * @see MobileIOClient#uploadFile(File, UploadListener)
+ */
+public class BulkUpload {
+
+    /** Used for debugging purposes **/
+    private static final String TAG = BulkUpload.class.getName();
+
+    /** The number of bytes of the file sent in each chunk. **/
+    public static final int CHUNK_SIZE = 1024 * 1024;
+
+    /** The number of chunks sent ahead of the server's acknowledgements. **/
+    public static final int WINDOW = 4;
+
+    /** The number of bytes written at once, after each of which the link counts as making progress. **/
+    private static final int WRITE_SLICE = 64 * 1024;
+
+    /** The largest region of the file mapped into memory at once. **/
+    private static final long MAPPED_REGION = 32L * CHUNK_SIZE;
+
+    /** The number of queued live readings above which the upload pauses. **/
+    private static final int MAX_LIVE_BACKLOG = 500;
+
+    /** The time, in milliseconds, the upload pauses before checking the live backlog again. **/
+    private static final long BACKLOG_WAIT = 100;
+
+    /** The delay before the first attempt to resume an interrupted upload. **/
+    private static final long MIN_RETRY_DELAY = 1000;
+
+    /** The longest delay between attempts to resume an interrupted upload. **/
+    private static final long MAX_RETRY_DELAY = 60000;
+
+    private final MobileIOClient client;
+
+    private final File file;
+
+    /** Identifies the file on the server across connections. **/
+    private final String uploadID;
+
+    /** Limits the rate of all uploads of the client. **/
+    private final TokenBucket throttle;
+
+    /** Receives the progress, may be null. **/
+    private final UploadListener listener;
+
+    /** The connection of the current attempt, null between attempts. **/
+    private volatile SSLSocket socket;
+
+    private volatile Thread thread;
+
+    private volatile boolean cancelled;
+
+    private volatile boolean complete;
+
+    /** The number of bytes of the file the server has acknowledged. **/
+    private volatile long bytesUploaded;
+
+    /** The start time and the acknowledged bytes at the start of the current attempt. **/
+    private volatile long attemptStart, attemptStartBytes;
+
+    /** The number of chunks sent in the current attempt, including those sent in previous attempts. **/
+    private int sent;
+
+    /** The number of chunks the server has acknowledged. **/
+    private int acknowledged;
+
+    /** The compressed length of each unacknowledged chunk, indexed by chunk modulo {@link #WINDOW}. **/
+    private final int[] packedLengths = new int[WINDOW];
+
+    /** The number of bytes sent in the current attempt that the server has not yet acknowledged. **/
+    private long outstandingBytes;
+
+    /** The time the last bytes were written or acknowledged in the current attempt. **/
+    private long lastProgress;
+
+    /** Indicates whether DONE was sent in the current attempt, after which the server owes its confirmation. **/
+    private boolean finished;
+
+    /** Indicates whether the server confirmed receipt of the complete file. **/
+    private boolean confirmed;
+
+    /** The failure detected while reading the server's responses, null if there is none. **/
+    private IOException failure;
+
+    BulkUpload(MobileIOClient client, File file, TokenBucket throttle, UploadListener listener){
+        this.client = client;
+        this.file = file;
+        this.uploadID = file.getName().replaceAll("[,\\s]", "_") + "-" + file.length() + "-" + file.lastModified();
+        this.throttle = throttle;
+        this.listener = listener;
+    }
+
+    public File getFile(){
+        return file;
+    }
+
+    public String getUploadID(){
+        return uploadID;
+    }
+
+    /**
+     * Gets the number of bytes of the file the server has acknowledged.
+     * @return the number of bytes.
+     */
+    public long getBytesUploaded(){
+        return bytesUploaded;
+    }
+
+    /**
+     * Indicates whether the server has received the complete file.
+     * @return true if the upload is complete.
+     */
+    public boolean isComplete(){
+        return complete;
+    }
+
+    /**
+     * Stops the upload. The chunks acknowledged so far are kept by the server, so uploading
+     * the same file again resumes after them.
+     */
+    public void cancel(){
+        cancelled = true;
+        closeSocket();
+        Thread t = thread;
+        if (t != null)
+            t.interrupt();
+    }
+
+    void start(){
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                upload();
+            }
+        }, "upload-" + file.getName());
+        thread.start();
+    }
+
+    /**
+     * Transfers the file, resuming after failures until it is complete, the upload is
+     * cancelled or a failure occurs that retrying cannot resolve.
+     */
+    private void upload(){
+        long delay = MIN_RETRY_DELAY;
+        while (!cancelled) {
+            long before = bytesUploaded;
+            try {
+                transfer();
+                complete = true;
+                Log.i(TAG, "Uploaded " + file);
+                if (listener != null)
+                    listener.onUploadComplete(file);
+                return;
+            } catch (IOException | GeneralSecurityException | AuthenticationException e) {
+                if (cancelled)
+                    return;
+                e.printStackTrace();
+                //a missing file, a rejected upload or a failed authentication would fail the same way again
+                boolean retrying = e instanceof IOException && !(e instanceof FileNotFoundException)
+                        && !(e instanceof ProtocolException);
+                if (listener != null)
+                    listener.onUploadFailed(file, e, retrying);
+                if (!retrying)
+                    return;
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                closeSocket();
+            }
+
+            //start over with a short delay as long as attempts make progress
+            if (bytesUploaded > before)
+                delay = MIN_RETRY_DELAY;
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                return;
+            }
+            delay = Math.min(2 * delay, MAX_RETRY_DELAY);
+        }
+    }
+
+    /**
+     * Makes a single attempt to transfer the remaining chunks of the file.
+     */
+    private void transfer() throws IOException, GeneralSecurityException, AuthenticationException, InterruptedException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            int chunks = (int) ((size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+
+            socket = client.openUploadSocket();
+            if (cancelled)
+                throw new InterruptedException();
+            BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            OutputStream output = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+            authenticate(input, output);
+
+            writeLine(output, "UPLOAD," + uploadID + "," + size + "," + CHUNK_SIZE);
+            output.flush();
+            String response = input.readLine();
+            String[] resume = response == null ? new String[0] : response.split(",");
+            if (resume.length != 3 || !"RESUME".equals(resume[0]) || !uploadID.equals(resume[1]))
+                throw new ProtocolException("Upload rejected: " + response);
+            int next = parseIndex(resume[2], chunks);
+            Log.i(TAG, "Uploading " + file + " from chunk " + next + " of " + chunks);
+
+            synchronized (this) {
+                sent = next;
+                acknowledged = next;
+                outstandingBytes = 0;
+                lastProgress = SystemClock.elapsedRealtime();
+                finished = false;
+                confirmed = false;
+                failure = null;
+            }
+            attemptStart = SystemClock.elapsedRealtime();
+            attemptStartBytes = Math.min((long) next * CHUNK_SIZE, size);
+            bytesUploaded = attemptStartBytes;
+
+            startAcknowledgementReader(input, chunks, size);
+            try {
+                sendChunks(channel, output, next, chunks, size);
+                writeLine(output, "DONE," + uploadID);
+                output.flush();
+                synchronized (this) {
+                    finished = true;
+                    lastProgress = SystemClock.elapsedRealtime();
+                }
+            } catch (IOException e) {
+                //report the cause detected by the reader, e.g. a corrupted chunk, rather than the closed socket
+                synchronized (this) {
+                    if (failure != null)
+                        throw failure;
+                }
+                throw e;
+            }
+            synchronized (this) {
+                while (!confirmed && failure == null)
+                    wait();
+                if (failure != null)
+                    throw failure;
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Identifies the user on the upload connection, with the same handshake as the live connection.
+     */
+    private void authenticate(BufferedReader input, OutputStream output) throws IOException, AuthenticationException {
+        if (!"ID".equals(input.readLine()))
+            throw new AuthenticationException();
+        writeLine(output, "ID," + client.getUserID());
+        output.flush();
+        String ackString = input.readLine();
+        String[] ack = ackString == null ? new String[0] : ackString.split(",");
+        if (ack.length < 2 || !"ACK".equals(ack[0]) || !ack[1].equals(client.getUserID()))
+            throw new AuthenticationException();
+    }
+
+    /**
+     * Reads, compresses and sends the chunks, keeping at most {@link #WINDOW} chunks unacknowledged.
+     */
+    private void sendChunks(FileChannel channel, OutputStream output, int first, int chunks, long size)
+            throws IOException, InterruptedException {
+        byte[] raw = new byte[(int) Math.min(CHUNK_SIZE, size)];
+        byte[] packed = new byte[raw.length + raw.length / 256 + 64];
+        CRC32 crc = new CRC32();
+        //sensor recordings compress well even at the fastest level, which spares the battery
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        MappedByteBuffer region = null;
+        long regionStart = 0;
+        try {
+            for (int i = first; i < chunks; i++) {
+                awaitWindow(i);
+                while (client.isLiveTrafficBacklogged(MAX_LIVE_BACKLOG) && !cancelled)
+                    Thread.sleep(BACKLOG_WAIT);
+
+                long offset = (long) i * CHUNK_SIZE;
+                int length = (int) Math.min(CHUNK_SIZE, size - offset);
+                if (region == null || offset + length > regionStart + region.capacity()) {
+                    regionStart = offset;
+                    region = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(MAPPED_REGION, size - offset));
+                }
+                //the deflater only accepts arrays before API level 26, so the chunk is copied out of the mapping
+                region.position((int) (offset - regionStart));
+                region.get(raw, 0, length);
+                crc.reset();
+                crc.update(raw, 0, length);
+
+                deflater.reset();
+                deflater.setInput(raw, 0, length);
+                deflater.finish();
+                int packedLength = 0;
+                while (!deflater.finished()) {
+                    if (packedLength == packed.length)
+                        packed = Arrays.copyOf(packed, 2 * packed.length);
+                    packedLength += deflater.deflate(packed, packedLength, packed.length - packedLength);
+                }
+
+                throttle.acquire(packedLength);
+                synchronized (this) {
+                    sent = i + 1;
+                    packedLengths[i % WINDOW] = packedLength;
+                    outstandingBytes += packedLength;
+                }
+                writeLine(output, "CHUNK," + i + "," + length + "," + packedLength + "," + crc.getValue());
+                //a write only returns once the link has taken the previous bytes, which shows that it is not stalled
+                for (int written = 0; written < packedLength; written += WRITE_SLICE) {
+                    output.write(packed, written, Math.min(WRITE_SLICE, packedLength - written));
+                    output.flush();
+                    synchronized (this) {
+                        lastProgress = SystemClock.elapsedRealtime();
+                    }
+                }
+            }
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Blocks until the given chunk may be sent without exceeding the window.
+     * @param chunk the index of the chunk about to be sent.
+     */
+    private synchronized void awaitWindow(int chunk) throws IOException, InterruptedException {
+        while (chunk - acknowledged >= WINDOW && failure == null)
+            wait();
+        if (failure != null)
+            throw failure;
+    }
+
+    /**
+     * Indicates whether the server is late with its next response. A 1 MiB chunk may take
+     * longer than the read timeout to reach the server on a slow link, so the server is
+     * allowed the read timeout plus the time the unacknowledged bytes take at the upload rate,
+     * counted from the last time the link made progress. While the upload is paused, the
+     * server owes nothing; once DONE is sent and every chunk is acknowledged, it owes its
+     * confirmation within the read timeout.
+     * @param timeout the read timeout of the connection, in milliseconds.
+     * @return true if the attempt should fail, false if the server should be given more time.
+     */
+    private synchronized boolean isResponseOverdue(long timeout){
+        if (sent == acknowledged && !finished)
+            return false;
+        long rate = throttle.getRate();
+        long allowed = timeout + (rate > 0 ? outstandingBytes * 1000 / rate : 0);
+        return SystemClock.elapsedRealtime() - lastProgress >= allowed;
+    }
+
+    /**
+     * Starts the thread that reads the server's acknowledgements for the current attempt,
+     * which ends when the connection is closed.
+     */
+    private void startAcknowledgementReader(final BufferedReader input, final int chunks, final long size){
+        final SSLSocket connection = socket;
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    long timeout = connection.getSoTimeout();
+                    while (true) {
+                        String line;
+                        try {
+                            line = input.readLine();
+                        } catch (SocketTimeoutException e) {
+                            if (!isResponseOverdue(timeout))
+                                continue;
+                            throw e;
+                        }
+                        if (line == null)
+                            throw new IOException("Connection closed by the server.");
+                        if (socket != connection)
+                            return;
+                        if (onResponse(line, chunks, size))
+                            return;
+                    }
+                } catch (IOException e) {
+                    //a reader of an earlier attempt must not fail the current one
+                    synchronized (BulkUpload.this) {
+                        if (socket == connection && failure == null)
+                            failure = e;
+                        BulkUpload.this.notifyAll();
+                    }
+                    //unblocks a write to a stalled connection
+                    try {
+                        connection.close();
+                    } catch (IOException ce) {
+                        ce.printStackTrace();
+                    }
+                }
+            }
+        }, "upload-ack-" + file.getName()).start();
+    }
+
+    /**
+     * Handles a response of the server.
+     * @return true if the server confirmed the complete file, false otherwise.
+     */
+    private boolean onResponse(String line, int chunks, long size) throws IOException {
+        String[] response = line.split(",");
+        if (response.length == 2 && "ACK".equals(response[0])) {
+            long uploaded;
+            synchronized (this) {
+                //chunks are stored in order, so each acknowledgement must be for the next chunk
+                if (parseIndex(response[1], chunks) != acknowledged)
+                    throw new ProtocolException("Unexpected acknowledgement: " + line);
+                outstandingBytes -= packedLengths[acknowledged % WINDOW];
+                acknowledged++;
+                lastProgress = SystemClock.elapsedRealtime();
+                uploaded = Math.min((long) acknowledged * CHUNK_SIZE, size);
+                notifyAll();
+            }
+            bytesUploaded = uploaded;
+            if (listener != null) {
+                long elapsed = Math.max(1, SystemClock.elapsedRealtime() - attemptStart);
+                listener.onUploadProgress(file, uploaded, size, (uploaded - attemptStartBytes) * 1000 / elapsed);
+            }
+            return false;
+        } else if (response.length == 2 && "NAK".equals(response[0])) {
+            //resumed with the next attempt, which starts at the corrupted chunk
+            throw new IOException("Chunk " + response[1] + " was corrupted in transit.");
+        } else if (response.length == 2 && "COMPLETE".equals(response[0]) && uploadID.equals(response[1])) {
+            synchronized (this) {
+                if (acknowledged != chunks)
+                    throw new ProtocolException("Upload confirmed before all chunks were acknowledged.");
+                confirmed = true;
+                notifyAll();
+            }
+            return true;
+        }
+        throw new ProtocolException("Unexpected response: " + line);
+    }
+
+    private static int parseIndex(String index, int chunks) throws ProtocolException {
+        try {
+            int i = Integer.parseInt(index);
+            if (i >= 0 && i <= chunks)
+                return i;
+        } catch (NumberFormatException e) {
+            e.printStackTrace();
+        }
+        throw new ProtocolException("Invalid chunk index: " + index);
+    }
+
+    private static void writeLine(OutputStream output, String line) throws IOException {
+        output.write((line + "\n").getBytes("UTF-8"));
+    }
+
+    private void closeSocket(){
+        SSLSocket s = socket;
+        socket = null;
+        if (s == null)
+            return;
+        try {
+            s.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
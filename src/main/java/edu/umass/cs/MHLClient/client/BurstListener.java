@@ -0,0 +1,23 @@
+package edu.umass.cs.MHLClient.client;
+
+/**
+ * Defines how burst transmissions are reported when the client is in burst mode.
+ * This allows the application to trade latency for battery life, by comparing the
+ * estimated radio-on time against the number of bytes sent per burst.
+ *
+ * @author Sean Noran
+ *
+ * @see BurstPolicy
+ * @see MobileIOClient#setBurstListener(BurstListener)
+ */
+public interface BurstListener {
+    /**
+     * Called on the transmission thread after each burst.
+     * @param readings the number of readings sent in the burst.
+     * @param bytes the number of bytes written in the burst.
+     * @param duration the time spent writing the burst, in milliseconds.
+     * @param estimatedRadioOnTime the time the radio is estimated to stay in its high-power
+     *                             state because of the burst, including the tail time, in milliseconds.
+     */
+    void onBurstSent(int readings, long bytes, long duration, long estimatedRadioOnTime);
+}
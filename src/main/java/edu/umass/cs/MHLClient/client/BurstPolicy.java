@@ -0,0 +1,83 @@
+package edu.umass.cs.MHLClient.client;
+
+/**
+ * Defines when the {@link MobileIOClient} transmits buffered readings in burst mode.
+ * Instead of writing readings as soon as they are queued, which keeps the cellular
+ * radio in its high-power state, the client sends all buffered readings in one dense
+ * burst every {@link #getInterval() interval}. A burst is sent early when the number
+ * of buffered readings reaches the {@link #getFlushThreshold() flush threshold}, when
+ * a priority reading is sent, or, if enabled, when a labelled reading is sent.
+ *
+ * @author Sean Noran
+ *
+ * @see MobileIOClient#setBurstPolicy(BurstPolicy)
+ */
+public class BurstPolicy {
+
+    /** The maximum time between bursts, in milliseconds. **/
+    private final long interval;
+
+    /** The number of buffered readings that triggers an early burst. **/
+    private final int flushThreshold;
+
+    /** Indicates whether a labelled reading triggers an early burst. **/
+    private final boolean flushOnLabel;
+
+    /** Indicates whether readings are spilled to disk when the in-memory buffer is full. **/
+    private final boolean spillToDisk;
+
+    /**
+     * Instantiates a burst policy.
+     * @param interval the maximum time between bursts, in milliseconds.
+     * @param flushThreshold the number of buffered readings that triggers an early burst.
+     * @param flushOnLabel true if a labelled reading should trigger an early burst.
+     * @param spillToDisk true if readings should be spilled to disk when the in-memory buffer is full.
+     */
+    public BurstPolicy(long interval, int flushThreshold, boolean flushOnLabel, boolean spillToDisk){
+        this.interval = interval;
+        this.flushThreshold = flushThreshold;
+        this.flushOnLabel = flushOnLabel;
+        this.spillToDisk = spillToDisk;
+    }
+
+    /**
+     * Instantiates a burst policy that flushes early on labelled readings and when
+     * 4000 readings are buffered, and spills to disk when the buffer is full.
+     * @param interval the maximum time between bursts, in milliseconds.
+     */
+    public BurstPolicy(long interval){
+        this(interval, 4000, true, true);
+    }
+
+    /**
+     * Gets the maximum time between bursts.
+     * @return the interval in milliseconds.
+     */
+    public long getInterval(){
+        return interval;
+    }
+
+    /**
+     * Gets the number of buffered readings that triggers an early burst.
+     * @return the flush threshold.
+     */
+    public int getFlushThreshold(){
+        return flushThreshold;
+    }
+
+    /**
+     * Indicates whether a labelled reading triggers an early burst.
+     * @return true if labelled readings are flushed early.
+     */
+    public boolean isFlushOnLabel(){
+        return flushOnLabel;
+    }
+
+    /**
+     * Indicates whether readings are spilled to disk when the in-memory buffer is full.
+     * @return true if readings are spilled to disk.
+     */
+    public boolean isSpillToDisk(){
+        return spillToDisk;
+    }
+}
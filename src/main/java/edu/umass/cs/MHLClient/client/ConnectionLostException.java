@@ -0,0 +1,18 @@
+package edu.umass.cs.MHLClient.client;
+
+/**
+ * Exception passed to {@link ConnectionStateHandler#onConnectionFailed(Exception)}
+ * when an established connection is torn down because the server stopped
+ * responding or the socket could no longer be written to.
+ *
+ * @author Sean Noran
+ */
+public class ConnectionLostException extends Exception {
+    public ConnectionLostException(String reason){
+        super("Connection to DCS lost. Reason : " + reason);
+    }
+
+    public ConnectionLostException(String reason, Throwable cause){
+        super("Connection to DCS lost. Reason : " + reason, cause);
+    }
+}
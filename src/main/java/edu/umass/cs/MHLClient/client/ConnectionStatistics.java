@@ -0,0 +1,167 @@
+package edu.umass.cs.MHLClient.client;
+
+/**
+ * Exposes metrics on the health of the server connection, such as the heartbeat
+ * round-trip time and how long it took to detect a dead connection. An instance
+ * is obtained via {@link MobileIOClient#getConnectionStatistics()} and is updated
+ * live by the client, so values may change between successive calls.
+ *
+ * @author Sean Noran
+ */
+public class ConnectionStatistics {
+
+    /** The number of heartbeats written to the server. **/
+    private volatile long heartbeatsSent;
+
+    /** The number of heartbeats echoed back by the server. **/
+    private volatile long heartbeatsReceived;
+
+    /** The round-trip time of the most recent heartbeat, in milliseconds, or -1 if unknown. **/
+    private volatile long lastRoundTripTime = -1;
+
+    /** The exponentially smoothed heartbeat round-trip time, in milliseconds, or -1 if unknown. **/
+    private volatile long smoothedRoundTripTime = -1;
+
+    /** The number of established connections that were torn down because they stopped responding. **/
+    private volatile int deadConnectionsDetected;
+
+    /** The time between the last sign of life and the teardown of the most recent dead connection. **/
+    private volatile long lastFailureDetectionTime = -1;
+
+    /** The total time spent on connections that had already stopped responding. **/
+    private volatile long totalStallTime;
+
+    /**
+     * The number of readings written to connections after the last heartbeat the server
+     * acknowledged, i.e. readings that were likely lost because the connection had stalled.
+     */
+    private volatile long readingsLostToStalls;
+
+    /** The number of bytes written to the server, excluding TLS overhead. **/
+    private volatile long bytesSent;
+
+    /** The number of bursts sent in burst mode. **/
+    private volatile long burstsSent;
+
+    /** The estimated time the radio spent in its high-power state because of transmissions. **/
+    private volatile long estimatedRadioOnTime;
+
+    void onHeartbeatSent(){
+        heartbeatsSent++;
+    }
+
+    void onHeartbeatReceived(long roundTripTime){
+        heartbeatsReceived++;
+        lastRoundTripTime = roundTripTime;
+        if (smoothedRoundTripTime < 0)
+            smoothedRoundTripTime = roundTripTime;
+        else
+            smoothedRoundTripTime = (7 * smoothedRoundTripTime + roundTripTime) / 8;
+    }
+
+    void onDeadConnectionDetected(long detectionTime, long readingsAtRisk){
+        deadConnectionsDetected++;
+        lastFailureDetectionTime = detectionTime;
+        totalStallTime += detectionTime;
+        readingsLostToStalls += readingsAtRisk;
+    }
+
+    void onTransmission(long bytes, long radioOnTime, boolean burst){
+        bytesSent += bytes;
+        estimatedRadioOnTime += radioOnTime;
+        if (burst)
+            burstsSent++;
+    }
+
+    /**
+     * Gets the number of heartbeats written to the server.
+     * @return the number of heartbeats sent.
+     */
+    public long getHeartbeatsSent(){
+        return heartbeatsSent;
+    }
+
+    /**
+     * Gets the number of heartbeats echoed back by the server.
+     * @return the number of heartbeats received.
+     */
+    public long getHeartbeatsReceived(){
+        return heartbeatsReceived;
+    }
+
+    /**
+     * Gets the round-trip time of the most recent heartbeat.
+     * @return the round-trip time in milliseconds, or -1 if no heartbeat has been echoed.
+     */
+    public long getLastRoundTripTime(){
+        return lastRoundTripTime;
+    }
+
+    /**
+     * Gets the smoothed heartbeat round-trip time, using the same 1/8 gain as TCP.
+     * @return the smoothed round-trip time in milliseconds, or -1 if no heartbeat has been echoed.
+     */
+    public long getSmoothedRoundTripTime(){
+        return smoothedRoundTripTime;
+    }
+
+    /**
+     * Gets the number of connections that were torn down because they stopped responding.
+     * @return the number of dead connections detected.
+     */
+    public int getDeadConnectionsDetected(){
+        return deadConnectionsDetected;
+    }
+
+    /**
+     * Gets how long the most recent dead connection went unnoticed, measured from the last
+     * data received from (or successfully written to) the server until the teardown.
+     * @return the failure detection time in milliseconds, or -1 if no failure has been detected.
+     */
+    public long getLastFailureDetectionTime(){
+        return lastFailureDetectionTime;
+    }
+
+    /**
+     * Gets the total time spent on connections that had already stopped responding.
+     * @return the total stall time in milliseconds.
+     */
+    public long getTotalStallTime(){
+        return totalStallTime;
+    }
+
+    /**
+     * Gets the number of readings written after the last heartbeat acknowledged by the server on
+     * connections that were later found to be dead. These readings were likely never received.
+     * @return the number of readings lost to stalls.
+     */
+    public long getReadingsLostToStalls(){
+        return readingsLostToStalls;
+    }
+
+    /**
+     * Gets the number of bytes written to the server, excluding TLS overhead.
+     * @return the number of bytes sent.
+     */
+    public long getBytesSent(){
+        return bytesSent;
+    }
+
+    /**
+     * Gets the number of bursts sent in burst mode.
+     * @return the number of bursts sent.
+     */
+    public long getBurstsSent(){
+        return burstsSent;
+    }
+
+    /**
+     * Gets the estimated time the radio spent in its high-power state because of transmissions,
+     * assuming it remains there for the tail time after each transmission.
+     * @return the estimated radio-on time in milliseconds.
+     * @see MobileIOClient#setRadioTailTime(long)
+     */
+    public long getEstimatedRadioOnTime(){
+        return estimatedRadioOnTime;
+    }
+}
@@ -1,6 +1,8 @@
 package edu.umass.cs.MHLClient.client;
 
 import android.content.Context;
+import android.os.SystemClock;
+import android.util.Base64;
 import android.util.Log;
 
 import org.json.JSONException;
@@ -8,12 +10,19 @@ import org.json.JSONObject;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.net.InetSocketAddress;
+import java.net.ProtocolException;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 import java.security.KeyManagementException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
@@ -21,14 +30,35 @@ import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.conn.ssl.SSLSocketFactory;
 
 import javax.net.ssl.SSLSocket;
 
 import cs.umass.edu.MHLClient.R;
+import edu.umass.cs.MHLClient.codec.BitOutput;
+import edu.umass.cs.MHLClient.codec.TimeSeriesBatch;
+import edu.umass.cs.MHLClient.codec.TimeSeriesCodec;
+import edu.umass.cs.MHLClient.processing.EventCapture;
+import edu.umass.cs.MHLClient.processing.IMUResampler;
+import edu.umass.cs.MHLClient.processing.QualityLevel;
+import edu.umass.cs.MHLClient.processing.SensorReadingListener;
 import edu.umass.cs.MHLClient.structures.BlockingSensorReadingQueue;
+import edu.umass.cs.MHLClient.structures.CountingOutputStream;
+import edu.umass.cs.MHLClient.structures.RecentReadingsStore;
+import edu.umass.cs.MHLClient.structures.ReadingSpillFile;
+import edu.umass.cs.MHLClient.structures.TokenBucket;
+import edu.umass.cs.MHLClient.sensors.ControlAckReading;
+import edu.umass.cs.MHLClient.sensors.HeartbeatReading;
+import edu.umass.cs.MHLClient.sensors.QualityReading;
 import edu.umass.cs.MHLClient.sensors.SensorReading;
+import edu.umass.cs.MHLClient.sensors.SensorReadingEncoder;
 
 /**
  * The Mobile IO client is responsible for handling the server connection
@@ -38,6 +68,33 @@ import edu.umass.cs.MHLClient.sensors.SensorReading;
  * {@link #setConnectionStateHandler(ConnectionStateHandler)} method, then
  * you can handle the {@link ConnectionStateHandler#onConnected()} and
  * {@link ConnectionStateHandler#onConnectionFailed(Exception)} events.
+ * <br><br>
+ * While connected, the client periodically sends a {@link HeartbeatReading}.
+ * Once the server has echoed a heartbeat, the connection is torn down if nothing
+ * is received for longer than the read timeout (see {@link #setReadTimeout(long)}).
+ * Independently, a write that blocks for longer than the write timeout (see
+ * {@link #setWriteTimeout(long)}) tears down the connection. A lost connection is
+ * reported as a {@link ConnectionLostException} and, unless disabled using
+ * {@link #setAutoReconnect(boolean)}, the client then reconnects automatically.
+ * Heartbeat round-trip times and failure detection times are available from
+ * {@link #getConnectionStatistics()}.
+ * <br><br>
+ * If enabled using {@link #setCompactSessionEnabled(boolean)}, the client negotiates
+ * a compact session after authentication, in which the metadata of each stream of
+ * readings is declared once and subsequent readings refer to it by stream ID.
+ * <br><br>
+ * By default, readings are written as soon as they are queued. For long-running
+ * studies that do not require real-time data, a {@link BurstPolicy} can be set
+ * using {@link #setBurstPolicy(BurstPolicy)}, in which case readings are buffered
+ * and sent in dense bursts, allowing the radio to return to its low-power state
+ * in between.
+ * <br><br>
+ * Accelerometer and gyroscope readings can be fused into combined 6-axis readings
+ * at a fixed rate using {@link #setIMUFusionRate(int)}, which halves the number of
+ * messages and spares the server from aligning the two streams.
+ * <br><br>
+ * The readings of selected sensor types can be batched and compressed with a
+ * {@link TimeSeriesCodec} using {@link #setCodec(String, TimeSeriesCodec)}.
  *
  * @author Erik Risinger
  */
@@ -50,6 +107,9 @@ public class MobileIOClient {
     /** The blocking queue containing the sensor data. **/
     private volatile BlockingSensorReadingQueue sensorReadingQueue;
 
+    /** Readings generated by the client itself that did not fit into the full queue. **/
+    private final ConcurrentLinkedQueue<SensorReading> controlReadings = new ConcurrentLinkedQueue<>();
+
     /** The 10-byte hex ID associated with the user establishing the connection. **/
     private final String userID;
 
@@ -68,14 +128,25 @@ public class MobileIOClient {
     private SSLSocket socket;
 
     /**
-     * The IP address of the server.
+     * The servers the client may connect to.
+     */
+    private volatile ServerEndpoint[] servers = {new ServerEndpoint("none.cs.umass.edu", 9997)}; //"192.168.24.58"
+
+    /**
+     * The server the client keeps connecting to for as long as it is healthy, null if a
+     * server has to be selected.
      */
-    private static final String ip = "none.cs.umass.edu"; //"192.168.24.58"; //"none.cs.umass.edu";
+    private volatile ServerEndpoint preferredServer;
 
     /**
-     * The port on the server listening for incoming data.
+     * The server of the current connection or connection attempt.
      */
-    private static final int port = 9997;
+    private volatile ServerEndpoint currentServer;
+
+    /**
+     * The key store containing the trusted server certificates, null to use the bundled key store.
+     */
+    private volatile KeyStore trustStore;
 
     /**
      * Singleton instance.
@@ -107,18 +178,202 @@ public class MobileIOClient {
      */
     private BufferedWriter output;
 
+    /** The default interval between heartbeats, in milliseconds. **/
+    private static final long DEFAULT_HEARTBEAT_INTERVAL = 5000;
+
+    /** The sensor type of control messages from the server. **/
+    private static final String CONTROL_TYPE = "SENSOR_CONTROL";
+
+    /** The default time without any data from the server after which the connection is considered dead. **/
+    private static final long DEFAULT_READ_TIMEOUT = 15000;
+
+    /** The default time a single write may block before the connection is considered dead. **/
+    private static final long DEFAULT_WRITE_TIMEOUT = 10000;
+
+    /** The interval at which the connection monitor checks the timeouts, in milliseconds. **/
+    private static final long MONITOR_PERIOD = 250;
+
+    /** The initial delay before reconnecting, doubled after every failed attempt. **/
+    private static final long MIN_RECONNECT_DELAY = 1000;
+
+    /** The maximum delay between reconnection attempts. **/
+    private static final long MAX_RECONNECT_DELAY = 60000;
+
+    /** The number of outstanding heartbeats that can be matched to their echo. **/
+    private static final int HEARTBEAT_WINDOW = 8;
+
+    /** The interval between heartbeats, in milliseconds. Zero disables heartbeats. **/
+    private volatile long heartbeatInterval = DEFAULT_HEARTBEAT_INTERVAL;
+
+    /** The read timeout, in milliseconds. Zero disables the read timeout. **/
+    private volatile long readTimeout = DEFAULT_READ_TIMEOUT;
+
+    /** The write timeout, in milliseconds. Zero disables the write timeout. **/
+    private volatile long writeTimeout = DEFAULT_WRITE_TIMEOUT;
+
+    /** Indicates whether the client should reconnect after the connection is lost. **/
+    private volatile boolean autoReconnect = true;
+
+    /** Indicates whether {@link #disconnect()} was called, in which case no reconnection is attempted. **/
+    private volatile boolean disconnectRequested;
+
+    /** The delay before the next reconnection attempt. **/
+    private long reconnectDelay = MIN_RECONNECT_DELAY;
+
+    /** Guards connection establishment and teardown. **/
+    private final Object connectionLock = new Object();
+
+    /** Serializes writes to the server. **/
+    private final Object writeLock = new Object();
+
+    /**
+     * Thread responsible for detecting dead connections and scheduling heartbeats.
+     */
+    private Thread monitorThread;
+
+    /** Metrics on the health of the connection. **/
+    private final ConnectionStatistics statistics = new ConnectionStatistics();
+
+    /** The time at which data was last received from the server, see {@link SystemClock#elapsedRealtime()}. **/
+    private volatile long lastReceivedTime;
+
+    /** The time at which the current write started, or 0 if no write is in progress. **/
+    private volatile long writeStartTime;
+
+    /** The time at which the last heartbeat was sent. **/
+    private volatile long lastHeartbeatTime;
+
+    /** Set by the connection monitor when the transmission thread should send a heartbeat. **/
+    private volatile boolean heartbeatDue;
+
+    /** Indicates whether the server has echoed at least one heartbeat on the current connection. **/
+    private volatile boolean heartbeatsAcknowledged;
+
+    /** The sequence number of the last heartbeat sent. **/
+    private int heartbeatSequence;
+
+    /** The sequence numbers of the outstanding heartbeats, indexed by sequence number modulo the window. **/
+    private final int[] heartbeatSequences = new int[HEARTBEAT_WINDOW];
+
+    /** The times at which the outstanding heartbeats were sent. **/
+    private final long[] heartbeatSendTimes = new long[HEARTBEAT_WINDOW];
+
+    /** The number of readings written when each outstanding heartbeat was sent. **/
+    private final long[] heartbeatReadingCounts = new long[HEARTBEAT_WINDOW];
+
+    /** The total number of readings written to the server. **/
+    private volatile long readingsWritten;
+
+    /** The number of readings written before the most recently acknowledged heartbeat. **/
+    private volatile long readingsAcknowledged;
+
+    /** The line sent after authentication to request a compact session, echoed by the server to accept it. **/
+    private static final String COMPACT_SESSION_REQUEST = "SESSION,COMPACT";
+
+    /** The reply of a server that declines the compact session and expects full envelopes. **/
+    private static final String FULL_SESSION_REPLY = "SESSION,FULL";
+
+    /**
+     * The time, in milliseconds, to wait for the reply to a compact session request. Servers
+     * that predate compact sessions never reply, so the wait is kept well below the read timeout.
+     */
+    private static final int SESSION_NEGOTIATION_TIMEOUT = 2000;
+
+    /** Indicates whether a compact session should be requested when connecting. **/
+    private volatile boolean compactSessionEnabled;
+
+    /** Indicates whether the server accepted a compact session on the current connection. **/
+    private volatile boolean compactSession;
+
+    /** Counts the bytes written to the server on the current connection. **/
+    private CountingOutputStream outputCounter;
+
+    /** The default time the radio remains in its high-power state after a transmission. **/
+    private static final long DEFAULT_RADIO_TAIL_TIME = 10000;
+
+    /** The maximum size of the file readings are spilled to in burst mode. **/
+    private static final long MAX_SPILL_SIZE = 64 * 1024 * 1024;
+
+    /** The time the radio is assumed to remain in its high-power state after a transmission. **/
+    private volatile long radioTailTime = DEFAULT_RADIO_TAIL_TIME;
+
+    /** Defines when readings are sent in burst mode, null if readings are sent in real-time. **/
+    private volatile BurstPolicy burstPolicy;
+
+    /** The burst policy set by the application, which the server may override. **/
+    private volatile BurstPolicy requestedBurstPolicy;
+
+    /** The sampling limits requested by the server. **/
+    private volatile SamplingPolicy samplingPolicy = SamplingPolicy.UNRESTRICTED;
+
+    /** Indicates whether control messages from the server are applied. **/
+    private volatile boolean remoteControlEnabled = true;
+
+    /** Notified after each burst in burst mode. **/
+    private volatile BurstListener burstListener;
+
+    /** Receives readings when the queue is full in burst mode, null if spilling is disabled. **/
+    private volatile ReadingSpillFile spillFile;
+
+    /** Set when a burst should be sent immediately, e.g. when a priority reading is sent. **/
+    private volatile boolean flushRequested;
+
+    /** The time at which the last burst was sent. **/
+    private volatile long lastBurstTime;
+
+    /** The time at which the radio is estimated to return to its low-power state. **/
+    private long radioOffTime;
+
+    /** Fuses accelerometer and gyroscope readings, null if IMU fusion is disabled. **/
+    private volatile IMUResampler imuResampler;
+
+    /** Keeps the most recent readings for the application, null if disabled. **/
+    private volatile RecentReadingsStore recentReadingsStore;
+
+    /** Limits raw data to the windows around events, null if all readings are sent. **/
+    private volatile EventCapture eventCapture;
+
+    /** Adapts the quality of the readings to the link, null if readings are always sent at full quality. **/
+    private volatile QualityController qualityController;
+
+    /** Encodes readings on worker threads, null if they are encoded by the transmission thread. **/
+    private volatile ParallelSerializer serializer;
+
+    /** The default rate at which bulk uploads send data, in bytes per second. **/
+    private static final long DEFAULT_UPLOAD_RATE = 256 * 1024;
+
+    /** Limits the rate of all bulk uploads, measured in compressed bytes. **/
+    private final TokenBucket uploadThrottle = new TokenBucket(DEFAULT_UPLOAD_RATE, BulkUpload.CHUNK_SIZE);
+
+    /** Marks quality changes in the stream. **/
+    private final QualityController.StepMarker qualityMarker = new QualityController.StepMarker() {
+        @Override
+        public void mark(String sensorType, int level, QualityLevel quality) {
+            enqueueControl(new QualityReading(userID, System.currentTimeMillis(), sensorType, level, quality.getName()));
+        }
+    };
+
+    /** The codec used for each sensor type whose readings are sent in encoded batches. **/
+    private final ConcurrentHashMap<String, TimeSeriesCodec> codecs = new ConcurrentHashMap<>();
+
+    /** The number of readings at which a batch is sent in real-time mode. **/
+    private static final int MIN_BATCH_SIZE = 50;
+
+    /** The time, in milliseconds, after which a batch is sent in real-time mode, however small. **/
+    private static final long MAX_BATCH_AGE = 1000;
+
     /**
-     * Creates a singleton mobile IO client instance with a pre-existing (external)
-     * blocking queue and a user-defined connection timeout.
+     * Creates a mobile IO client with a pre-existing (external) blocking queue. Applications
+     * use the singleton returned by {@link #getInstance(Context, BlockingSensorReadingQueue, String)};
+     * tests create independent clients so that their settings do not leak into each other.
      * @param context the context to access application resources.
      * @param q a blocking queue containing sensor reading objects
      * @param id the user ID required to validate the connection
      */
-    private MobileIOClient(final Context context, final BlockingSensorReadingQueue q, final String id){
+    MobileIOClient(final Context context, final BlockingSensorReadingQueue q, final String id){
         this.sensorReadingQueue = q;
         this.userID = id;
         messageReceivers = new ArrayList<>();
-        instance = this;
         this.context = context;
     }
 
@@ -129,7 +384,7 @@ public class MobileIOClient {
      */
     public static MobileIOClient getInstance(final Context context, final BlockingSensorReadingQueue q, final String id){
         if (instance == null){
-            return new MobileIOClient(context, q, id);
+            instance = new MobileIOClient(context, q, id);
         }
         return instance;
     }
@@ -140,7 +395,7 @@ public class MobileIOClient {
      */
     public static MobileIOClient getInstance(final Context context, final String id){
         if (instance == null){
-            return new MobileIOClient(context, new BlockingSensorReadingQueue(), id);
+            instance = new MobileIOClient(context, new BlockingSensorReadingQueue(), id);
         }
         return instance;
     }
@@ -179,13 +434,460 @@ public class MobileIOClient {
         this.messageReceivers.clear();
     }
 
+    /**
+     * Sets the address of the server. Takes effect on the next connection. This is useful
+     * for connecting to a private server or, for testing, to a local network emulation proxy.
+     * @param ip the host name or IP address of the server.
+     * @param port the port on the server listening for incoming data.
+     * @see #setServers(ServerEndpoint...)
+     */
+    public void setServer(String ip, int port){
+        setServers(new ServerEndpoint(ip, port));
+    }
+
+    /**
+     * Sets the servers the client may connect to. When no server is preferred yet, the
+     * client probes all available servers in parallel, measuring the time to connect and
+     * to complete the TLS handshake, and connects to the fastest one. It then sticks to that
+     * server for as long as connections to it succeed, so that sessions do not move between
+     * servers. When a connection to the preferred server fails or is lost, the server is
+     * avoided for a while, and the fastest of the remaining servers is selected instead.
+     * Takes effect on the next connection.
+     * @param servers the candidate servers, at least one.
+     */
+    public void setServers(ServerEndpoint... servers){
+        if (servers.length == 0)
+            throw new IllegalArgumentException("At least one server is required.");
+        this.servers = servers.clone();
+        ServerEndpoint preferred = preferredServer;
+        if (preferred != null && !Arrays.asList(servers).contains(preferred))
+            preferredServer = null;
+    }
+
+    /**
+     * Gets the servers the client may connect to, including their measured connection times.
+     * @return the candidate servers.
+     */
+    public ServerEndpoint[] getServers(){
+        return servers.clone();
+    }
+
+    /**
+     * Gets the server of the current connection or the most recent connection attempt.
+     * @return the server, or null if the client has not tried to connect.
+     */
+    public ServerEndpoint getCurrentServer(){
+        return currentServer;
+    }
+
+    /**
+     * Sets the key store containing the trusted server certificates, which is otherwise
+     * loaded from the bundled resources.
+     * @param trustStore the key store, or null to use the bundled key store.
+     */
+    public void setTrustStore(KeyStore trustStore){
+        this.trustStore = trustStore;
+    }
+
+    /**
+     * Gets the number of readings waiting in the queue for transmission.
+     * @return the number of queued readings.
+     */
+    public int getQueuedReadingCount(){
+        return sensorReadingQueue.size();
+    }
+
+    /**
+     * Sets the interval at which heartbeats are sent while connected.
+     * @param heartbeatInterval the interval in milliseconds, or 0 to disable heartbeats.
+     */
+    public void setHeartbeatInterval(long heartbeatInterval){
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    /**
+     * Sets the maximum time without any data from the server before the connection is
+     * considered dead. This bounds the failure detection time. It only takes effect once
+     * the server has echoed a heartbeat, so that servers that never respond are not
+     * disconnected, and should therefore be several times the heartbeat interval.
+     * @param readTimeout the timeout in milliseconds, or 0 to disable the read timeout.
+     */
+    public void setReadTimeout(long readTimeout){
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Sets the maximum time a single write may block before the connection is considered dead.
+     * @param writeTimeout the timeout in milliseconds, or 0 to disable the write timeout.
+     */
+    public void setWriteTimeout(long writeTimeout){
+        this.writeTimeout = writeTimeout;
+    }
+
+    /**
+     * Sets whether the client reconnects automatically after an established connection is lost.
+     * Reconnection attempts back off exponentially up to one minute apart.
+     * @param autoReconnect true to reconnect automatically, false otherwise.
+     */
+    public void setAutoReconnect(boolean autoReconnect){
+        this.autoReconnect = autoReconnect;
+    }
+
+    /**
+     * Sets whether a compact session should be requested when connecting. In a compact
+     * session, each combination of user, device and sensor type is declared once and
+     * assigned a stream ID, and readings then only carry the stream ID, label and data.
+     * Readings that do not define {@link SensorReading#toDataJSONObject()}, as well as all
+     * readings sent to servers that decline the request, use the full metadata envelope.
+     * A server that does not answer the request within two seconds is assumed to predate
+     * compact sessions: the connection is closed and replaced by one without the request.
+     * Takes effect on the next connection.
+     * @param compactSessionEnabled true to request compact sessions, false otherwise.
+     */
+    public void setCompactSessionEnabled(boolean compactSessionEnabled){
+        this.compactSessionEnabled = compactSessionEnabled;
+    }
+
+    /**
+     * Sets the burst policy. In burst mode, readings are buffered, in memory and, if enabled
+     * by the policy, on disk, and sent in dense bursts instead of as soon as they are queued.
+     * @param burstPolicy defines when bursts are sent, or null to send readings in real-time.
+     */
+    public void setBurstPolicy(BurstPolicy burstPolicy){
+        if (burstPolicy != null && burstPolicy.isSpillToDisk() && spillFile == null)
+            spillFile = new ReadingSpillFile(context.getCacheDir(), "mhl_spill", MAX_SPILL_SIZE);
+        lastBurstTime = SystemClock.elapsedRealtime();
+        this.requestedBurstPolicy = burstPolicy;
+        updateBurstPolicy();
+    }
+
+    /**
+     * Determines the burst policy in effect, which is the one requested by the server, if
+     * any, and otherwise the one set by the application. A policy requested by the server
+     * keeps the application's settings for labelled readings and spilling to disk.
+     */
+    private synchronized void updateBurstPolicy(){
+        BurstPolicy requested = requestedBurstPolicy;
+        SamplingPolicy sampling = samplingPolicy;
+        if (sampling.getBatchSize() > 0) {
+            burstPolicy = new BurstPolicy(sampling.getBatchInterval(), sampling.getBatchSize(),
+                    requested != null && requested.isFlushOnLabel(), requested != null && requested.isSpillToDisk());
+        } else {
+            burstPolicy = requested;
+        }
+    }
+
+    /**
+     * Sets whether the client applies control messages from the server, which can pause
+     * sensors, cap their rates and make the client send readings in batches, see
+     * {@link SamplingPolicy}. Control messages are applied by default; when disabled, they
+     * are acknowledged as rejected and any limits already in effect are lifted.
+     * @param remoteControlEnabled true to apply control messages, false to reject them.
+     */
+    public void setRemoteControlEnabled(boolean remoteControlEnabled){
+        this.remoteControlEnabled = remoteControlEnabled;
+        if (!remoteControlEnabled) {
+            samplingPolicy = SamplingPolicy.UNRESTRICTED;
+            updateBurstPolicy();
+        }
+    }
+
+    /**
+     * Gets the sampling limits currently requested by the server.
+     * @return the policy in effect, {@link SamplingPolicy#UNRESTRICTED} if the server has not limited the client.
+     */
+    public SamplingPolicy getSamplingPolicy(){
+        return samplingPolicy;
+    }
+
+    /**
+     * Sets the listener notified after each burst in burst mode.
+     * @param burstListener the burst listener, or null.
+     */
+    public void setBurstListener(BurstListener burstListener){
+        this.burstListener = burstListener;
+    }
+
+    /**
+     * Sets the time the radio is assumed to remain in its high-power state after a transmission,
+     * which is used to estimate the radio-on time. This is typically 5 to 15 seconds, depending
+     * on the network technology and carrier configuration.
+     * @param radioTailTime the tail time in milliseconds.
+     */
+    public void setRadioTailTime(long radioTailTime){
+        this.radioTailTime = radioTailTime;
+    }
+
+    /**
+     * Requests that all buffered readings be sent immediately. Has no effect unless in burst mode.
+     */
+    public void flush(){
+        flushRequested = true;
+    }
+
+    /**
+     * Sets the rate at which accelerometer and gyroscope readings are fused into combined
+     * {@link edu.umass.cs.MHLClient.sensors.IMUReading IMU readings}, for readings timestamped
+     * in milliseconds. When enabled, both streams of each device are resampled onto a common
+     * timeline and a single 6-axis reading is sent per tick. Readings that cannot be fused,
+     * because the other stream of the device is missing, has stopped or has a gap, are sent
+     * individually.
+     * @param rate the output rate in Hz, at most 1000, or 0 to send the readings individually.
+     * @see IMUResampler
+     */
+    public void setIMUFusionRate(int rate){
+        setIMUFusionRate(rate, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sets the rate at which accelerometer and gyroscope readings are fused into combined
+     * {@link edu.umass.cs.MHLClient.sensors.IMUReading IMU readings}.
+     * @param rate the output rate in Hz, at most 1000, or 0 to send the readings individually.
+     * @param unit the unit of the reading timestamps, e.g. {@link TimeUnit#NANOSECONDS} for
+     *             timestamps taken from sensor events.
+     * @see #setIMUFusionRate(int)
+     */
+    public void setIMUFusionRate(int rate, TimeUnit unit){
+        if (rate <= 0) {
+            imuResampler = null;
+            return;
+        }
+        imuResampler = new IMUResampler(rate, unit, new SensorReadingListener() {
+            @Override
+            public void onSensorReading(SensorReading reading) {
+                capture(reading, false);
+            }
+        });
+    }
+
+    /**
+     * Enables event-triggered capture: raw readings are only sent in windows around events,
+     * and a low-rate summary of each stream is sent the rest of the time. Captures are
+     * started by the triggers added to the returned {@link EventCapture}, by server messages
+     * through {@link EventCapture#createServerTrigger(String...)}, or by the application
+     * through {@link EventCapture#trigger()}. Readings are still passed to the
+     * {@link #setRecentReadingsStore(RecentReadingsStore) recent readings store} in full.
+     * @param capacity the number of samples buffered per stream, which must cover the pre-trigger window.
+     * @param preTriggerWindow the duration of raw data sent before each trigger, in the unit of the timestamps.
+     * @param postTriggerWindow the duration of raw data sent after each trigger.
+     * @param summaryInterval the interval at which summaries are sent outside of captures, or 0 to send no summaries.
+     * @return the event capture, to which triggers can be added.
+     * @see #disableEventCapture()
+     */
+    public EventCapture enableEventCapture(int capacity, long preTriggerWindow, long postTriggerWindow, long summaryInterval){
+        EventCapture capture = new EventCapture(capacity, preTriggerWindow, postTriggerWindow, summaryInterval, new SensorReadingListener() {
+            @Override
+            public void onSensorReading(SensorReading reading) {
+                enqueue(reading, false);
+            }
+        });
+        eventCapture = capture;
+        return capture;
+    }
+
+    /**
+     * Disables event-triggered capture, so that all readings are sent again.
+     */
+    public void disableEventCapture(){
+        eventCapture = null;
+    }
+
+    /**
+     * Gets the event capture.
+     * @return the event capture, or null if event-triggered capture is disabled.
+     * @see #enableEventCapture(int, long, long, long)
+     */
+    public EventCapture getEventCapture(){
+        return eventCapture;
+    }
+
+    /**
+     * Sets the controller that adapts the quality at which readings are sent to the measured
+     * capacity of the link. Every change of a sensor's quality is reported to the controller's
+     * {@link QualityListener} and marked in the stream by a
+     * {@link edu.umass.cs.MHLClient.sensors.QualityReading}. Priority readings are always sent
+     * unchanged.
+     * @param qualityController the controller, or null to always send readings at full quality.
+     */
+    public void setQualityController(QualityController qualityController){
+        this.qualityController = qualityController;
+    }
+
+    /**
+     * Sets the number of threads that encode readings in parallel to the transmission thread.
+     * In this pipelined mode, readings are grouped into chunks that are encoded into pooled
+     * buffers by the worker threads, while the transmission thread writes the chunks that are
+     * ready to the socket, in their original order. This raises the achievable message rate on
+     * multi-core devices, in particular for large readings such as audio buffers. Readings sent
+     * with a {@link #setCodec(String, TimeSeriesCodec) codec} are still batched by the
+     * transmission thread.
+     * @param threads the number of worker threads, or 0 to encode on the transmission thread.
+     */
+    public void setSerializationThreads(int threads){
+        ParallelSerializer previous = serializer;
+        serializer = threads > 0 ? new ParallelSerializer(threads) : null;
+        if (previous != null)
+            previous.shutdown();
+    }
+
+    /**
+     * Uploads a recorded session file in the background, over a dedicated connection to the
+     * server of the current session. The upload resumes automatically after connection losses,
+     * and uploading a file again, e.g. after the app was restarted, resumes where the previous
+     * upload of the file stopped. See {@link BulkUpload} for the protocol.
+     * @param file the file to upload.
+     * @param listener receives the progress of the upload, may be null.
+     * @return the upload, which can be used to cancel it.
+     */
+    public BulkUpload uploadFile(File file, UploadListener listener){
+        BulkUpload upload = new BulkUpload(this, file, uploadThrottle, listener);
+        upload.start();
+        return upload;
+    }
+
+    /**
+     * Sets the rate that all bulk uploads together may not exceed, which leaves bandwidth to
+     * the live readings. Uploads additionally pause while live readings back up in the queue.
+     * @param bytesPerSecond the rate in compressed bytes per second, or 0 for no limit.
+     */
+    public void setUploadRate(long bytesPerSecond){
+        uploadThrottle.setRate(bytesPerSecond);
+    }
+
+    /**
+     * Sets the store in which every reading passed to {@link #sendSensorReading(SensorReading)}
+     * is kept, so that application components can query recent readings from the client
+     * instead of buffering their own copies.
+     * @param recentReadingsStore the store, or null to stop storing readings.
+     */
+    public void setRecentReadingsStore(RecentReadingsStore recentReadingsStore){
+        this.recentReadingsStore = recentReadingsStore;
+    }
+
+    /**
+     * Gets the store of recent readings.
+     * @return the store, or null if none was set.
+     * @see #setRecentReadingsStore(RecentReadingsStore)
+     */
+    public RecentReadingsStore getRecentReadingsStore(){
+        return recentReadingsStore;
+    }
+
+    /**
+     * Sets the codec with which readings of the given sensor type are sent. Instead of one
+     * message per reading, the readings of each stream that are sent together, e.g. in the
+     * same burst, are encoded into a single message carrying the codec name, the field
+     * names, the number of readings and the Base64-encoded payload. Only readings with
+     * numeric {@link edu.umass.cs.MHLClient.sensors.SensorField annotated fields} can be
+     * encoded; other readings of the sensor type are sent individually.
+     * <br><br>
+     * In burst mode, each burst is sent as one batch per stream. In real-time mode, the
+     * readings are held until a stream has 50 readings or its oldest held reading is a second
+     * old, since the codec only pays off over many readings: a batch of a single reading is
+     * larger than the reading itself. Held readings are returned to the queue if the
+     * connection is lost.
+     * @param sensorType the sensor type, e.g. "SENSOR_ACCEL".
+     * @param codec the codec, or null to send readings of the sensor type individually.
+     */
+    public void setCodec(String sensorType, TimeSeriesCodec codec){
+        if (codec == null)
+            codecs.remove(sensorType);
+        else
+            codecs.put(sensorType, codec);
+    }
+
+    /**
+     * Gets the connection metrics, e.g. heartbeat round-trip times and failure detection times.
+     * @return the live connection statistics.
+     */
+    public ConnectionStatistics getConnectionStatistics(){
+        return statistics;
+    }
+
     /**
      * Sends a sensor reading to the server.
      * @param reading Any subclass of {@link SensorReading}, e.g. {@link edu.umass.cs.MHLClient.sensors.AccelerometerReading} or a custom reading
      * @return true if the reading was successfully queued for transmission to the server, false otherwise
      */
     public boolean sendSensorReading(SensorReading reading){
-        return sensorReadingQueue.offer(reading);
+        return sendSensorReading(reading, false);
+    }
+
+    /**
+     * Sends a sensor reading to the server. In burst mode, a priority reading triggers an
+     * immediate burst, as does a labelled reading if the {@link BurstPolicy} flushes on labels.
+     * @param reading Any subclass of {@link SensorReading}
+     * @param priority true if the reading should be sent without waiting for the next burst
+     * @return true if the reading was successfully queued for transmission to the server, false otherwise
+     */
+    public boolean sendSensorReading(SensorReading reading, boolean priority){
+        RecentReadingsStore store = recentReadingsStore;
+        if (store != null)
+            store.add(reading);
+
+        IMUResampler resampler = imuResampler;
+        if (resampler != null && IMUResampler.accepts(reading)) {
+            //the policy limits the sensors themselves, so it applies before their readings are fused
+            if (!samplingPolicy.admit(reading))
+                return true;
+            if (resampler.add(reading))
+                return true;
+        }
+        return capture(reading, priority);
+    }
+
+    /**
+     * Passes a reading to the event capture, if enabled, or queues it for transmission.
+     * @param reading the reading.
+     * @param priority true if the reading should be sent without waiting for the next burst.
+     * @return true if the reading was accepted, false otherwise.
+     */
+    private boolean capture(SensorReading reading, boolean priority){
+        EventCapture capture = eventCapture;
+        if (capture == null || priority)
+            return enqueue(reading, priority);
+        capture.add(reading);
+        return true;
+    }
+
+    /**
+     * Queues a reading for transmission, spilling it to disk if the queue is full in burst mode.
+     * @param reading the reading to queue.
+     * @param priority true if the reading should be sent without waiting for the next burst.
+     * @return true if the reading was queued or spilled, false otherwise.
+     */
+    private boolean enqueue(SensorReading reading, boolean priority){
+        //accelerometer and gyroscope readings were admitted before fusion, including those passed on unfused
+        boolean admitted = imuResampler != null && IMUResampler.accepts(reading);
+        if (!admitted && !samplingPolicy.admit(reading))
+            return true;
+        QualityController controller = qualityController;
+        if (controller != null) {
+            if (!priority) {
+                QualityLevel level = controller.getLevel(reading.getSensorType());
+                if (level != null && (reading = level.apply(reading)) == null)
+                    return true;
+            }
+            controller.onReadingOffered();
+        }
+        BurstPolicy policy = burstPolicy;
+        if (policy != null && (priority || (policy.isFlushOnLabel() && reading.getLabel() != -1)))
+            flushRequested = true;
+        if (sensorReadingQueue.offer(reading))
+            return true;
+        ReadingSpillFile spill = spillFile;
+        return policy != null && spill != null && spill.append(reading.toJSONString());
+    }
+
+    /**
+     * Queues a reading generated by the client itself, such as a quality marker or a control
+     * acknowledgement. These must not be lost, so if the queue is full, which is precisely
+     * when quality markers are issued, the reading is sent with the next transmission instead.
+     * @param reading the reading to queue.
+     */
+    private void enqueueControl(SensorReading reading){
+        if (!sensorReadingQueue.offer(reading))
+            controlReadings.add(reading);
     }
 
     /**
@@ -195,45 +897,119 @@ public class MobileIOClient {
      * connection and connection failed events.
      */
     public void connect(){
+        disconnectRequested = false;
         new Thread(new Runnable(){
             @Override
             public void run() {
-                if (socket == null || !socket.isConnected() || socket.isClosed()) {
-                    try {
-                        KeyStore ks = KeyStore.getInstance("BKS");
-                        InputStream keyin = context.getResources().openRawResource(R.raw.serverkeys);
-                        ks.load(keyin, "password".toCharArray());
-                        SSLSocketFactory socketFactory = new SSLSocketFactory(ks);
-                        socketFactory.setHostnameVerifier(SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
-                        socket = (SSLSocket) socketFactory.createSocket(new Socket(ip, port), ip, port, false);
-                        socket.startHandshake();
-                    }catch( IOException | KeyStoreException |
-                            UnrecoverableKeyException | CertificateException |
-                            KeyManagementException | NoSuchAlgorithmException e){
+                synchronized (connectionLock) {
+                    if (socket == null || !socket.isConnected() || socket.isClosed()) {
+                        ServerEndpoint server = null;
+                        Socket plainSocket = null;
+                        try {
+                            SSLSocketFactory socketFactory = createSocketFactory();
+                            server = selectServer(socketFactory);
+                            currentServer = server;
+                            Log.i(TAG, "Connecting to " + server);
 
-                        e.printStackTrace();
-                    }
+                            long start = SystemClock.elapsedRealtime();
+                            plainSocket = new Socket();
+                            plainSocket.connect(new InetSocketAddress(server.getHost(), server.getPort()), getConnectTimeout());
+                            long connected = SystemClock.elapsedRealtime();
+                            socket = (SSLSocket) socketFactory.createSocket(plainSocket, server.getHost(), server.getPort(), false);
+                            socket.startHandshake();
+                            server.onMeasured(connected - start, SystemClock.elapsedRealtime() - connected);
+                        }catch( IOException | KeyStoreException |
+                                UnrecoverableKeyException | CertificateException |
+                                KeyManagementException | NoSuchAlgorithmException e){
+
+                            e.printStackTrace();
+                            closeSocket(socket);
+                            closeSocket(plainSocket);
+                            socket = null;
+                            if (server != null && e instanceof IOException)
+                                server.onFailure(SystemClock.elapsedRealtime());
+                            if (connectionStateHandler != null) {
+                                connectionStateHandler.onConnectionFailed(e);
+                            }
+                            if (e instanceof IOException) {
+                                scheduleReconnect();
+                            }
+                            return;
+                        }
+
+                        Log.i(TAG, "STARTING SENSOR THREAD");
+
+                        //bound the handshake by the read timeout, so a dead server cannot block it indefinitely
+                        boolean connected;
+                        try {
+                            socket.setSoTimeout((int) readTimeout);
+                            connected = connectToServer();
+                            compactSession = false;
+                            if (connected && compactSessionEnabled && server.supportsCompactSession()) {
+                                socket.setSoTimeout(SESSION_NEGOTIATION_TIMEOUT);
+                                compactSession = negotiateCompactSession();
+                            }
+                            socket.setSoTimeout(0);
+                        } catch (ProtocolException e) {
+                            //a late reply would be taken for data, so the connection is replaced by one without the request
+                            Log.w(TAG, "No valid session reply from " + server + ", reconnecting without a compact session.");
+                            server.onCompactSessionUnsupported();
+                            closeSocket(socket);
+                            socket = null;
+                            if (!disconnectRequested)
+                                connect();
+                            return;
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                            if (connectionStateHandler != null) {
+                                connectionStateHandler.onConnectionFailed(e);
+                            }
+                            connected = false;
+                        }
 
-                    Log.i(TAG, "STARTING SENSOR THREAD");
+                        if (connected) {
+                            //reset the per-connection liveness state
+                            long now = SystemClock.elapsedRealtime();
+                            lastReceivedTime = now;
+                            lastHeartbeatTime = now;
+                            heartbeatDue = false;
+                            heartbeatsAcknowledged = false;
+                            writeStartTime = 0;
+                            readingsAcknowledged = readingsWritten;
+                            reconnectDelay = MIN_RECONNECT_DELAY;
+                            server.onConnected();
+                            preferredServer = server;
 
-                    if (connectToServer()) {
-                        //connection successful -- launch transmission thread
-                        final TransmissionRunnable transmissionRunnable = new TransmissionRunnable();
-                        transmissionThread = new Thread(transmissionRunnable);
-                        transmissionThread.start();
+                            //connection successful -- launch transmission thread
+                            final TransmissionRunnable transmissionRunnable = new TransmissionRunnable(socket);
+                            transmissionThread = new Thread(transmissionRunnable);
+                            transmissionThread.start();
 
-                        //launch notification consumption thread
-                        final ConsumptionRunnable consumptionRunnable = new ConsumptionRunnable();
-                        consumptionThread = new Thread(consumptionRunnable);
-                        consumptionThread.start();
+                            //launch notification consumption thread
+                            final ConsumptionRunnable consumptionRunnable = new ConsumptionRunnable(socket);
+                            consumptionThread = new Thread(consumptionRunnable);
+                            consumptionThread.start();
 
-                        Log.i(TAG, "Connected to server.");
-                    }else {
-                        Log.i(TAG, "Connection failed.");
-                        return;
+                            //launch the heartbeat and timeout monitor
+                            final ConnectionMonitorRunnable monitorRunnable = new ConnectionMonitorRunnable(socket);
+                            monitorThread = new Thread(monitorRunnable);
+                            monitorThread.start();
+
+                            Log.i(TAG, "Connected to server.");
+                        }else {
+                            Log.i(TAG, "Connection failed.");
+                            //a server that accepts connections before it is ready is retried, or failed over from
+                            server.onFailure(SystemClock.elapsedRealtime());
+                            if (server.equals(preferredServer))
+                                preferredServer = null;
+                            closeSocket(socket);
+                            socket = null;
+                            scheduleReconnect();
+                            return;
+                        }
+                    } else {
+                        Log.i(TAG, "Already connected to server.");
                     }
-                } else {
-                    Log.i(TAG, "Already connected to server.");
                 }
                 if (connectionStateHandler != null)
                     connectionStateHandler.onConnected();
@@ -241,6 +1017,365 @@ public class MobileIOClient {
         }).start();
     }
 
+    /**
+     * Creates the factory for TLS sockets that trust the configured or bundled server certificates.
+     * @return the socket factory.
+     */
+    private SSLSocketFactory createSocketFactory() throws IOException, KeyStoreException,
+            UnrecoverableKeyException, CertificateException, KeyManagementException, NoSuchAlgorithmException {
+        KeyStore ks = trustStore;
+        if (ks == null) {
+            ks = KeyStore.getInstance("BKS");
+            InputStream keyin = context.getResources().openRawResource(R.raw.serverkeys);
+            ks.load(keyin, "password".toCharArray());
+        }
+        SSLSocketFactory socketFactory = new SSLSocketFactory(ks);
+        socketFactory.setHostnameVerifier(SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
+        return socketFactory;
+    }
+
+    /**
+     * Opens a dedicated TLS connection for a bulk upload, to the server of the current
+     * session if there is one, and otherwise to the server that would be selected for it.
+     * The connection has not been authenticated yet.
+     * @return the connected socket, on which the read timeout is set.
+     */
+    SSLSocket openUploadSocket() throws IOException, GeneralSecurityException {
+        SSLSocketFactory socketFactory = createSocketFactory();
+        ServerEndpoint server = currentServer;
+        if (server == null)
+            server = selectServer(socketFactory);
+        Socket plainSocket = new Socket();
+        try {
+            plainSocket.connect(new InetSocketAddress(server.getHost(), server.getPort()), getConnectTimeout());
+            plainSocket.setSoTimeout(getConnectTimeout());
+            SSLSocket sslSocket = (SSLSocket) socketFactory.createSocket(plainSocket, server.getHost(), server.getPort(), true);
+            sslSocket.startHandshake();
+            return sslSocket;
+        } catch (IOException e) {
+            closeSocket(plainSocket);
+            throw e;
+        }
+    }
+
+    String getUserID(){
+        return userID;
+    }
+
+    /**
+     * Indicates whether live readings are backing up on an established connection, in which
+     * case bulk uploads pause. The queue is not considered in burst mode, where it fills by design.
+     * @param maxQueueDepth the number of queued readings above which live traffic is backlogged.
+     * @return true if live traffic is backlogged.
+     */
+    boolean isLiveTrafficBacklogged(int maxQueueDepth){
+        SSLSocket s = socket;
+        return s != null && !s.isClosed() && burstPolicy == null && sensorReadingQueue.size() > maxQueueDepth;
+    }
+
+    /**
+     * Selects the server to connect to: the preferred server if it is available, and
+     * otherwise the available server with the shortest connection setup time, measured by
+     * probing all available servers in parallel. If no server is available, the one whose
+     * quarantine ends first is selected.
+     * @param socketFactory creates the TLS sockets used for probing.
+     * @return the selected server.
+     */
+    private ServerEndpoint selectServer(final SSLSocketFactory socketFactory){
+        final ServerEndpoint[] candidates = servers;
+        long now = SystemClock.elapsedRealtime();
+        ServerEndpoint preferred = preferredServer;
+        if (preferred != null && preferred.isAvailable(now))
+            return preferred;
+        if (candidates.length == 1)
+            return candidates[0];
+
+        final boolean[] reachable = new boolean[candidates.length];
+        final CountDownLatch probes = new CountDownLatch(candidates.length);
+        for (int i = 0; i < candidates.length; i++) {
+            if (!candidates[i].isAvailable(now)) {
+                probes.countDown();
+                continue;
+            }
+            final int index = i;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    reachable[index] = probe(candidates[index], socketFactory);
+                    probes.countDown();
+                }
+            }).start();
+        }
+        try {
+            probes.await(getConnectTimeout(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+
+        //probes that have not completed by now count as unreachable
+        ServerEndpoint best = null;
+        for (int i = 0; i < candidates.length; i++) {
+            if (reachable[i] && (best == null || candidates[i].getSetupTime() < best.getSetupTime()))
+                best = candidates[i];
+        }
+        if (best != null) {
+            Log.i(TAG, "Selected " + best + " (" + best.getSetupTime() + " ms)");
+            return best;
+        }
+        for (ServerEndpoint candidate : candidates) {
+            if (best == null || candidate.getQuarantinedUntil() < best.getQuarantinedUntil())
+                best = candidate;
+        }
+        return best;
+    }
+
+    /**
+     * Gets the time allowed for establishing a connection, which is the read timeout or,
+     * if the read timeout is disabled, its default.
+     * @return the timeout in milliseconds.
+     */
+    private int getConnectTimeout(){
+        long timeout = readTimeout;
+        return (int) (timeout > 0 ? timeout : DEFAULT_READ_TIMEOUT);
+    }
+
+    /**
+     * Measures the time to connect to a server and to complete the TLS handshake, without
+     * identifying the user, and closes the connection again.
+     * @param server the server to probe.
+     * @param socketFactory creates the TLS socket.
+     * @return true if the server could be reached, false otherwise.
+     */
+    private boolean probe(ServerEndpoint server, SSLSocketFactory socketFactory){
+        Socket plainSocket = new Socket();
+        Socket sslSocket = null;
+        try {
+            long start = SystemClock.elapsedRealtime();
+            plainSocket.connect(new InetSocketAddress(server.getHost(), server.getPort()), getConnectTimeout());
+            long connected = SystemClock.elapsedRealtime();
+            plainSocket.setSoTimeout(getConnectTimeout());
+            sslSocket = socketFactory.createSocket(plainSocket, server.getHost(), server.getPort(), true);
+            ((SSLSocket) sslSocket).startHandshake();
+            server.onMeasured(connected - start, SystemClock.elapsedRealtime() - connected);
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Could not reach " + server + ": " + e.getMessage());
+            server.onFailure(SystemClock.elapsedRealtime());
+            return false;
+        } finally {
+            //closing the TLS layer first would wait for the server's close_notify, which a
+            //server waiting for the user ID does not send until its read times out
+            closeSocket(plainSocket);
+            closeSocket(sslSocket);
+        }
+    }
+
+    /**
+     * Schedules a reconnection attempt if automatic reconnection is enabled and the
+     * user has not requested to disconnect. Successive attempts back off exponentially.
+     */
+    private void scheduleReconnect(){
+        if (!autoReconnect || disconnectRequested)
+            return;
+        final long delay = reconnectDelay;
+        reconnectDelay = Math.min(2 * reconnectDelay, MAX_RECONNECT_DELAY);
+        Log.i(TAG, "Reconnecting in " + delay + " ms.");
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (!disconnectRequested)
+                    connect();
+            }
+        }).start();
+    }
+
+    /**
+     * Tears down a connection that is no longer usable and hands off to the reconnection logic.
+     * Only the first call for a given socket has any effect, so the transmission, consumption
+     * and monitor threads may all report the same failure.
+     * @param lostSocket the socket of the connection that was lost.
+     * @param reason describes why the connection was lost.
+     * @param cause the underlying exception, may be null.
+     */
+    private void onConnectionLost(SSLSocket lostSocket, String reason, Throwable cause){
+        synchronized (connectionLock) {
+            if (lostSocket == null || lostSocket != socket)
+                return;
+            socket = null;
+        }
+        if (disconnectRequested)
+            return;
+
+        long now = SystemClock.elapsedRealtime();
+        long writeStart = writeStartTime;
+        long lastSignOfLife = heartbeatsAcknowledged ? lastReceivedTime : now;
+        if (writeStart != 0)
+            lastSignOfLife = Math.min(lastSignOfLife, writeStart);
+        long readingsAtRisk = heartbeatsAcknowledged ? readingsWritten - readingsAcknowledged : 0;
+        statistics.onDeadConnectionDetected(now - lastSignOfLife, readingsAtRisk);
+
+        Log.w(TAG, "Connection lost: " + reason);
+        //fail over to another server, if any, on the next connection
+        ServerEndpoint server = currentServer;
+        if (server != null) {
+            server.onFailure(now);
+            if (server.equals(preferredServer))
+                preferredServer = null;
+        }
+        closeSocket(lostSocket);
+        if (transmissionThread != null)
+            transmissionThread.interrupt();
+        if (consumptionThread != null)
+            consumptionThread.interrupt();
+        if (monitorThread != null)
+            monitorThread.interrupt();
+
+        if (connectionStateHandler != null) {
+            connectionStateHandler.onConnectionFailed(new ConnectionLostException(reason, cause));
+        }
+        scheduleReconnect();
+    }
+
+    /**
+     * Closes the given socket, ignoring any errors.
+     * @param s the socket to close, may be null.
+     */
+    private static void closeSocket(Socket s){
+        if (s == null)
+            return;
+        try {
+            s.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes a single line to the server, without flushing. The time at which the write
+     * started is recorded, so that the connection monitor can detect writes that block
+     * indefinitely.
+     * @param line the line to write, excluding the line terminator.
+     * @throws IOException if the line could not be written.
+     */
+    private void writeLine(String line) throws IOException {
+        synchronized (writeLock) {
+            writeStartTime = SystemClock.elapsedRealtime();
+            try {
+                output.write(line);
+                output.write('\n');
+            } finally {
+                writeStartTime = 0;
+            }
+        }
+    }
+
+    /**
+     * Writes lines that were already encoded, e.g. by the serialization workers, after any
+     * buffered lines, recording the time at which the write started as in {@link #writeLine(String)}.
+     * @param bytes the encoded lines, each terminated by a line feed.
+     * @param offset the position of the first byte.
+     * @param length the number of bytes to write.
+     * @throws IOException if the lines could not be written.
+     */
+    private void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+        synchronized (writeLock) {
+            writeStartTime = SystemClock.elapsedRealtime();
+            try {
+                //keep the order of previously written lines, e.g. stream declarations
+                output.flush();
+                outputCounter.write(bytes, offset, length);
+            } finally {
+                writeStartTime = 0;
+            }
+        }
+    }
+
+    /**
+     * Flushes the lines written to the server, recording the time at which the flush
+     * started, as in {@link #writeLine(String)}.
+     * @throws IOException if the lines could not be written.
+     */
+    private void flushOutput() throws IOException {
+        synchronized (writeLock) {
+            writeStartTime = SystemClock.elapsedRealtime();
+            try {
+                output.flush();
+            } finally {
+                writeStartTime = 0;
+            }
+        }
+    }
+
+    /**
+     * Sends a heartbeat and records its send time, so that its echo can be matched.
+     * @throws IOException if the heartbeat could not be written.
+     */
+    private void sendHeartbeat() throws IOException {
+        heartbeatDue = false;
+        long now = SystemClock.elapsedRealtime();
+        int sequence;
+        synchronized (heartbeatSequences) {
+            sequence = ++heartbeatSequence;
+            int slot = (sequence & Integer.MAX_VALUE) % HEARTBEAT_WINDOW;
+            heartbeatSequences[slot] = sequence;
+            heartbeatSendTimes[slot] = now;
+            heartbeatReadingCounts[slot] = readingsWritten;
+        }
+        lastHeartbeatTime = now;
+        writeLine(new HeartbeatReading(userID, System.currentTimeMillis(), sequence).toJSONString());
+        statistics.onHeartbeatSent();
+    }
+
+    /**
+     * Applies a control message from the server by replacing the sampling policy, and
+     * acknowledges it. Invalid messages are rejected without changing the policy.
+     * @param data the 'data' object of the control message.
+     */
+    private void onControlReceived(JSONObject data){
+        long id = data == null ? -1 : data.optLong("id", -1);
+        String error = "";
+        if (!remoteControlEnabled) {
+            error = "remote control disabled";
+        } else if (data == null) {
+            error = "missing data";
+        } else {
+            try {
+                samplingPolicy = SamplingPolicy.fromJSON(data);
+                updateBurstPolicy();
+                Log.i(TAG, "Applied control message " + id);
+            } catch (JSONException e) {
+                error = e.getMessage() == null ? "invalid control message" : e.getMessage();
+            }
+        }
+        if (!error.isEmpty())
+            Log.w(TAG, "Rejected control message " + id + ": " + error);
+        //acknowledge with the next transmission, bypassing the sampling limits
+        enqueueControl(new ControlAckReading(userID, System.currentTimeMillis(), id, error.isEmpty(), error));
+        flushRequested = true;
+    }
+
+    /**
+     * Handles a heartbeat echoed by the server, updating the round-trip time.
+     * @param sequence the sequence number of the echoed heartbeat.
+     */
+    private void onHeartbeatReceived(int sequence){
+        long now = SystemClock.elapsedRealtime();
+        synchronized (heartbeatSequences) {
+            int slot = (sequence & Integer.MAX_VALUE) % HEARTBEAT_WINDOW;
+            if (heartbeatSequences[slot] != sequence)
+                return; //too old to be matched
+            heartbeatSequences[slot] = 0;
+            readingsAcknowledged = Math.max(readingsAcknowledged, heartbeatReadingCounts[slot]);
+            statistics.onHeartbeatReceived(now - heartbeatSendTimes[slot]);
+        }
+        heartbeatsAcknowledged = true;
+    }
+
     /**
      * Authenticates the user with a handshake.
      */
@@ -249,14 +1384,22 @@ public class MobileIOClient {
 
         try {
             input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            output = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+            outputCounter = new CountingOutputStream(socket.getOutputStream());
+            output = new BufferedWriter(new OutputStreamWriter(outputCounter));
             String handshake = input.readLine();
             if (handshake == null || !handshake.equals("ID")){
                 Log.w(TAG, "Handshake failed.");
+                if (connectionStateHandler != null) {
+                    connectionStateHandler.onConnectionFailed(new AuthenticationException());
+                }
                 return false;
             }
         } catch (IOException e) {
             e.printStackTrace();
+            if (connectionStateHandler != null) {
+                connectionStateHandler.onConnectionFailed(e);
+            }
+            return false;
         }
 
         String outString = "ID," + userID + "\n";
@@ -298,23 +1441,60 @@ public class MobileIOClient {
         Log.i(TAG, "User ID: " + userID);
 
         //expecting "ACK" with user ID echoed back as CSV string, e.g.: "ACK,0"
-        if (!("ACK".equals(ack[0]) && ack[1].equals(userID))){
+        if (!(ack.length >= 2 && "ACK".equals(ack[0]) && ack[1].equals(userID))){
             if (connectionStateHandler != null) {
                 connectionStateHandler.onConnectionFailed(new AuthenticationException());
             }
             return false;
         }
+
         return true;
     }
 
+    /**
+     * Requests a compact session from the server. The server accepts by echoing the request
+     * and declines with {@link #FULL_SESSION_REPLY}. The reply must arrive within the socket
+     * timeout, which should be set to {@link #SESSION_NEGOTIATION_TIMEOUT}.
+     * @return true if the server accepted the compact session, false if it declined.
+     * @throws ProtocolException if the server did not reply in time or replied with anything else,
+     * in which case the state of the session is unknown and the connection must not be used.
+     * @throws IOException if the request could not be written or the connection was lost.
+     */
+    private boolean negotiateCompactSession() throws IOException {
+        output.write(COMPACT_SESSION_REQUEST + "\n");
+        output.flush();
+        String response;
+        try {
+            response = input.readLine();
+        } catch (SocketTimeoutException e) {
+            ProtocolException timeout = new ProtocolException("Session reply timed out");
+            timeout.initCause(e);
+            throw timeout;
+        }
+        Log.i(TAG, "Session response: " + response);
+        if (COMPACT_SESSION_REQUEST.equals(response))
+            return true;
+        if (FULL_SESSION_REPLY.equals(response))
+            return false;
+        if (response == null)
+            throw new EOFException("Connection closed during session negotiation");
+        throw new ProtocolException("Unexpected session reply: " + response);
+    }
+
     /**
      * Closes the socket connection.
      */
     public void disconnect(){
         Log.i(TAG, "disconnect()");
-        transmissionThread.interrupt();
-        consumptionThread.interrupt();
+        disconnectRequested = true;
+        if (transmissionThread != null)
+            transmissionThread.interrupt();
+        if (consumptionThread != null)
+            consumptionThread.interrupt();
+        if (monitorThread != null)
+            monitorThread.interrupt();
         sensorReadingQueue.clear();
+        controlReadings.clear();
     }
 
     /**
@@ -322,67 +1502,410 @@ public class MobileIOClient {
      * It must be initialized with a valid open socket.
      */
     private class TransmissionRunnable implements Runnable {
-        public TransmissionRunnable(){}
+        /** The socket this thread writes to. **/
+        private final SSLSocket connectionSocket;
+
+        /** The writer associated with the socket. **/
+        private final BufferedWriter connectionOutput;
+
+        public TransmissionRunnable(SSLSocket connectionSocket){
+            this.connectionSocket = connectionSocket;
+            this.connectionOutput = output;
+        }
+
         public void run(){
-            ArrayList<SensorReading> latestReadings;
+            ArrayList<SensorReading> latestReadings = new ArrayList<>();
+
+            //stream IDs declared on this connection, keyed by stream key
+            HashMap<String, Integer> streamIDs = new HashMap<>();
+
+            //readings to be sent in encoded batches, keyed by stream key
+            HashMap<String, PendingBatch> batches = new HashMap<>();
+
+            //chunks being encoded by the serialization workers, in the order they are written
+            ArrayList<ParallelSerializer.Chunk> chunks = new ArrayList<>();
+            BitOutput bits = new BitOutput(4096);
 
             //transmit data continuously until stopped
-            //auto reconnect in case of interruption
-//          if (!running) this.connectToServer();
             try {
                 while (!Thread.currentThread().isInterrupted()) {
-                    latestReadings = new ArrayList<>();
-                    sensorReadingQueue.drainTo(latestReadings);
-
-                    for (int i = 0; i < latestReadings.size(); i++) {
-                        SensorReading reading = latestReadings.get(i);
-                        Log.d(TAG, "Sending data to server: " + reading.toJSONString());
-                        output.write(reading.toJSONString() + "\n");
-                        output.flush();
+                    BurstPolicy policy = burstPolicy;
+                    long written = 0, writeLatency = 0;
+                    int readingsSent = 0;
+                    if (policy == null || isBurstDue(policy)) {
+                        long start = SystemClock.elapsedRealtime();
+                        long bytes = outputCounter.getCount();
+                        boolean heartbeat = heartbeatDue;
+                        flushRequested = false;
+                        if (heartbeat)
+                            sendHeartbeat();
+
+                        latestReadings.clear();
+                        sensorReadingQueue.drainTo(latestReadings);
+                        SensorReading control;
+                        while ((control = controlReadings.poll()) != null)
+                            latestReadings.add(control);
+
+                        ParallelSerializer pipeline = serializer;
+                        ParallelSerializer.Chunk chunk = null;
+                        int held = 0;
+                        for (int i = 0; i < latestReadings.size(); i++) {
+                            SensorReading reading = latestReadings.get(i);
+                            String json;
+                            try {
+                                if (addToBatch(reading, batches)) {
+                                    held++;
+                                    continue;
+                                }
+                                if (pipeline != null) {
+                                    //hand full chunks to the workers right away, so that encoding starts while the rest is grouped
+                                    if (chunk == null)
+                                        chunk = new ParallelSerializer.Chunk();
+                                    if (chunk.add(reading, declareStream(reading, streamIDs))) {
+                                        pipeline.submit(chunk);
+                                        chunks.add(chunk);
+                                        chunk = null;
+                                    }
+                                    continue;
+                                }
+                                json = encode(reading, streamIDs);
+                            } catch (RuntimeException e) {
+                                //a reading that cannot be encoded is dropped rather than costing the session
+                                Log.e(TAG, "Dropped " + reading.getClass().getName() + " that could not be encoded.", e);
+                                continue;
+                            }
+                            Log.d(TAG, "Sending data to server: " + json);
+                            writeLine(json);
+                            readingsWritten++;
+                        }
+                        if (chunk != null) {
+                            pipeline.submit(chunk);
+                            chunks.add(chunk);
+                        }
+                        writeChunks(chunks, pipeline);
+                        //batches held from earlier cycles may fall due without any new readings
+                        int batched = writeBatches(batches, bits, policy != null, start);
+                        int count = latestReadings.size() - held + batched + sendSpilledReadings();
+
+                        if (count > 0 || heartbeat) {
+                            flushOutput();
+                            long end = SystemClock.elapsedRealtime();
+                            bytes = outputCounter.getCount() - bytes;
+                            written = bytes;
+                            readingsSent = count;
+                            writeLatency = end - start;
+                            long radioOnTime = estimateRadioOnTime(start, end);
+                            statistics.onTransmission(bytes, radioOnTime, policy != null);
+                            if (policy != null && burstListener != null)
+                                burstListener.onBurstSent(count, bytes, end - start, radioOnTime);
+                        }
+                        lastBurstTime = start;
+                    }
+                    QualityController controller = qualityController;
+                    if (controller != null) {
+                        int previousStep = controller.update(SystemClock.elapsedRealtime(), policy != null,
+                                sensorReadingQueue.size(), readingsSent, written, writeLatency);
+                        if (previousStep >= 0)
+                            controller.onStepChanged(previousStep, qualityMarker);
                     }
                     Thread.sleep(10);
                 }
-            } catch (IOException | InterruptedException e){
+            } catch (IOException e){
+                e.printStackTrace();
+                //auto reconnect in case of interruption
+                onConnectionLost(connectionSocket, "write failed", e);
+            } catch (InterruptedException e){
                 e.printStackTrace();
+            } catch (RuntimeException e){
+                e.printStackTrace();
+                //report the failure before the socket is released below, so that the client reconnects
+                onConnectionLost(connectionSocket, "transmission failed", e);
             } finally {
-//                try {
-//                    Log.i(TAG, "Sending null character to request termination...");
-//                    output.write("\0\n");
-//                    output.flush();
-//                } catch (IOException e) {
-//                    e.printStackTrace();
-//                }
+                requeueBatches(batches);
                 try {
-                    output.close();
+                    connectionOutput.close();
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
-                try {
-                    if (socket != null)
-                        socket.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                } finally {
-                    socket = null;
+                closeSocket(connectionSocket);
+                synchronized (connectionLock) {
+                    if (socket == connectionSocket)
+                        socket = null;
                 }
             }
         }
     }
 
+    /**
+     * Indicates whether a burst should be sent, i.e. if the burst interval has elapsed,
+     * a flush was requested or too many readings are buffered.
+     * @param policy the current burst policy.
+     * @return true if a burst is due, false otherwise.
+     */
+    private boolean isBurstDue(BurstPolicy policy){
+        return flushRequested
+                || SystemClock.elapsedRealtime() - lastBurstTime >= policy.getInterval()
+                || sensorReadingQueue.size() >= policy.getFlushThreshold();
+    }
+
+    /**
+     * Sends the readings spilled to disk, if any.
+     * @return the number of readings sent.
+     * @throws IOException if the readings could not be sent.
+     */
+    private int sendSpilledReadings() throws IOException {
+        ReadingSpillFile spill = spillFile;
+        if (spill == null)
+            return 0;
+        File file = spill.take();
+        if (file == null)
+            return 0;
+
+        int count = 0;
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                writeLine(line);
+                readingsWritten++;
+                count++;
+            }
+        } finally {
+            reader.close();
+        }
+        flushOutput();
+        spill.release(file);
+        return count;
+    }
+
+    /**
+     * Estimates the time the radio spends in its high-power state because of a transmission,
+     * assuming it stays there for the tail time after the transmission ends. Overlap with the
+     * tail of the previous transmission is not counted twice.
+     * @param start the time at which the transmission started.
+     * @param end the time at which the transmission ended.
+     * @return the estimated radio-on time in milliseconds.
+     */
+    private long estimateRadioOnTime(long start, long end){
+        long off = end + radioTailTime;
+        long radioOnTime = off - Math.max(start, radioOffTime);
+        radioOffTime = off;
+        return radioOnTime;
+    }
+
+    /**
+     * Adds a reading to the pending batch of its stream if its sensor type is sent with a codec.
+     * @param reading the reading to add.
+     * @param batches the pending batches, keyed by stream key.
+     * @return true if the reading was added to a batch, false if it should be sent individually.
+     */
+    private boolean addToBatch(SensorReading reading, HashMap<String, PendingBatch> batches){
+        TimeSeriesCodec codec = codecs.get(reading.getSensorType());
+        if (codec == null)
+            return false;
+        String key = reading.getStreamKey();
+        PendingBatch pending = batches.get(key);
+        if (pending == null) {
+            SensorReadingEncoder encoder = SensorReadingEncoder.forClass(reading.getClass());
+            if (encoder == null || encoder.getChannelCount() == 0)
+                return false;
+            pending = new PendingBatch(encoder);
+            batches.put(key, pending);
+        }
+        if (pending.readings.isEmpty()) {
+            pending.codec = codec;
+            pending.since = SystemClock.elapsedRealtime();
+        }
+        pending.readings.add(reading);
+        return true;
+    }
+
+    /**
+     * Encodes and writes the pending batches that are due. In real-time mode, a batch is due
+     * once it holds {@link #MIN_BATCH_SIZE} readings or its oldest reading was held for
+     * {@link #MAX_BATCH_AGE}.
+     * @param batches the pending batches, keyed by stream key.
+     * @param bits the bit output reused for encoding.
+     * @param all true to write all non-empty batches, as at the end of a burst.
+     * @param now the current time, see {@link SystemClock#elapsedRealtime()}.
+     * @return the number of readings written.
+     * @throws IOException if a batch could not be written.
+     */
+    private int writeBatches(HashMap<String, PendingBatch> batches, BitOutput bits, boolean all, long now) throws IOException {
+        int written = 0;
+        for (PendingBatch pending : batches.values()) {
+            int count = pending.readings.size();
+            if (count == 0 || !(all || count >= MIN_BATCH_SIZE || now - pending.since >= MAX_BATCH_AGE))
+                continue;
+            for (int i = 0; i < count; i++) {
+                SensorReading reading = pending.readings.get(i);
+                pending.encoder.readChannels(reading, pending.sample);
+                pending.batch.add(reading.getTimestamp(), reading.getLabel(), pending.sample);
+            }
+            bits.reset();
+            pending.codec.encode(pending.batch, bits);
+            String payload = Base64.encodeToString(bits.toByteArray(), Base64.NO_WRAP);
+            writeLine(pending.encoder.toBatchJSONString(pending.readings.get(0), pending.codec.getName(), count, payload));
+            readingsWritten += count;
+            written += count;
+            pending.batch.clear();
+            pending.readings.clear();
+        }
+        return written;
+    }
+
+    /**
+     * Returns the readings held in pending batches to the queue, so that they are sent on
+     * the next connection instead of being lost with this one. Readings that no longer fit
+     * into the queue are dropped.
+     * @param batches the pending batches, keyed by stream key.
+     */
+    private void requeueBatches(HashMap<String, PendingBatch> batches){
+        for (PendingBatch pending : batches.values()) {
+            if (!disconnectRequested) {
+                for (SensorReading reading : pending.readings)
+                    sensorReadingQueue.offer(reading);
+            }
+            pending.readings.clear();
+        }
+    }
+
+    /**
+     * The readings of a stream waiting to be encoded by a {@link TimeSeriesCodec}.
+     */
+    private static class PendingBatch {
+        /** Extracts the values of the readings. **/
+        final SensorReadingEncoder encoder;
+
+        /** The held readings, the first of which provides the metadata sent with the batch. **/
+        final ArrayList<SensorReading> readings = new ArrayList<>();
+
+        /** Collects the samples of the held readings when the batch is encoded. **/
+        final TimeSeriesBatch batch;
+
+        /** Holds the values of the reading being added. **/
+        final double[] sample;
+
+        /** The codec the batch is encoded with. **/
+        TimeSeriesCodec codec;
+
+        /** The time the oldest held reading was added, see {@link SystemClock#elapsedRealtime()}. **/
+        long since;
+
+        PendingBatch(SensorReadingEncoder encoder){
+            this.encoder = encoder;
+            this.batch = new TimeSeriesBatch(encoder.getChannelCount(), MIN_BATCH_SIZE);
+            this.sample = new double[encoder.getChannelCount()];
+        }
+    }
+
+    /**
+     * Writes chunks encoded by the serialization workers in order, waiting for each chunk
+     * to be encoded, and clears the list.
+     * @param chunks the submitted chunks, in the order of their readings.
+     * @param pipeline the serializer the chunks were submitted to.
+     * @throws IOException if a chunk could not be written.
+     * @throws InterruptedException if the thread was interrupted while waiting for a chunk.
+     */
+    private void writeChunks(ArrayList<ParallelSerializer.Chunk> chunks, ParallelSerializer pipeline) throws IOException, InterruptedException {
+        try {
+            for (int i = 0; i < chunks.size(); i++) {
+                ParallelSerializer.Chunk chunk = chunks.get(i);
+                ByteBuffer encoded = pipeline.await(chunk);
+                writeBytes(encoded.array(), encoded.arrayOffset() + encoded.position(), encoded.remaining());
+                pipeline.release(encoded);
+                readingsWritten += chunk.count - chunk.dropped;
+            }
+        } finally {
+            chunks.clear();
+        }
+    }
+
+    /**
+     * Declares the stream of a reading in a compact session, the first time it is seen on
+     * the connection. Unlike {@link #encode(SensorReading, HashMap)}, this happens before the
+     * reading is encoded, so streams whose readings do not support the compact form are
+     * declared as well, but never referred to.
+     * @param reading the reading.
+     * @param streamIDs the streams declared on the current connection.
+     * @return the ID of the reading's stream, or -1 if the session is not compact.
+     * @throws IOException if the stream declaration could not be written.
+     */
+    private int declareStream(SensorReading reading, HashMap<String, Integer> streamIDs) throws IOException {
+        if (!compactSession)
+            return -1;
+        String key = reading.getStreamKey();
+        Integer streamID = streamIDs.get(key);
+        if (streamID == null) {
+            streamID = streamIDs.size();
+            writeLine(reading.toStreamDeclarationString(streamID));
+            streamIDs.put(key, streamID);
+        }
+        return streamID;
+    }
+
+    /**
+     * Converts a reading into a transmission-ready string. In a compact session, the
+     * reading's stream is declared the first time it is seen on the connection.
+     * @param reading the reading to encode.
+     * @param streamIDs the streams declared on the current connection.
+     * @return the encoded reading.
+     * @throws IOException if the stream declaration could not be written.
+     */
+    private String encode(SensorReading reading, HashMap<String, Integer> streamIDs) throws IOException {
+        if (compactSession) {
+            String key = reading.getStreamKey();
+            Integer streamID = streamIDs.get(key);
+            if (streamID == null) {
+                streamID = streamIDs.size();
+                String json = reading.toCompactJSONString(streamID);
+                if (json == null)
+                    return reading.toJSONString();
+                writeLine(reading.toStreamDeclarationString(streamID));
+                streamIDs.put(key, streamID);
+                return json;
+            }
+            String json = reading.toCompactJSONString(streamID);
+            if (json != null)
+                return json;
+        }
+        return reading.toJSONString();
+    }
+
     /**
      * A consumption thread is responsible for receiving data, e.g. messages, from the server.
      * It must be initialized with a valid open socket.
      */
     private class ConsumptionRunnable implements Runnable {
+        /** The socket this thread reads from. **/
+        private final SSLSocket connectionSocket;
+
+        /** The reader associated with the socket. **/
+        private final BufferedReader connectionInput;
+
+        public ConsumptionRunnable(SSLSocket connectionSocket){
+            this.connectionSocket = connectionSocket;
+            this.connectionInput = input;
+        }
+
         public void run(){
             try {
                 String json=null;
 
-                while (!Thread.currentThread().isInterrupted() && (json = input.readLine()) != null){
-                    Log.i("received notification: ", json);
+                while (!Thread.currentThread().isInterrupted() && (json = connectionInput.readLine()) != null){
+                    lastReceivedTime = SystemClock.elapsedRealtime();
                     try {
                         JSONObject obj = new JSONObject(json);
                         String sensorType = obj.getString("sensor_type");
+                        if (sensorType.equals(HeartbeatReading.SENSOR_TYPE)) {
+                            onHeartbeatReceived(obj.getJSONObject("data").getInt("seq"));
+                            continue;
+                        }
+                        if (sensorType.equals(CONTROL_TYPE)) {
+                            onControlReceived(obj.optJSONObject("data"));
+                            continue;
+                        }
+                        Log.i("received notification: ", json);
                         Log.i(TAG, "Notification has sensor type " + sensorType);
                         if (sensorType.equals("SENSOR_SERVER_MESSAGE")) {
                             String message = obj.getString("message");
@@ -397,6 +1920,7 @@ public class MobileIOClient {
                 }
                 if (json == null) {
                     Log.i(TAG, "Received null character. Terminating consumption thread...");
+                    onConnectionLost(connectionSocket, "connection closed by server", null);
                 } else {
                     Log.i(TAG, "Thread interrupted. Terminating consumption thread...");
                 }
@@ -404,9 +1928,10 @@ public class MobileIOClient {
             } catch (IOException e) {
                 Log.e(TAG, "IO Error receiving data from server.");
                 e.printStackTrace();
+                onConnectionLost(connectionSocket, "read failed", e);
             } finally {
                 try {
-                    input.close();
+                    connectionInput.close();
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
@@ -414,4 +1939,50 @@ public class MobileIOClient {
             }
         }
     }
+
+    /**
+     * A connection monitor is responsible for scheduling heartbeats and for tearing down
+     * the connection when the read or write timeout expires. It never writes to the socket
+     * itself, so it cannot be blocked by a stalled connection.
+     */
+    private class ConnectionMonitorRunnable implements Runnable {
+        /** The socket of the monitored connection. **/
+        private final SSLSocket connectionSocket;
+
+        public ConnectionMonitorRunnable(SSLSocket connectionSocket){
+            this.connectionSocket = connectionSocket;
+        }
+
+        public void run(){
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    Thread.sleep(MONITOR_PERIOD);
+                    long now = SystemClock.elapsedRealtime();
+
+                    long interval = heartbeatInterval;
+                    if (interval > 0 && now - lastHeartbeatTime >= interval)
+                        heartbeatDue = true;
+
+                    long writeStart = writeStartTime;
+                    long timeout = writeTimeout;
+                    if (timeout > 0 && writeStart != 0 && now - writeStart > timeout) {
+                        onConnectionLost(connectionSocket, "write blocked for " + (now - writeStart) + " ms", null);
+                        return;
+                    }
+
+                    //in burst mode, the server is silent between bursts, so only an unanswered heartbeat counts
+                    timeout = readTimeout;
+                    boolean silent = burstPolicy == null
+                            ? now - lastReceivedTime > timeout
+                            : lastHeartbeatTime > lastReceivedTime && now - lastHeartbeatTime > timeout;
+                    if (timeout > 0 && heartbeatsAcknowledged && silent) {
+                        onConnectionLost(connectionSocket, "no data received for " + (now - lastReceivedTime) + " ms", null);
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Log.i(TAG, "Connection monitor terminated.");
+            }
+        }
+    }
 }
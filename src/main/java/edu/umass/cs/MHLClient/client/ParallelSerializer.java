@@ -0,0 +1,211 @@
+package edu.umass.cs.MHLClient.client;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.Charset;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.umass.cs.MHLClient.sensors.SensorReading;
+import edu.umass.cs.MHLClient.structures.ByteBufferPool;
+
+/**
+ * Encodes readings into UTF-8 lines on a pool of worker threads, so that serialization
+ * of one part of the queue overlaps with writing another part to the socket. Readings are
+ * grouped into {@link Chunk chunks} which are encoded independently into pooled buffers;
+ * the transmission thread writes the chunks in the order they were submitted, which
+ * preserves the order of the readings, in particular per sensor.
+ *
+ * @author Sean Noran
+ *
+ * @see MobileIOClient#setSerializationThreads(int)
+ */
+class ParallelSerializer {
+
+    /** Used for debugging purposes **/
+    private static final String TAG = ParallelSerializer.class.getName();
+
+    /** The number of readings per chunk. **/
+    static final int CHUNK_SIZE = 32;
+
+    /** The initial capacity of the encoding buffers. **/
+    private static final int BUFFER_SIZE = 16384;
+
+    /** The largest capacity of a pooled encoding buffer. **/
+    private static final int MAX_POOLED_CAPACITY = 1 << 20;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** The encoder used by each worker thread. **/
+    private static final ThreadLocal<CharsetEncoder> encoders = new ThreadLocal<CharsetEncoder>() {
+        @Override
+        protected CharsetEncoder initialValue() {
+            return UTF_8.newEncoder();
+        }
+    };
+
+    /** The worker threads. **/
+    private final ExecutorService executor;
+
+    /** Recycles the encoding buffers. **/
+    private final ByteBufferPool pool;
+
+    /**
+     * Instantiates a parallel serializer.
+     * @param threads the number of worker threads.
+     */
+    ParallelSerializer(int threads){
+        final AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "serializer-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        pool = new ByteBufferPool(BUFFER_SIZE, 4 * threads, MAX_POOLED_CAPACITY);
+    }
+
+    /**
+     * Submits a chunk for encoding. If the serializer has been shut down in the meantime,
+     * the chunk is encoded on the calling thread.
+     * @param chunk a chunk with at least one reading, which must not be modified afterwards.
+     */
+    void submit(final Chunk chunk){
+        FutureTask<ByteBuffer> task = new FutureTask<>(new Callable<ByteBuffer>() {
+            @Override
+            public ByteBuffer call() throws Exception {
+                return encode(chunk);
+            }
+        });
+        chunk.future = task;
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            //the serializer was replaced while the transmission thread was still using it
+            task.run();
+        }
+    }
+
+    /**
+     * Waits until a chunk has been encoded.
+     * @param chunk a submitted chunk.
+     * @return the encoded lines, ready to be read; pass it to {@link #release(ByteBuffer)} once written.
+     * @throws InterruptedException if the calling thread was interrupted while waiting.
+     */
+    ByteBuffer await(Chunk chunk) throws InterruptedException {
+        try {
+            return chunk.future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Returns an encoding buffer to the pool after it has been written.
+     * @param buffer the buffer returned by {@link #await(Chunk)}.
+     */
+    void release(ByteBuffer buffer){
+        pool.release(buffer);
+    }
+
+    /**
+     * Stops the worker threads once the chunks submitted so far have been encoded, so
+     * that a transmission thread waiting for them is not left hanging.
+     */
+    void shutdown(){
+        executor.shutdown();
+    }
+
+    /**
+     * Encodes the readings of a chunk, one line each, on a worker thread. Readings that
+     * cannot be encoded are dropped and counted in {@link Chunk#dropped}.
+     * @param chunk the chunk.
+     * @return the encoded lines, flipped for reading.
+     */
+    private ByteBuffer encode(Chunk chunk){
+        CharsetEncoder encoder = encoders.get();
+        ByteBuffer buffer = pool.acquire();
+        for (int i = 0; i < chunk.count; i++) {
+            SensorReading reading = chunk.readings[i];
+            String line;
+            try {
+                line = chunk.streamIDs[i] >= 0 ? reading.toCompactJSONString(chunk.streamIDs[i]) : null;
+                if (line == null)
+                    line = reading.toJSONString();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Dropped " + reading.getClass().getName() + " that could not be encoded.", e);
+                chunk.dropped++;
+                continue;
+            }
+
+            int start = buffer.position();
+            CharBuffer chars = CharBuffer.wrap(line);
+            encoder.reset();
+            CoderResult result;
+            while ((result = encoder.encode(chars, buffer, true)).isOverflow())
+                buffer = pool.grow(buffer);
+            if (result.isError()) {
+                //growing the buffer keeps its position, so the partial line can be discarded
+                Log.e(TAG, "Dropped " + reading.getSensorType() + " reading that could not be encoded: " + result);
+                buffer.position(start);
+                chunk.dropped++;
+                continue;
+            }
+            while (encoder.flush(buffer).isOverflow())
+                buffer = pool.grow(buffer);
+            if (!buffer.hasRemaining())
+                buffer = pool.grow(buffer);
+            buffer.put((byte) '\n');
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * A group of consecutive readings that is encoded as a unit.
+     */
+    static class Chunk {
+        /** The readings of the chunk. **/
+        final SensorReading[] readings = new SensorReading[CHUNK_SIZE];
+
+        /** The compact session stream ID of each reading, or -1 to send the full metadata. **/
+        final int[] streamIDs = new int[CHUNK_SIZE];
+
+        /** The number of readings in the chunk. **/
+        int count;
+
+        /** The number of readings that could not be encoded, set once the chunk has been encoded. **/
+        int dropped;
+
+        /** The pending result of the encoding. **/
+        Future<ByteBuffer> future;
+
+        /**
+         * Adds a reading to the chunk.
+         * @param reading the reading.
+         * @param streamID the stream ID declared for the reading's stream, or -1 to send the full metadata.
+         * @return true if the chunk is now full.
+         */
+        boolean add(SensorReading reading, int streamID){
+            readings[count] = reading;
+            streamIDs[count] = streamID;
+            return ++count == CHUNK_SIZE;
+        }
+    }
+}
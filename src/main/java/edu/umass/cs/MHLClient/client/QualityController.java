@@ -0,0 +1,283 @@
+package edu.umass.cs.MHLClient.client;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.umass.cs.MHLClient.processing.QualityLevel;
+
+/**
+ * Adapts the quality at which readings are sent to the capacity of the link. The
+ * transmission thread reports the queue depth, the time spent flushing and the readings
+ * and bytes written, and the client counts the readings offered for transmission. Once per
+ * evaluation interval the controller steps the quality down if the queue is backing up,
+ * writes are slow or the link falls short of the offered rate, and steps it back up after
+ * the link has been healthy for the recovery time. If the quality has to be lowered again shortly after
+ * being raised, the recovery time doubles, which keeps the controller from oscillating
+ * around the capacity of the link.
+ * <br><br>
+ * Each sensor type has its own ladder of {@link QualityLevel levels}, indexed by the
+ * controller's current step; ladders shorter than the step stay at their last level.
+ * Repeating a level delays its sensor's degradation relative to other sensors, e.g.
+ * <pre>
+ * controller.setLevels("SENSOR_AUDIO", QualityLevel.FULL, new DecimationLevel(2), new FeatureLevel(1000));
+ * controller.setLevels("SENSOR_IMU", QualityLevel.FULL, QualityLevel.FULL, new DecimationLevel(4));
+ * </pre>
+ * Sensor types without a ladder are always sent at full quality.
+ *
+ * @author Sean Noran
+ *
+ * @see MobileIOClient#setQualityController(QualityController)
+ */
+public class QualityController {
+
+    /** The default queue depth at or above which the quality is lowered. **/
+    public static final int DEFAULT_HIGH_QUEUE_DEPTH = 2500;
+
+    /** The default queue depth at or below which the quality may be raised. **/
+    public static final int DEFAULT_LOW_QUEUE_DEPTH = 250;
+
+    /** The default flush duration, in milliseconds, at or above which the quality is lowered. **/
+    public static final long DEFAULT_MAX_WRITE_LATENCY = 1000;
+
+    /** The default time, in milliseconds, the link must be healthy before the quality is raised. **/
+    public static final long DEFAULT_RECOVERY_TIME = 10000;
+
+    /** The interval at which the link is evaluated, in milliseconds. **/
+    private static final long EVALUATION_INTERVAL = 1000;
+
+    /** The largest factor by which the recovery time is extended after oscillations. **/
+    private static final int MAX_BACKOFF = 8;
+
+    /** The fraction of the offered rate below which the link is considered saturated. **/
+    private static final double SATURATION = 0.8;
+
+    /** The weight of the latest interval in the average size of a reading. **/
+    private static final double SIZE_WEIGHT = 0.25;
+
+    private final int highQueueDepth;
+    private final int lowQueueDepth;
+    private final long maxWriteLatency;
+    private final long recoveryTime;
+
+    /** The levels of each sensor type, ordered from highest to lowest quality. **/
+    private final ConcurrentHashMap<String, QualityLevel[]> ladders = new ConcurrentHashMap<>();
+
+    /** Receives quality changes, may be null. **/
+    private volatile QualityListener listener;
+
+    /** The current step, 0 being the highest quality. **/
+    private volatile int step;
+
+    /** The largest step of all ladders. **/
+    private volatile int maxStep;
+
+    /** The measured throughput, in bytes per second. **/
+    private volatile long throughput;
+
+    /** The rate at which readings were offered for transmission, in bytes per second. **/
+    private volatile long offeredRate;
+
+    /** The number of readings offered since the start of the evaluation interval. **/
+    private final AtomicInteger offered = new AtomicInteger();
+
+    /** The average size of a written reading, in bytes, or 0 before any reading was written. **/
+    private double bytesPerReading;
+
+    /** The bytes written and the longest flush during the current evaluation interval. **/
+    private long intervalBytes, intervalLatency;
+
+    /** The number of readings written during the current evaluation interval. **/
+    private int intervalReadings;
+
+    /** The start of the current evaluation interval, or 0 before the first report. **/
+    private long intervalStart;
+
+    /** The time since which the link has been healthy, or 0 if it is not. **/
+    private long healthySince;
+
+    /** The time of the last change of step. **/
+    private long lastChange;
+
+    /** The time of the last increase in quality, or 0 if it has not been raised. **/
+    private long lastRaise;
+
+    /** The factor by which the recovery time is currently extended. **/
+    private int backoff = 1;
+
+    /**
+     * Instantiates a quality controller with the default thresholds.
+     */
+    public QualityController(){
+        this(DEFAULT_HIGH_QUEUE_DEPTH, DEFAULT_LOW_QUEUE_DEPTH, DEFAULT_MAX_WRITE_LATENCY, DEFAULT_RECOVERY_TIME);
+    }
+
+    /**
+     * Instantiates a quality controller.
+     * @param highQueueDepth the queue depth at or above which the quality is lowered.
+     * @param lowQueueDepth the queue depth at or below which the quality may be raised.
+     * @param maxWriteLatency the flush duration, in milliseconds, at or above which the quality is lowered.
+     * @param recoveryTime the time, in milliseconds, the link must be healthy before the quality is raised.
+     */
+    public QualityController(int highQueueDepth, int lowQueueDepth, long maxWriteLatency, long recoveryTime){
+        this.highQueueDepth = highQueueDepth;
+        this.lowQueueDepth = lowQueueDepth;
+        this.maxWriteLatency = maxWriteLatency;
+        this.recoveryTime = recoveryTime;
+    }
+
+    /**
+     * Sets the levels of a sensor type.
+     * @param sensorType the sensor type, e.g. "SENSOR_AUDIO".
+     * @param levels the levels, ordered from highest to lowest quality.
+     */
+    public void setLevels(String sensorType, QualityLevel... levels){
+        ladders.put(sensorType, levels.clone());
+        int max = 0;
+        for (QualityLevel[] ladder : ladders.values())
+            max = Math.max(max, ladder.length - 1);
+        maxStep = max;
+    }
+
+    public void setQualityListener(QualityListener listener){
+        this.listener = listener;
+    }
+
+    /**
+     * Gets the level at which readings of a sensor type are currently sent.
+     * @param sensorType the sensor type.
+     * @return the level, or null if the sensor type has no levels.
+     */
+    public QualityLevel getLevel(String sensorType){
+        QualityLevel[] ladder = ladders.get(sensorType);
+        return ladder == null ? null : ladder[Math.min(step, ladder.length - 1)];
+    }
+
+    /**
+     * Gets the current step.
+     * @return the step, 0 being the highest quality.
+     */
+    public int getStep(){
+        return step;
+    }
+
+    /**
+     * Gets the throughput measured over the last evaluation interval.
+     * @return the throughput in bytes per second.
+     */
+    public long getThroughput(){
+        return throughput;
+    }
+
+    /**
+     * Gets the rate at which readings were offered for transmission over the last evaluation
+     * interval, estimated from the number of offered readings and their average written size.
+     * @return the offered rate in bytes per second.
+     */
+    public long getOfferedRate(){
+        return offeredRate;
+    }
+
+    /**
+     * Counts a reading offered for transmission at the current quality, called by the client
+     * for every reading it queues.
+     */
+    void onReadingOffered(){
+        offered.incrementAndGet();
+    }
+
+    /**
+     * Reports a transmission, called by the transmission thread after every flush or
+     * idle cycle, and evaluates the link once per evaluation interval. In burst mode the
+     * queue fills up by design, so the queue depth is ignored, and the link is only
+     * evaluated after a burst, so that the throughput covers the time since the last burst.
+     * @param now the current time, in milliseconds.
+     * @param burst true if readings are sent in bursts.
+     * @param queueDepth the number of readings waiting to be sent.
+     * @param readings the number of readings written since the last report.
+     * @param bytes the number of bytes written since the last report.
+     * @param writeLatency the time spent flushing, in milliseconds.
+     * @return the previous step if the step changed, -1 otherwise.
+     */
+    int update(long now, boolean burst, int queueDepth, int readings, long bytes, long writeLatency){
+        if (intervalStart == 0)
+            intervalStart = now;
+        intervalReadings += readings;
+        intervalBytes += bytes;
+        intervalLatency = Math.max(intervalLatency, writeLatency);
+        if (now - intervalStart < EVALUATION_INTERVAL || (burst && bytes == 0))
+            return -1;
+
+        long elapsed = now - intervalStart;
+        throughput = intervalBytes * 1000 / elapsed;
+        if (intervalReadings > 0) {
+            double size = (double) intervalBytes / intervalReadings;
+            bytesPerReading = bytesPerReading == 0 ? size : (1 - SIZE_WEIGHT) * bytesPerReading + SIZE_WEIGHT * size;
+        }
+        offeredRate = (long) (offered.getAndSet(0) * bytesPerReading * 1000 / elapsed);
+        //the link cannot keep up with the readings offered at the current quality
+        boolean saturated = throughput < SATURATION * offeredRate;
+        boolean congested = saturated || (!burst && queueDepth >= highQueueDepth) || intervalLatency >= maxWriteLatency;
+        boolean healthy = !saturated && (burst || queueDepth <= lowQueueDepth) && intervalLatency < maxWriteLatency / 2;
+        intervalStart = now;
+        intervalReadings = 0;
+        intervalBytes = 0;
+        intervalLatency = 0;
+
+        int previous = step;
+        if (congested) {
+            healthySince = 0;
+            //give the queue time to drain before stepping down further
+            if (step < maxStep && now - lastChange >= 2 * EVALUATION_INTERVAL) {
+                if (lastRaise > 0 && now - lastRaise < recoveryTime * backoff)
+                    backoff = Math.min(2 * backoff, MAX_BACKOFF);
+                step = previous + 1;
+            }
+        } else if (healthy) {
+            if (healthySince == 0)
+                healthySince = now;
+            if (step > 0 && now - healthySince >= recoveryTime * backoff) {
+                step = previous - 1;
+                lastRaise = now;
+                healthySince = now;
+            } else if (step == 0 && now - healthySince >= recoveryTime * MAX_BACKOFF) {
+                backoff = 1;
+            }
+        } else {
+            healthySince = 0;
+        }
+
+        if (step == previous)
+            return -1;
+        lastChange = now;
+        return previous;
+    }
+
+    /**
+     * Notifies the listener of the sensor types whose level changed with the last step change.
+     * @param previous the previous step.
+     * @param marker receives one sensor type per changed level, e.g. to mark the change in the stream.
+     */
+    void onStepChanged(int previous, StepMarker marker){
+        int current = step;
+        QualityListener l = listener;
+        for (Map.Entry<String, QualityLevel[]> entry : ladders.entrySet()) {
+            QualityLevel[] ladder = entry.getValue();
+            int from = Math.min(previous, ladder.length - 1);
+            int to = Math.min(current, ladder.length - 1);
+            if (from == to || ladder[from] == ladder[to])
+                continue;
+            ladder[to].reset();
+            marker.mark(entry.getKey(), to, ladder[to]);
+            if (l != null)
+                l.onQualityChanged(entry.getKey(), to, ladder[to], throughput);
+        }
+    }
+
+    /**
+     * Marks a change of level in the stream.
+     */
+    interface StepMarker {
+        void mark(String sensorType, int level, QualityLevel quality);
+    }
+}
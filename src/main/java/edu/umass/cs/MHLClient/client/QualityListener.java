@@ -0,0 +1,21 @@
+package edu.umass.cs.MHLClient.client;
+
+import edu.umass.cs.MHLClient.processing.QualityLevel;
+
+/**
+ * Receives the quality changes made by a {@link QualityController}, e.g. to switch
+ * the application to a cheaper audio encoding when the link degrades. Callbacks are
+ * made on the transmission thread and should return quickly.
+ *
+ * @author Sean Noran
+ */
+public interface QualityListener {
+    /**
+     * Called when the quality at which a sensor's readings are sent changes.
+     * @param sensorType the affected sensor type.
+     * @param level the index of the new level, 0 being the highest quality.
+     * @param quality the new level.
+     * @param throughput the measured throughput of the link, in bytes per second.
+     */
+    void onQualityChanged(String sensorType, int level, QualityLevel quality, long throughput);
+}
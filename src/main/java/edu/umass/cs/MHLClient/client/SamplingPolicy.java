@@ -0,0 +1,176 @@
+package edu.umass.cs.MHLClient.client;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.umass.cs.MHLClient.sensors.SensorReading;
+
+/**
+ * Limits which readings are sent, as requested by the server through a control message,
+ * e.g. to shed load when the server is overloaded. A policy can pause sensor types, cap
+ * the rate of each stream of a sensor type, and make the client send readings in batches
+ * of a given size. A control message
+ * <pre>
+ * {"sensor_type":"SENSOR_CONTROL","data":{"id":17,
+ *     "sensors":{"SENSOR_AUDIO":{"paused":true},"SENSOR_ACCEL":{"max_rate":10}},
+ *     "batch":{"interval":5000,"size":500}}}
+ * </pre>
+ * replaces the previous policy as a whole, so sensor types it does not mention are no
+ * longer limited, and a message without "sensors" and "batch" lifts all limits. Rates
+ * refer to the timestamps of the readings, which are in milliseconds by convention.
+ * <br><br>
+ * The configuration of a policy never changes after it has been created, so the client
+ * applies a new policy atomically by replacing the reference to the old one. Each policy
+ * tracks the time of the last reading admitted per stream for its rate caps.
+ *
+ * @author Sean Noran
+ *
+ * @see MobileIOClient#getSamplingPolicy()
+ */
+public final class SamplingPolicy {
+
+    /** The policy in effect when the server has not limited the client. **/
+    public static final SamplingPolicy UNRESTRICTED = new SamplingPolicy(-1, Collections.<String>emptySet(),
+            Collections.<String, Double>emptyMap(), 0, 0);
+
+    /** The ID of the control message that set the policy, -1 if none. **/
+    private final long id;
+
+    /** The paused sensor types. **/
+    private final Set<String> paused;
+
+    /** The maximum rate per stream, in Hz, of each rate-capped sensor type. **/
+    private final Map<String, Double> maxRates;
+
+    /** The maximum time between batches, in milliseconds, 0 if not set. **/
+    private final long batchInterval;
+
+    /** The number of readings per batch, 0 if not set. **/
+    private final int batchSize;
+
+    /** The timestamp of the last reading admitted per stream, for the rate caps. **/
+    private final ConcurrentHashMap<String, AtomicLong> lastAdmitted = new ConcurrentHashMap<>();
+
+    private SamplingPolicy(long id, Set<String> paused, Map<String, Double> maxRates, long batchInterval, int batchSize){
+        this.id = id;
+        this.paused = paused;
+        this.maxRates = maxRates;
+        this.batchInterval = batchInterval;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Parses the 'data' object of a control message.
+     * @param data the 'data' object.
+     * @return the policy.
+     * @throws JSONException if the message is malformed or contains invalid values.
+     */
+    static SamplingPolicy fromJSON(JSONObject data) throws JSONException {
+        long id = data.optLong("id", -1);
+        Set<String> paused = new HashSet<>();
+        Map<String, Double> maxRates = new HashMap<>();
+        JSONObject sensors = data.optJSONObject("sensors");
+        if (sensors != null) {
+            Iterator<String> types = sensors.keys();
+            while (types.hasNext()) {
+                String type = types.next();
+                JSONObject control = sensors.getJSONObject(type);
+                if (control.optBoolean("paused", false))
+                    paused.add(type);
+                double maxRate = control.optDouble("max_rate", 0);
+                if (Double.isNaN(maxRate) || maxRate < 0)
+                    throw new JSONException("Invalid max_rate for " + type + ": " + maxRate);
+                if (maxRate > 0)
+                    maxRates.put(type, maxRate);
+            }
+        }
+        long batchInterval = 0;
+        int batchSize = 0;
+        JSONObject batch = data.optJSONObject("batch");
+        if (batch != null) {
+            batchInterval = batch.getLong("interval");
+            batchSize = batch.getInt("size");
+            if (batchInterval <= 0 || batchSize <= 0)
+                throw new JSONException("Invalid batch: " + batch);
+        }
+        return new SamplingPolicy(id, Collections.unmodifiableSet(paused), Collections.unmodifiableMap(maxRates), batchInterval, batchSize);
+    }
+
+    /**
+     * Decides whether a reading may be sent, recording it for the rate cap of its stream.
+     * @param reading the reading.
+     * @return true if the reading may be sent, false if it should be dropped.
+     */
+    boolean admit(SensorReading reading){
+        String type = reading.getSensorType();
+        if (paused.contains(type))
+            return false;
+        Double maxRate = maxRates.get(type);
+        if (maxRate == null)
+            return true;
+
+        long t = reading.getTimestamp();
+        AtomicLong last = lastAdmitted.get(reading.getStreamKey());
+        if (last == null) {
+            last = lastAdmitted.putIfAbsent(reading.getStreamKey(), new AtomicLong(t));
+            if (last == null)
+                return true;
+        }
+        if ((t - last.get()) * maxRate < 1000)
+            return false;
+        last.set(t);
+        return true;
+    }
+
+    /**
+     * Gets the ID of the control message that set the policy.
+     * @return the message ID, or -1 if the message had none or the client is not limited.
+     */
+    public long getId(){
+        return id;
+    }
+
+    /**
+     * Indicates whether readings of a sensor type are paused.
+     * @param sensorType the sensor type.
+     * @return true if no readings of the sensor type are sent.
+     */
+    public boolean isPaused(String sensorType){
+        return paused.contains(sensorType);
+    }
+
+    /**
+     * Gets the maximum rate at which readings of each stream of a sensor type are sent.
+     * @param sensorType the sensor type.
+     * @return the rate in Hz, or 0 if the rate is not capped.
+     */
+    public double getMaxRate(String sensorType){
+        Double maxRate = maxRates.get(sensorType);
+        return maxRate == null ? 0 : maxRate;
+    }
+
+    /**
+     * Gets the maximum time between batches requested by the server.
+     * @return the interval in milliseconds, or 0 if readings are not batched by request of the server.
+     */
+    public long getBatchInterval(){
+        return batchInterval;
+    }
+
+    /**
+     * Gets the number of readings per batch requested by the server.
+     * @return the batch size, or 0 if readings are not batched by request of the server.
+     */
+    public int getBatchSize(){
+        return batchSize;
+    }
+}
@@ -0,0 +1,165 @@
+package edu.umass.cs.MHLClient.client;
+
+/**
+ * The address of a data collection server, together with the connection metrics the
+ * client has measured for it. The metrics are used to pick the fastest healthy server
+ * when several are configured, see {@link MobileIOClient#setServers(ServerEndpoint...)}.
+ *
+ * @author Sean Noran
+ */
+public class ServerEndpoint {
+
+    /** The time, in milliseconds, a server is avoided after its first failure. **/
+    private static final long MIN_QUARANTINE = 5000;
+
+    /** The longest time, in milliseconds, a server is avoided after repeated failures. **/
+    private static final long MAX_QUARANTINE = 300000;
+
+    /** The host name or IP address of the server. **/
+    private final String host;
+
+    /** The port on the server listening for incoming data. **/
+    private final int port;
+
+    /** The smoothed time to establish a TCP connection, in milliseconds, or -1 if unknown. **/
+    private volatile long connectTime = -1;
+
+    /** The smoothed time to complete the TLS handshake, in milliseconds, or -1 if unknown. **/
+    private volatile long handshakeTime = -1;
+
+    /** The number of consecutive failures. **/
+    private volatile int failures;
+
+    /** The time until which the server is avoided, see {@link android.os.SystemClock#elapsedRealtime()}. **/
+    private volatile long quarantinedUntil;
+
+    /** Indicates whether the server may support compact sessions, i.e. it has not failed to answer a request. **/
+    private volatile boolean compactSessionSupported = true;
+
+    /**
+     * Instantiates a server endpoint.
+     * @param host the host name or IP address of the server.
+     * @param port the port on the server listening for incoming data.
+     */
+    public ServerEndpoint(String host, int port){
+        this.host = host;
+        this.port = port;
+    }
+
+    public String getHost(){
+        return host;
+    }
+
+    public int getPort(){
+        return port;
+    }
+
+    /**
+     * Gets the smoothed time to establish a TCP connection to the server.
+     * @return the time in milliseconds, or -1 if it has not been measured.
+     */
+    public long getConnectTime(){
+        return connectTime;
+    }
+
+    /**
+     * Gets the smoothed time to complete the TLS handshake with the server.
+     * @return the time in milliseconds, or -1 if it has not been measured.
+     */
+    public long getHandshakeTime(){
+        return handshakeTime;
+    }
+
+    /**
+     * Gets the number of consecutive failed connections or connection losses.
+     * @return the number of failures since the last successful connection.
+     */
+    public int getFailures(){
+        return failures;
+    }
+
+    /**
+     * Gets the total time to connect to the server, which is used to rank servers.
+     * @return the time in milliseconds, or {@link Long#MAX_VALUE} if it has not been measured.
+     */
+    long getSetupTime(){
+        long connect = connectTime, handshake = handshakeTime;
+        return connect < 0 || handshake < 0 ? Long.MAX_VALUE : connect + handshake;
+    }
+
+    /**
+     * Indicates whether the server may be connected to, i.e. it has not failed recently.
+     * @param now the current time, see {@link android.os.SystemClock#elapsedRealtime()}.
+     * @return true if the server is not quarantined.
+     */
+    boolean isAvailable(long now){
+        return now >= quarantinedUntil;
+    }
+
+    long getQuarantinedUntil(){
+        return quarantinedUntil;
+    }
+
+    /**
+     * Records the times measured while connecting to the server.
+     * @param connect the time to establish the TCP connection, in milliseconds.
+     * @param handshake the time to complete the TLS handshake, in milliseconds.
+     */
+    void onMeasured(long connect, long handshake){
+        connectTime = connectTime < 0 ? connect : (3 * connectTime + connect) / 4;
+        handshakeTime = handshakeTime < 0 ? handshake : (3 * handshakeTime + handshake) / 4;
+    }
+
+    /**
+     * Records a successful connection, ending any quarantine.
+     */
+    void onConnected(){
+        failures = 0;
+        quarantinedUntil = 0;
+    }
+
+    /**
+     * Records a failed connection attempt or a lost connection, quarantining the server
+     * for a time that grows exponentially with the number of consecutive failures.
+     * @param now the current time, see {@link android.os.SystemClock#elapsedRealtime()}.
+     */
+    void onFailure(long now){
+        int n = Math.min(failures, 16);
+        failures = failures + 1;
+        quarantinedUntil = now + Math.min(MIN_QUARANTINE << n, MAX_QUARANTINE);
+    }
+
+    /**
+     * Indicates whether a compact session should be requested from the server.
+     * @return false if the server failed to answer a previous request, true otherwise.
+     */
+    boolean supportsCompactSession(){
+        return compactSessionSupported;
+    }
+
+    /**
+     * Records that the server did not answer a compact session request, as servers that
+     * predate compact sessions do, so that later connections do not request one.
+     */
+    void onCompactSessionUnsupported(){
+        compactSessionSupported = false;
+    }
+
+    @Override
+    public boolean equals(Object o){
+        if (!(o instanceof ServerEndpoint))
+            return false;
+        ServerEndpoint other = (ServerEndpoint) o;
+        return port == other.port && host.equals(other.host);
+    }
+
+    @Override
+    public int hashCode(){
+        return 31 * host.hashCode() + port;
+    }
+
+    @Override
+    public String toString(){
+        return host + ":" + port;
+    }
+}
@@ -0,0 +1,34 @@
+package edu.umass.cs.MHLClient.client;
+
+import java.io.File;
+
+/**
+ * Receives the progress of a {@link BulkUpload}. Callbacks are made on the upload's own
+ * threads and should return quickly.
+ *
+ * @author Sean Noran
+ */
+public interface UploadListener {
+    /**
+     * Called whenever the server acknowledges a chunk of the file.
+     * @param file the file being uploaded.
+     * @param bytesUploaded the number of bytes of the file the server has acknowledged.
+     * @param totalBytes the size of the file in bytes.
+     * @param throughput the upload rate since the current connection was established, in bytes of the file per second.
+     */
+    void onUploadProgress(File file, long bytesUploaded, long totalBytes, long throughput);
+
+    /**
+     * Called once the server has received the complete file.
+     * @param file the uploaded file.
+     */
+    void onUploadComplete(File file);
+
+    /**
+     * Called when an upload attempt fails, e.g. because the connection was lost.
+     * @param file the file being uploaded.
+     * @param e the cause of the failure.
+     * @param retrying true if the upload resumes after a delay, false if it has been abandoned.
+     */
+    void onUploadFailed(File file, Exception e, boolean retrying);
+}
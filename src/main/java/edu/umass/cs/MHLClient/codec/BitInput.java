@@ -0,0 +1,56 @@
+package edu.umass.cs.MHLClient.codec;
+
+/**
+ * Reads a stream of bits, most significant bit first, from a byte array.
+ *
+ * @author Sean Noran
+ *
+ * @see BitOutput
+ */
+public class BitInput {
+
+    /** The bits to read. **/
+    private final byte[] buffer;
+
+    /** The position of the next bit. **/
+    private long position;
+
+    /**
+     * Instantiates a bit input.
+     * @param buffer the bits to read.
+     */
+    public BitInput(byte[] buffer){
+        this.buffer = buffer;
+    }
+
+    /**
+     * Reads a single bit.
+     * @return the bit.
+     * @throws IllegalArgumentException if the end of the input has been reached.
+     */
+    public boolean readBit(){
+        return readBits(1) != 0;
+    }
+
+    /**
+     * Reads bits into the lowest bits of a value, most significant first.
+     * @param n the number of bits to read, between 0 and 64.
+     * @return the value.
+     * @throws IllegalArgumentException if the end of the input has been reached.
+     */
+    public long readBits(int n){
+        if (position + n > 8L * buffer.length)
+            throw new IllegalArgumentException("Unexpected end of input");
+        long value = 0;
+        while (n > 0) {
+            int index = (int) (position >>> 3);
+            int available = 8 - (int) (position & 7);
+            int take = Math.min(available, n);
+            int bits = (buffer[index] >>> (available - take)) & ((1 << take) - 1);
+            value = (value << take) | bits;
+            position += take;
+            n -= take;
+        }
+        return value;
+    }
+}
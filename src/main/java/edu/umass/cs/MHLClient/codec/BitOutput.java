@@ -0,0 +1,78 @@
+package edu.umass.cs.MHLClient.codec;
+
+import java.util.Arrays;
+
+/**
+ * Writes a stream of bits, most significant bit first, into a growable byte array.
+ *
+ * @author Sean Noran
+ *
+ * @see BitInput
+ */
+public class BitOutput {
+
+    /** The written bits, padded with zeros to a whole byte. **/
+    private byte[] buffer;
+
+    /** The number of bits written. **/
+    private long bitCount;
+
+    /**
+     * Instantiates a bit output.
+     * @param initialCapacity the initial capacity, in bytes.
+     */
+    public BitOutput(int initialCapacity){
+        buffer = new byte[Math.max(1, initialCapacity)];
+    }
+
+    /**
+     * Writes a single bit.
+     * @param bit the bit to write.
+     */
+    public void writeBit(boolean bit){
+        writeBits(bit ? 1 : 0, 1);
+    }
+
+    /**
+     * Writes the lowest bits of a value, most significant first.
+     * @param value the value whose bits are written.
+     * @param n the number of bits to write, between 0 and 64.
+     */
+    public void writeBits(long value, int n){
+        while (n > 0) {
+            int index = (int) (bitCount >>> 3);
+            if (index >= buffer.length)
+                buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+            int free = 8 - (int) (bitCount & 7);
+            int take = Math.min(free, n);
+            int bits = (int) (value >>> (n - take)) & ((1 << take) - 1);
+            buffer[index] |= bits << (free - take);
+            bitCount += take;
+            n -= take;
+        }
+    }
+
+    /**
+     * Gets the number of bits written.
+     * @return the bit count.
+     */
+    public long getBitCount(){
+        return bitCount;
+    }
+
+    /**
+     * Copies the written bits, padded with zeros to a whole byte.
+     * @return the written bytes.
+     */
+    public byte[] toByteArray(){
+        return Arrays.copyOf(buffer, (int) ((bitCount + 7) >>> 3));
+    }
+
+    /**
+     * Discards all written bits, so that the output can be reused.
+     */
+    public void reset(){
+        Arrays.fill(buffer, 0, (int) Math.min(buffer.length, (bitCount + 7) >>> 3), (byte) 0);
+        bitCount = 0;
+    }
+}
@@ -0,0 +1,108 @@
+package edu.umass.cs.MHLClient.codec;
+
+import java.util.Arrays;
+
+/**
+ * A batch of multi-channel time series samples with labels, held in primitive column
+ * arrays. Batches are the unit of encoding of a {@link TimeSeriesCodec}.
+ *
+ * @author Sean Noran
+ */
+public class TimeSeriesBatch {
+
+    /** The timestamps of the samples. **/
+    private long[] timestamps;
+
+    /** The labels of the samples, -1 if unlabelled. **/
+    private int[] labels;
+
+    /** The sample values, one column per channel. **/
+    private final double[][] columns;
+
+    /** The number of samples in the batch. **/
+    private int size;
+
+    /**
+     * Instantiates an empty batch.
+     * @param channels the number of values per sample.
+     * @param initialCapacity the initial number of samples the batch can hold without growing.
+     */
+    public TimeSeriesBatch(int channels, int initialCapacity){
+        initialCapacity = Math.max(1, initialCapacity);
+        this.timestamps = new long[initialCapacity];
+        this.labels = new int[initialCapacity];
+        this.columns = new double[channels][initialCapacity];
+    }
+
+    /**
+     * Adds a sample to the batch.
+     * @param timestamp the timestamp of the sample.
+     * @param label the label of the sample, -1 if unlabelled.
+     * @param sample the values of the sample, one per channel.
+     */
+    public void add(long timestamp, int label, double[] sample){
+        if (size == timestamps.length) {
+            int capacity = 2 * size;
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            labels = Arrays.copyOf(labels, capacity);
+            for (int c = 0; c < columns.length; c++)
+                columns[c] = Arrays.copyOf(columns[c], capacity);
+        }
+        timestamps[size] = timestamp;
+        labels[size] = label;
+        for (int c = 0; c < columns.length; c++)
+            columns[c][size] = sample[c];
+        size++;
+    }
+
+    /**
+     * Removes all samples, keeping the allocated arrays.
+     */
+    public void clear(){
+        size = 0;
+    }
+
+    /**
+     * Gets the number of samples in the batch.
+     * @return the size.
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Gets the number of values per sample.
+     * @return the number of channels.
+     */
+    public int getChannels(){
+        return columns.length;
+    }
+
+    /**
+     * Gets the timestamp of a sample.
+     * @param i the index of the sample.
+     * @return the timestamp.
+     */
+    public long getTimestamp(int i){
+        return timestamps[i];
+    }
+
+    /**
+     * Gets the label of a sample.
+     * @param i the index of the sample.
+     * @return the label, -1 if unlabelled.
+     */
+    public int getLabel(int i){
+        return labels[i];
+    }
+
+    /**
+     * Gets a value of a sample.
+     * @param i the index of the sample.
+     * @param channel the channel.
+     * @return the value.
+     */
+    public double getValue(int i, int channel){
+        return columns[channel][i];
+    }
+}
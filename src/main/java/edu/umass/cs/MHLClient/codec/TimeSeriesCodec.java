@@ -0,0 +1,294 @@
+package edu.umass.cs.MHLClient.codec;
+
+/**
+ * A bit-packed codec for batches of smooth, regularly sampled time series, such as
+ * accelerometer, gyroscope and GPS readings, following the approach of Facebook's
+ * Gorilla time series database. Timestamps and labels are encoded as deltas of deltas
+ * with variable-length prefix codes, so that a regular sampling rate and a constant
+ * label cost a single bit per sample. Values are encoded either
+ * <ul>
+ *     <li>losslessly ({@link #lossless()}), by XORing the bits of each value with the
+ *     previous value of the same channel and storing only the meaningful bits, or</li>
+ *     <li>quantized to a fixed number of decimal places ({@link #quantized(int)}), as
+ *     deltas of deltas of the scaled integer values.</li>
+ * </ul>
+ * The encoded batch consists of the number of samples (32 bits), the timestamps, the
+ * labels and then each channel in turn. {@link #decode(byte[], int)} is the reference
+ * decoder.
+ *
+ * @author Sean Noran
+ *
+ * @see TimeSeriesBatch
+ */
+public class TimeSeriesCodec {
+
+    /** The name of the lossless codec. **/
+    public static final String LOSSLESS = "gorilla";
+
+    /** The prefix of the names of the quantized codecs, followed by the number of decimal places. **/
+    public static final String QUANTIZED_PREFIX = "quantized-";
+
+    /** The number of decimal places values are quantized to, or -1 for lossless encoding. **/
+    private final int decimals;
+
+    /** The factor values are multiplied by before rounding when quantizing. **/
+    private final double scale;
+
+    private TimeSeriesCodec(int decimals){
+        this.decimals = decimals;
+        this.scale = decimals < 0 ? 1 : Math.pow(10, decimals);
+    }
+
+    /**
+     * Gets the lossless codec, which XORs consecutive values.
+     * @return the lossless codec.
+     */
+    public static TimeSeriesCodec lossless(){
+        return new TimeSeriesCodec(-1);
+    }
+
+    /**
+     * Gets a codec that rounds values to a fixed number of decimal places.
+     * @param decimals the number of decimal places, e.g. 3 for millimetres per second squared.
+     * @return the quantized codec.
+     */
+    public static TimeSeriesCodec quantized(int decimals){
+        if (decimals < 0 || decimals > 15)
+            throw new IllegalArgumentException("decimals must be between 0 and 15");
+        return new TimeSeriesCodec(decimals);
+    }
+
+    /**
+     * Gets the codec with the given name.
+     * @param name the name of the codec, as returned by {@link #getName()}.
+     * @return the codec.
+     * @throws IllegalArgumentException if the name is unknown.
+     */
+    public static TimeSeriesCodec forName(String name){
+        if (LOSSLESS.equals(name))
+            return lossless();
+        if (name != null && name.startsWith(QUANTIZED_PREFIX)) {
+            try {
+                return quantized(Integer.parseInt(name.substring(QUANTIZED_PREFIX.length())));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Unknown codec " + name, e);
+            }
+        }
+        throw new IllegalArgumentException("Unknown codec " + name);
+    }
+
+    /**
+     * Gets the name identifying the codec on the wire, e.g. "gorilla" or "quantized-3".
+     * @return the name of the codec.
+     */
+    public String getName(){
+        return decimals < 0 ? LOSSLESS : QUANTIZED_PREFIX + decimals;
+    }
+
+    /**
+     * Encodes a batch.
+     * @param batch the samples to encode.
+     * @param out the output the encoded batch is appended to.
+     */
+    public void encode(TimeSeriesBatch batch, BitOutput out){
+        int n = batch.size();
+        out.writeBits(n, 32);
+        if (n == 0)
+            return;
+
+        out.writeBits(batch.getTimestamp(0), 64);
+        long previousDelta = 0;
+        for (int i = 1; i < n; i++) {
+            long delta = batch.getTimestamp(i) - batch.getTimestamp(i - 1);
+            writeDeltaOfDelta(out, delta - previousDelta);
+            previousDelta = delta;
+        }
+
+        out.writeBits(batch.getLabel(0), 32);
+        previousDelta = 0;
+        for (int i = 1; i < n; i++) {
+            long delta = (long) batch.getLabel(i) - batch.getLabel(i - 1);
+            writeDeltaOfDelta(out, delta - previousDelta);
+            previousDelta = delta;
+        }
+
+        for (int c = 0; c < batch.getChannels(); c++) {
+            if (decimals < 0)
+                encodeXor(batch, c, out);
+            else
+                encodeQuantized(batch, c, out);
+        }
+    }
+
+    /**
+     * Encodes a batch into a new byte array.
+     * @param batch the samples to encode.
+     * @return the encoded batch.
+     */
+    public byte[] encode(TimeSeriesBatch batch){
+        BitOutput out = new BitOutput(8 * batch.size() * (batch.getChannels() + 1) / 4 + 16);
+        encode(batch, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a batch encoded by this codec.
+     * @param data the encoded batch.
+     * @param channels the number of values per sample.
+     * @return the decoded batch.
+     * @throws IllegalArgumentException if the data is truncated.
+     */
+    public TimeSeriesBatch decode(byte[] data, int channels){
+        BitInput in = new BitInput(data);
+        int n = (int) in.readBits(32);
+        long[] timestamps = new long[n];
+        int[] labels = new int[n];
+        double[][] columns = new double[channels][n];
+        if (n > 0) {
+            timestamps[0] = in.readBits(64);
+            long delta = 0;
+            for (int i = 1; i < n; i++) {
+                delta += readDeltaOfDelta(in);
+                timestamps[i] = timestamps[i - 1] + delta;
+            }
+
+            labels[0] = (int) in.readBits(32);
+            delta = 0;
+            for (int i = 1; i < n; i++) {
+                delta += readDeltaOfDelta(in);
+                labels[i] = (int) (labels[i - 1] + delta);
+            }
+
+            for (int c = 0; c < channels; c++) {
+                if (decimals < 0)
+                    decodeXor(in, columns[c], n);
+                else
+                    decodeQuantized(in, columns[c], n);
+            }
+        }
+
+        TimeSeriesBatch batch = new TimeSeriesBatch(channels, n);
+        double[] sample = new double[channels];
+        for (int i = 0; i < n; i++) {
+            for (int c = 0; c < channels; c++)
+                sample[c] = columns[c][i];
+            batch.add(timestamps[i], labels[i], sample);
+        }
+        return batch;
+    }
+
+    /**
+     * Encodes a channel by XORing each value with its predecessor. A zero XOR is written as a
+     * single 0 bit. Otherwise, if the meaningful bits of the XOR fall within the window of the
+     * previous XOR, they are written after the prefix 10; if not, the prefix 11 is followed by
+     * the number of leading zeros (6 bits), the number of meaningful bits minus one (6 bits)
+     * and the meaningful bits.
+     */
+    private static void encodeXor(TimeSeriesBatch batch, int channel, BitOutput out){
+        long previous = Double.doubleToLongBits(batch.getValue(0, channel));
+        out.writeBits(previous, 64);
+        int previousLeading = -1, previousTrailing = 0;
+        for (int i = 1; i < batch.size(); i++) {
+            long bits = Double.doubleToLongBits(batch.getValue(i, channel));
+            long xor = bits ^ previous;
+            if (xor == 0) {
+                out.writeBit(false);
+            } else {
+                out.writeBit(true);
+                int leading = Long.numberOfLeadingZeros(xor);
+                int trailing = Long.numberOfTrailingZeros(xor);
+                if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                    out.writeBit(false);
+                    out.writeBits(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+                } else {
+                    int length = 64 - leading - trailing;
+                    out.writeBit(true);
+                    out.writeBits(leading, 6);
+                    out.writeBits(length - 1, 6);
+                    out.writeBits(xor >>> trailing, length);
+                    previousLeading = leading;
+                    previousTrailing = trailing;
+                }
+            }
+            previous = bits;
+        }
+    }
+
+    private static void decodeXor(BitInput in, double[] column, int n){
+        long previous = in.readBits(64);
+        column[0] = Double.longBitsToDouble(previous);
+        int leading = 0, length = 0;
+        for (int i = 1; i < n; i++) {
+            if (in.readBit()) {
+                if (in.readBit()) {
+                    leading = (int) in.readBits(6);
+                    length = (int) in.readBits(6) + 1;
+                }
+                previous ^= in.readBits(length) << (64 - leading - length);
+            }
+            column[i] = Double.longBitsToDouble(previous);
+        }
+    }
+
+    /**
+     * Encodes a channel as deltas of deltas of the values scaled to integers.
+     */
+    private void encodeQuantized(TimeSeriesBatch batch, int channel, BitOutput out){
+        long previous = Math.round(batch.getValue(0, channel) * scale);
+        out.writeBits(previous, 64);
+        long previousDelta = 0;
+        for (int i = 1; i < batch.size(); i++) {
+            long value = Math.round(batch.getValue(i, channel) * scale);
+            long delta = value - previous;
+            writeDeltaOfDelta(out, delta - previousDelta);
+            previousDelta = delta;
+            previous = value;
+        }
+    }
+
+    private void decodeQuantized(BitInput in, double[] column, int n){
+        long value = in.readBits(64);
+        column[0] = value / scale;
+        long delta = 0;
+        for (int i = 1; i < n; i++) {
+            delta += readDeltaOfDelta(in);
+            value += delta;
+            column[i] = value / scale;
+        }
+    }
+
+    /**
+     * Writes a delta of deltas with a variable-length prefix code: 0 for zero, then
+     * 10, 110 and 1110 followed by 7, 9 and 12 bits for increasingly large ranges,
+     * and 1111 followed by all 64 bits otherwise.
+     */
+    private static void writeDeltaOfDelta(BitOutput out, long dod){
+        if (dod == 0) {
+            out.writeBit(false);
+        } else if (dod >= -63 && dod <= 64) {
+            out.writeBits(0x2, 2);
+            out.writeBits(dod + 63, 7);
+        } else if (dod >= -255 && dod <= 256) {
+            out.writeBits(0x6, 3);
+            out.writeBits(dod + 255, 9);
+        } else if (dod >= -2047 && dod <= 2048) {
+            out.writeBits(0xE, 4);
+            out.writeBits(dod + 2047, 12);
+        } else {
+            out.writeBits(0xF, 4);
+            out.writeBits(dod, 64);
+        }
+    }
+
+    private static long readDeltaOfDelta(BitInput in){
+        if (!in.readBit())
+            return 0;
+        if (!in.readBit())
+            return in.readBits(7) - 63;
+        if (!in.readBit())
+            return in.readBits(9) - 255;
+        if (!in.readBit())
+            return in.readBits(12) - 2047;
+        return in.readBits(64);
+    }
+}
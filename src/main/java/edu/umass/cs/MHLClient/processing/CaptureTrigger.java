@@ -0,0 +1,22 @@
+package edu.umass.cs.MHLClient.processing;
+
+import edu.umass.cs.MHLClient.sensors.SensorReading;
+
+/**
+ * Decides whether a reading marks an event around which raw data is captured.
+ *
+ * @author Sean Noran
+ *
+ * @see EventCapture
+ * @see MagnitudeTrigger
+ */
+public interface CaptureTrigger {
+    /**
+     * Evaluates the trigger on a reading.
+     * @param reading the reading.
+     * @param channels the values of the reading's channels, see
+     * {@link edu.umass.cs.MHLClient.sensors.SensorReadingEncoder#readChannels(SensorReading, float[])}.
+     * @return true if a capture should be started.
+     */
+    boolean isTriggered(SensorReading reading, float[] channels);
+}
@@ -0,0 +1,46 @@
+package edu.umass.cs.MHLClient.processing;
+
+import java.util.HashMap;
+
+import edu.umass.cs.MHLClient.sensors.SensorReading;
+
+/**
+ * Sends every n-th reading of each stream, e.g. to reduce the rate of IMU readings
+ * or the number of audio buffers.
+ *
+ * @author Sean Noran
+ *
+ * @see QualityLevel
+ */
+public class DecimationLevel extends QualityLevel {
+
+    /** The decimation factor. **/
+    private final int factor;
+
+    /** The number of readings seen per stream. **/
+    private final HashMap<String, int[]> counters = new HashMap<>();
+
+    /**
+     * Instantiates a decimation level.
+     * @param factor the ratio of readings received to readings sent.
+     */
+    public DecimationLevel(int factor){
+        super("decimate-" + factor);
+        this.factor = factor;
+    }
+
+    @Override
+    public synchronized SensorReading apply(SensorReading reading){
+        int[] counter = counters.get(reading.getStreamKey());
+        if (counter == null) {
+            counter = new int[1];
+            counters.put(reading.getStreamKey(), counter);
+        }
+        return counter[0]++ % factor == 0 ? reading : null;
+    }
+
+    @Override
+    public synchronized void reset(){
+        counters.clear();
+    }
+}
@@ -0,0 +1,287 @@
+package edu.umass.cs.MHLClient.processing;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import edu.umass.cs.MHLClient.client.MessageReceiver;
+import edu.umass.cs.MHLClient.sensors.ChannelReading;
+import edu.umass.cs.MHLClient.sensors.SensorReading;
+import edu.umass.cs.MHLClient.sensors.SensorReadingEncoder;
+import edu.umass.cs.MHLClient.sensors.SummaryReading;
+import edu.umass.cs.MHLClient.structures.TimeSeriesRingBuffer;
+
+/**
+ * Forwards raw readings only around events, e.g. falls, and a low-rate summary of each
+ * stream the rest of the time. Every stream keeps its most recent samples in a primitive
+ * {@link TimeSeriesRingBuffer}. When a capture is triggered, by a {@link CaptureTrigger},
+ * a server message or the application, the samples of the pre-trigger window are flushed
+ * as {@link ChannelReading channel readings}, and all readings are forwarded unchanged
+ * until the post-trigger window has passed. A trigger during a capture extends it.
+ * <br><br>
+ * Outside of captures, a {@link SummaryReading} is emitted per stream and summary interval.
+ * Readings without numeric {@link edu.umass.cs.MHLClient.sensors.SensorField channels},
+ * e.g. audio buffers, cannot be buffered or summarized and are only forwarded during captures.
+ * <br><br>
+ * All times refer to the timestamps of the readings. Triggers that are not caused by a
+ * reading, i.e. server messages and {@link #trigger()}, take effect at the timestamp of
+ * the most recent reading.
+ *
+ * @author Sean Noran
+ *
+ * @see MagnitudeTrigger
+ */
+public class EventCapture {
+
+    /** The number of samples buffered per stream. **/
+    private final int capacity;
+
+    /** The duration of raw data sent before each trigger. **/
+    private final long preTriggerWindow;
+
+    /** The duration of raw data sent after each trigger. **/
+    private final long postTriggerWindow;
+
+    /** The interval at which summaries are sent outside of captures, or 0 to send no summaries. **/
+    private final long summaryInterval;
+
+    /** Receives the forwarded readings and summaries. **/
+    private final SensorReadingListener listener;
+
+    /** The triggers evaluated on every reading. **/
+    private final ArrayList<CaptureTrigger> triggers = new ArrayList<>();
+
+    /** The buffered streams, keyed by {@link SensorReading#getStreamKey() stream key}. **/
+    private final HashMap<String, Stream> streams = new HashMap<>();
+
+    /** The end of the current capture, or {@link Long#MIN_VALUE} if no capture is in progress. **/
+    private long captureEnd = Long.MIN_VALUE;
+
+    /** The timestamp of the most recent reading. **/
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    /** The number of captures triggered. **/
+    private int captures;
+
+    /**
+     * Instantiates an event capture.
+     * @param capacity the number of samples buffered per stream, which must cover the
+     *                 pre-trigger window at the highest sampling rate.
+     * @param preTriggerWindow the duration of raw data sent before each trigger.
+     * @param postTriggerWindow the duration of raw data sent after each trigger.
+     * @param summaryInterval the interval at which summaries are sent outside of captures, or 0 to send no summaries.
+     * @param listener receives the forwarded readings and summaries.
+     */
+    public EventCapture(int capacity, long preTriggerWindow, long postTriggerWindow, long summaryInterval, SensorReadingListener listener){
+        this.capacity = capacity;
+        this.preTriggerWindow = preTriggerWindow;
+        this.postTriggerWindow = postTriggerWindow;
+        this.summaryInterval = summaryInterval;
+        this.listener = listener;
+    }
+
+    /**
+     * Adds a trigger that is evaluated on every reading with numeric channels.
+     * @param trigger the trigger.
+     */
+    public synchronized void addTrigger(CaptureTrigger trigger){
+        triggers.add(trigger);
+    }
+
+    /**
+     * Creates a message receiver that triggers a capture whenever the server sends a
+     * matching message. Register it with
+     * {@link edu.umass.cs.MHLClient.client.MobileIOClient#registerMessageReceiver(MessageReceiver)}.
+     * @param messageFilters the messages that trigger a capture, see {@link MessageReceiver}.
+     * @return the message receiver.
+     */
+    public MessageReceiver createServerTrigger(String... messageFilters){
+        return new MessageReceiver(messageFilters) {
+            @Override
+            protected void onMessageReceived(JSONObject json) {
+                trigger();
+            }
+        };
+    }
+
+    /**
+     * Triggers a capture at the timestamp of the most recent reading, e.g. when the user
+     * reports an event in the app.
+     */
+    public synchronized void trigger(){
+        if (lastTimestamp != Long.MIN_VALUE)
+            startCapture(lastTimestamp);
+    }
+
+    /**
+     * Indicates whether raw readings are currently being forwarded.
+     * @return true if a capture is in progress.
+     */
+    public synchronized boolean isCapturing(){
+        return captureEnd != Long.MIN_VALUE;
+    }
+
+    /**
+     * Gets the number of captures triggered so far, not counting triggers that extended a capture.
+     * @return the number of captures.
+     */
+    public synchronized int getCaptureCount(){
+        return captures;
+    }
+
+    /**
+     * Discards all buffered samples and ends the current capture.
+     */
+    public synchronized void reset(){
+        streams.clear();
+        captureEnd = Long.MIN_VALUE;
+        lastTimestamp = Long.MIN_VALUE;
+    }
+
+    /**
+     * Adds a reading, which is forwarded if a capture is in progress and buffered and
+     * summarized otherwise.
+     * @param reading the reading.
+     */
+    public synchronized void add(SensorReading reading){
+        long t = reading.getTimestamp();
+        lastTimestamp = Math.max(lastTimestamp, t);
+        if (captureEnd != Long.MIN_VALUE && t > captureEnd)
+            endCapture();
+
+        Stream stream = streams.get(reading.getStreamKey());
+        if (stream == null) {
+            stream = new Stream(reading);
+            streams.put(reading.getStreamKey(), stream);
+        }
+        if (stream.buffer == null) {
+            if (captureEnd != Long.MIN_VALUE)
+                listener.onSensorReading(reading);
+            return;
+        }
+
+        stream.encoder.readChannels(reading, stream.sample);
+        for (int i = 0; i < triggers.size(); i++) {
+            if (triggers.get(i).isTriggered(reading, stream.sample)) {
+                startCapture(t);
+                break;
+            }
+        }
+
+        stream.add(t, reading.getLabel());
+        if (captureEnd != Long.MIN_VALUE) {
+            listener.onSensorReading(reading);
+            stream.sent = stream.buffer.getCount();
+        } else if (summaryInterval > 0) {
+            stream.summarize(t);
+        }
+    }
+
+    /**
+     * Starts or extends a capture, flushing the pre-trigger window of every stream.
+     * @param t the time of the trigger.
+     */
+    private void startCapture(long t){
+        if (captureEnd == Long.MIN_VALUE)
+            captures++;
+        captureEnd = Math.max(captureEnd, t + postTriggerWindow);
+        for (Stream stream : streams.values()) {
+            if (stream.buffer != null)
+                stream.flush(t - preTriggerWindow);
+        }
+    }
+
+    /**
+     * Ends the current capture and restarts the summaries.
+     */
+    private void endCapture(){
+        captureEnd = Long.MIN_VALUE;
+        for (Stream stream : streams.values()) {
+            if (stream.summary != null)
+                stream.summary.reset();
+        }
+    }
+
+    /**
+     * The buffered samples and running summary of a stream.
+     */
+    private class Stream {
+        /** The metadata of the stream. **/
+        final String userID, deviceType, deviceID, sensorType;
+
+        /** Reads the channels of the stream's readings, null if there are none. **/
+        final SensorReadingEncoder encoder;
+
+        /** The buffered samples, null if the readings have no channels. **/
+        final TimeSeriesRingBuffer buffer;
+
+        /** The labels of the buffered samples, indexed like the buffer. **/
+        final int[] labels;
+
+        /** Holds the channels of the reading being added. **/
+        final float[] sample;
+
+        /** The summary of the current interval. **/
+        final StreamSummary summary;
+
+        /** The index of the first buffered sample that has not been sent. **/
+        long sent;
+
+        Stream(SensorReading reading){
+            userID = reading.getUserID();
+            deviceType = reading.getDeviceType();
+            deviceID = reading.getDeviceID();
+            sensorType = reading.getSensorType();
+            SensorReadingEncoder encoder = SensorReadingEncoder.forClass(reading.getClass());
+            if (encoder == null || encoder.getChannelCount() == 0) {
+                this.encoder = null;
+                buffer = null;
+                labels = null;
+                sample = null;
+                summary = null;
+                return;
+            }
+            this.encoder = encoder;
+            buffer = new TimeSeriesRingBuffer(capacity, encoder.getChannelCount());
+            labels = new int[buffer.getCapacity()];
+            sample = new float[encoder.getChannelCount()];
+            summary = new StreamSummary(reading, encoder);
+        }
+
+        void add(long t, int label){
+            labels[(int) buffer.getCount() & (labels.length - 1)] = label;
+            buffer.add(t, sample);
+        }
+
+        /**
+         * Forwards the unsent samples at or after the given time.
+         * @param from the start of the pre-trigger window.
+         */
+        void flush(long from){
+            long end = buffer.getCount();
+            for (long i = Math.max(sent, buffer.getOldestIndex()); i < end; i++) {
+                long t = buffer.getTimestamp(i);
+                if (t < from)
+                    continue;
+                float[] values = new float[sample.length];
+                for (int c = 0; c < values.length; c++)
+                    values[c] = buffer.getValue(i, c);
+                listener.onSensorReading(new ChannelReading(userID, deviceType, deviceID, sensorType, t,
+                        labels[(int) i & (labels.length - 1)], encoder.getChannelNames(), values));
+            }
+            sent = end;
+            summary.reset();
+        }
+
+        /**
+         * Adds the current sample to the summary, emitting the summary first if its interval has passed.
+         * @param t the timestamp of the sample.
+         */
+        void summarize(long t){
+            SummaryReading completed = summary.add(t, sample, summaryInterval);
+            if (completed != null)
+                listener.onSensorReading(completed);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package edu.umass.cs.MHLClient.processing;
+
+import java.util.HashMap;
+
+import edu.umass.cs.MHLClient.sensors.SensorReading;
+import edu.umass.cs.MHLClient.sensors.SensorReadingEncoder;
+import edu.umass.cs.MHLClient.sensors.SummaryReading;
+
+/**
+ * Sends only features of each stream, namely a {@link SummaryReading} with the mean,
+ * minimum and maximum of each channel per interval. Readings without numeric channels
+ * are not sent at all.
+ *
+ * @author Sean Noran
+ *
+ * @see QualityLevel
+ */
+public class FeatureLevel extends QualityLevel {
+
+    /** The interval over which features are computed, in the unit of the timestamps. **/
+    private final long interval;
+
+    /** The running summary per stream. **/
+    private final HashMap<String, StreamSummary> summaries = new HashMap<>();
+
+    /** Holds the channels of the current reading. **/
+    private float[] sample = new float[0];
+
+    /**
+     * Instantiates a feature level.
+     * @param interval the interval over which features are computed, in the unit of the timestamps.
+     */
+    public FeatureLevel(long interval){
+        super("features-" + interval);
+        this.interval = interval;
+    }
+
+    @Override
+    public synchronized SensorReading apply(SensorReading reading){
+        SensorReadingEncoder encoder = SensorReadingEncoder.forClass(reading.getClass());
+        if (encoder == null || encoder.getChannelCount() == 0)
+            return null;
+        StreamSummary summary = summaries.get(reading.getStreamKey());
+        if (summary == null) {
+            summary = new StreamSummary(reading, encoder);
+            summaries.put(reading.getStreamKey(), summary);
+        }
+        if (sample.length < encoder.getChannelCount())
+            sample = new float[encoder.getChannelCount()];
+        encoder.readChannels(reading, sample);
+        return summary.add(reading.getTimestamp(), sample, interval);
+    }
+
+    @Override
+    public synchronized void reset(){
+        summaries.clear();
+    }
+}
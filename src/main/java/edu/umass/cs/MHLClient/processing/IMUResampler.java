@@ -0,0 +1,374 @@
+package edu.umass.cs.MHLClient.processing;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import edu.umass.cs.MHLClient.sensors.AccelerometerReading;
+import edu.umass.cs.MHLClient.sensors.GyroscopeReading;
+import edu.umass.cs.MHLClient.sensors.IMUReading;
+import edu.umass.cs.MHLClient.sensors.SensorReading;
+import edu.umass.cs.MHLClient.structures.TimeSeriesRingBuffer;
+
+/**
+ * Fuses accelerometer and gyroscope readings into combined {@link IMUReading 6-axis readings}.
+ * Both streams arrive separately and with jittered timestamps, so they are buffered in
+ * primitive ring buffers and resampled onto a common fixed-rate timeline using linear
+ * interpolation. A combined reading is emitted for each tick once both streams have
+ * samples at or after it.
+ * <br><br>
+ * Samples that cannot be fused are passed on individually instead of being lost, so that
+ * every sample is represented either by the combined readings or by itself. This is the
+ * case while the other stream of the device is missing or has not produced a sample for
+ * {@link #PARTNER_TIMEOUT} milliseconds, and for the samples around a gap of more than
+ * {@link #MAX_GAP} milliseconds in either stream, across which nothing is interpolated.
+ * <br><br>
+ * Each device, identified by its user, device type and device ID, is resampled
+ * independently, so readings from several devices may be added to the same resampler.
+ *
+ * @author Sean Noran
+ *
+ * @see IMUReading
+ * @see TimeSeriesRingBuffer
+ */
+public class IMUResampler {
+
+    /** The number of samples buffered per stream, which covers the partner timeout at up to 500 Hz. **/
+    private static final int BUFFER_CAPACITY = 512;
+
+    /** The largest gap between two samples, in milliseconds, across which values are interpolated. **/
+    public static final long MAX_GAP = 200;
+
+    /** The time, in milliseconds, one stream waits for the other before its samples are passed on individually. **/
+    public static final long PARTNER_TIMEOUT = 1000;
+
+    /** The output rate, in Hz. **/
+    private final int rate;
+
+    /** The number of timestamp units per second. **/
+    private final long unitsPerSecond;
+
+    /** {@link #MAX_GAP} in the unit of the timestamps. **/
+    private final long maxGap;
+
+    /** {@link #PARTNER_TIMEOUT} in the unit of the timestamps. **/
+    private final long partnerTimeout;
+
+    /** Receives the combined readings and the readings passed on individually. **/
+    private final SensorReadingListener listener;
+
+    /** The resampling state of each device. There are few devices, so they are searched linearly. **/
+    private final ArrayList<Device> devices = new ArrayList<>();
+
+    /** Holds the interpolated values of the current tick. **/
+    private final float[] sample = new float[6];
+
+    /**
+     * Instantiates an IMU resampler for readings timestamped in milliseconds.
+     * @param rate the output rate, in Hz, at most 1000.
+     * @param listener receives the combined readings and the readings that could not be fused.
+     */
+    public IMUResampler(int rate, SensorReadingListener listener){
+        this(rate, TimeUnit.MILLISECONDS, listener);
+    }
+
+    /**
+     * Instantiates an IMU resampler.
+     * @param rate the output rate, in Hz, at most 1000.
+     * @param unit the unit of the reading timestamps, at least as fine as the output period,
+     *             e.g. {@link TimeUnit#NANOSECONDS} for timestamps taken from sensor events.
+     * @param listener receives the combined readings and the readings that could not be fused.
+     */
+    public IMUResampler(int rate, TimeUnit unit, SensorReadingListener listener){
+        unitsPerSecond = unit.convert(1, TimeUnit.SECONDS);
+        if (rate <= 0 || rate > 1000 || rate > unitsPerSecond)
+            throw new IllegalArgumentException("Invalid rate for " + unit + " timestamps: " + rate + " Hz");
+        this.rate = rate;
+        this.maxGap = unit.convert(MAX_GAP, TimeUnit.MILLISECONDS);
+        this.partnerTimeout = unit.convert(PARTNER_TIMEOUT, TimeUnit.MILLISECONDS);
+        this.listener = listener;
+    }
+
+    /**
+     * Indicates whether the resampler consumes the given reading.
+     * @param reading a sensor reading.
+     * @return true if the reading is an accelerometer or gyroscope reading.
+     */
+    public static boolean accepts(SensorReading reading){
+        return reading instanceof AccelerometerReading || reading instanceof GyroscopeReading;
+    }
+
+    /**
+     * Adds an accelerometer or gyroscope reading and emits the combined readings of all
+     * ticks of its device that are now covered by both streams, or passes the reading on
+     * individually if it cannot be fused. Readings older than the most recent reading of
+     * the same stream are dropped.
+     * @param reading an accelerometer or gyroscope reading.
+     * @return true if the reading was consumed, false if it is not an accelerometer or
+     * gyroscope reading or its timestamp is negative, in which case it should be sent as is.
+     */
+    public synchronized boolean add(SensorReading reading){
+        if (!accepts(reading) || reading.getTimestamp() < 0)
+            return false;
+        Device device = getDevice(reading);
+        long t = reading.getTimestamp();
+        Stream stream, partner;
+        boolean added;
+        if (reading instanceof AccelerometerReading) {
+            AccelerometerReading accel = (AccelerometerReading) reading;
+            stream = device.accelerometer;
+            partner = device.gyroscope;
+            added = stream.add(t, (float) accel.getX(), (float) accel.getY(), (float) accel.getZ(), accel.getLabel());
+        } else {
+            GyroscopeReading gyro = (GyroscopeReading) reading;
+            stream = device.gyroscope;
+            partner = device.accelerometer;
+            added = stream.add(t, (float) gyro.getX(), (float) gyro.getY(), (float) gyro.getZ(), gyro.getLabel());
+        }
+        if (!added)
+            return true;
+
+        if (t < device.individualUntil) {
+            //the reading falls into a gap that was skipped by the combined readings
+            listener.onSensorReading(reading);
+        } else if (partner.isEmpty() || t - partner.newestTimestamp() > partnerTimeout) {
+            passOn(device, t);
+            listener.onSensorReading(reading);
+            device.covered = t;
+            device.individualUntil = t + 1;
+        } else {
+            emit(device);
+        }
+        return true;
+    }
+
+    /**
+     * Discards all buffered samples.
+     */
+    public synchronized void reset(){
+        devices.clear();
+    }
+
+    /**
+     * Gets the state of the device a reading belongs to, creating it for the first reading.
+     * @param reading the reading.
+     * @return the device state.
+     */
+    private Device getDevice(SensorReading reading){
+        for (int i = 0; i < devices.size(); i++) {
+            Device device = devices.get(i);
+            if (equal(device.userID, reading.getUserID()) && equal(device.deviceType, reading.getDeviceType())
+                    && equal(device.deviceID, reading.getDeviceID()))
+                return device;
+        }
+        Device device = new Device(reading.getUserID(), reading.getDeviceType(), reading.getDeviceID());
+        devices.add(device);
+        return device;
+    }
+
+    private static boolean equal(String a, String b){
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Emits a combined reading for every tick of a device up to the most recent time covered
+     * by both of its streams.
+     * @param device the device whose streams were updated.
+     */
+    private void emit(Device device){
+        Stream accelerometer = device.accelerometer, gyroscope = device.gyroscope;
+        if (accelerometer.isEmpty() || gyroscope.isEmpty())
+            return;
+        if (device.tick < 0)
+            device.tick = ceilTick(Math.max(accelerometer.oldestTimestamp(), gyroscope.oldestTimestamp()));
+        //the ticks resume after the samples that were passed on individually
+        device.tick = Math.max(device.tick, ceilTick(device.individualUntil));
+
+        long end = Math.min(accelerometer.newestTimestamp(), gyroscope.newestTimestamp());
+        long t;
+        while ((t = tickTime(device.tick)) <= end) {
+            long resume = Math.max(accelerometer.interpolate(t, sample, 0, maxGap), gyroscope.interpolate(t, sample, 3, maxGap));
+            if (resume < 0) {
+                listener.onSensorReading(new IMUReading(device.userID, device.deviceType, device.deviceID, t,
+                        accelerometer.getLabel(), sample));
+                device.covered = t;
+                device.tick++;
+            } else {
+                //skip the ticks in the gap, passing on the samples around it instead
+                device.tick = Math.max(device.tick + 1, ceilTick(resume));
+                device.individualUntil = tickTime(device.tick);
+                passOn(device, device.individualUntil);
+            }
+        }
+    }
+
+    /**
+     * Passes on the buffered samples of both streams of a device that are neither covered
+     * by a combined reading nor were passed on yet, up to the given time.
+     * @param device the device.
+     * @param until the time before which samples are passed on, exclusive.
+     */
+    private void passOn(Device device, long until){
+        device.accelerometer.passOn(device, device.covered, until, true, listener);
+        device.gyroscope.passOn(device, device.covered, until, false, listener);
+        device.covered = Math.max(device.covered, until - 1);
+    }
+
+    /**
+     * Gets the time of a tick, without overflowing for fine-grained timestamps.
+     * @param tick the tick index.
+     * @return the time in the unit of the timestamps.
+     */
+    private long tickTime(long tick){
+        return tick / rate * unitsPerSecond + tick % rate * unitsPerSecond / rate;
+    }
+
+    /**
+     * Gets the first tick at or after the given time.
+     * @param time the time in the unit of the timestamps, not negative.
+     * @return the tick index.
+     */
+    private long ceilTick(long time){
+        long tick = time / unitsPerSecond * rate + time % unitsPerSecond * rate / unitsPerSecond;
+        return tickTime(tick) < time ? tick + 1 : tick;
+    }
+
+    /**
+     * The accelerometer and gyroscope streams of a single device and the ticks emitted for it.
+     */
+    private static class Device {
+        /** The metadata applied to the combined readings. **/
+        final String userID, deviceType, deviceID;
+
+        /** The buffered accelerometer samples. **/
+        final Stream accelerometer = new Stream();
+
+        /** The buffered gyroscope samples. **/
+        final Stream gyroscope = new Stream();
+
+        /** The index of the next tick, counted in periods since the epoch, or -1 before the first tick. **/
+        long tick = -1;
+
+        /** The time up to which all samples were emitted, combined or individually. **/
+        long covered = -1;
+
+        /** The time before which samples are passed on individually, as they cannot be fused. **/
+        long individualUntil;
+
+        Device(String userID, String deviceType, String deviceID){
+            this.userID = userID;
+            this.deviceType = deviceType;
+            this.deviceID = deviceID;
+        }
+    }
+
+    /**
+     * A buffered three-axis stream with a cursor to the sample preceding the next tick,
+     * which avoids searching the buffer for every tick. The label of each sample is
+     * buffered as a fourth channel.
+     */
+    private static class Stream {
+        /** The buffered samples. **/
+        private final TimeSeriesRingBuffer buffer = new TimeSeriesRingBuffer(BUFFER_CAPACITY, 4);
+
+        /** The index of the latest sample at or before the last interpolated time. **/
+        private long cursor;
+
+        /** Holds the values and the label of the sample being added. **/
+        private final float[] values = new float[4];
+
+        /**
+         * Buffers a sample.
+         * @return true if the sample was added, false if it is not newer than the newest sample.
+         */
+        boolean add(long timestamp, float x, float y, float z, int label){
+            long count = buffer.getCount();
+            if (count > 0 && timestamp <= buffer.getTimestamp(count - 1))
+                return false;
+            values[0] = x;
+            values[1] = y;
+            values[2] = z;
+            values[3] = label;
+            buffer.add(timestamp, values);
+            return true;
+        }
+
+        boolean isEmpty(){
+            return buffer.getCount() == 0;
+        }
+
+        long oldestTimestamp(){
+            return buffer.getTimestamp(buffer.getOldestIndex());
+        }
+
+        long newestTimestamp(){
+            return buffer.getTimestamp(buffer.getCount() - 1);
+        }
+
+        /**
+         * Gets the label of the sample at or before the last interpolated time.
+         * @return the label, or -1 if the sample is unlabelled.
+         */
+        int getLabel(){
+            return (int) buffer.getValue(cursor, 3);
+        }
+
+        /**
+         * Interpolates the stream at the given time, which must not be after the newest sample.
+         * @param t the time.
+         * @param out receives the three interpolated values.
+         * @param offset the position in out at which the values are stored.
+         * @param maxGap the largest gap across which values are interpolated.
+         * @return -1 on success, or the timestamp of the sample after the gap if t falls into a
+         * gap larger than maxGap or precedes the buffered samples.
+         */
+        long interpolate(long t, float[] out, int offset, long maxGap){
+            long count = buffer.getCount();
+            if (cursor < buffer.getOldestIndex())
+                cursor = buffer.getOldestIndex();
+            if (buffer.getTimestamp(cursor) > t)
+                return buffer.getTimestamp(cursor);
+            while (cursor + 1 < count && buffer.getTimestamp(cursor + 1) <= t)
+                cursor++;
+
+            long t0 = buffer.getTimestamp(cursor);
+            if (t0 == t) {
+                for (int i = 0; i < 3; i++)
+                    out[offset + i] = buffer.getValue(cursor, i);
+                return -1;
+            }
+            long t1 = buffer.getTimestamp(cursor + 1);
+            if (t1 - t0 > maxGap)
+                return t1;
+            float w = (float) (t - t0) / (t1 - t0);
+            for (int i = 0; i < 3; i++) {
+                float v0 = buffer.getValue(cursor, i);
+                out[offset + i] = v0 + w * (buffer.getValue(cursor + 1, i) - v0);
+            }
+            return -1;
+        }
+
+        /**
+         * Passes on the buffered samples after one time and before another as individual readings.
+         * @param device the device the stream belongs to.
+         * @param after the time after which samples are passed on, exclusive.
+         * @param until the time before which samples are passed on, exclusive.
+         * @param accelerometer true if the stream holds accelerometer samples, false for the gyroscope.
+         * @param listener receives the readings.
+         */
+        void passOn(Device device, long after, long until, boolean accelerometer, SensorReadingListener listener){
+            long oldest = buffer.getOldestIndex(), i = buffer.getCount();
+            while (i > oldest && buffer.getTimestamp(i - 1) > after)
+                i--;
+            for (; i < buffer.getCount(); i++) {
+                long t = buffer.getTimestamp(i);
+                if (t >= until)
+                    break;
+                int label = (int) buffer.getValue(i, 3);
+                float x = buffer.getValue(i, 0), y = buffer.getValue(i, 1), z = buffer.getValue(i, 2);
+                listener.onSensorReading(accelerometer
+                        ? new AccelerometerReading(device.userID, device.deviceType, device.deviceID, t, label, x, y, z)
+                        : new GyroscopeReading(device.userID, device.deviceType, device.deviceID, t, label, x, y, z));
+            }
+        }
+    }
+}
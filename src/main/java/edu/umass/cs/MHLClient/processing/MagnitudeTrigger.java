@@ -0,0 +1,40 @@
+package edu.umass.cs.MHLClient.processing;
+
+import edu.umass.cs.MHLClient.sensors.SensorReading;
+
+/**
+ * Triggers a capture when the magnitude of a reading, i.e. the Euclidean norm of its
+ * channels, reaches a threshold, e.g. the acceleration peak of a fall.
+ *
+ * @author Sean Noran
+ *
+ * @see EventCapture
+ */
+public class MagnitudeTrigger implements CaptureTrigger {
+
+    /** The sensor type of the readings the trigger is evaluated on. **/
+    private final String sensorType;
+
+    /** The squared threshold, to avoid the square root. **/
+    private final float squaredThreshold;
+
+    /**
+     * Instantiates a magnitude trigger.
+     * @param sensorType the sensor type of the readings to evaluate, e.g. "SENSOR_ACCEL".
+     * @param threshold the magnitude at or above which a capture is triggered.
+     */
+    public MagnitudeTrigger(String sensorType, float threshold){
+        this.sensorType = sensorType;
+        this.squaredThreshold = threshold * threshold;
+    }
+
+    @Override
+    public boolean isTriggered(SensorReading reading, float[] channels){
+        if (!sensorType.equals(reading.getSensorType()))
+            return false;
+        float sum = 0;
+        for (float value : channels)
+            sum += value * value;
+        return sum >= squaredThreshold;
+    }
+}
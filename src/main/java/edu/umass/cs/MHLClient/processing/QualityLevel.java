@@ -0,0 +1,62 @@
+package edu.umass.cs.MHLClient.processing;
+
+import edu.umass.cs.MHLClient.sensors.SensorReading;
+
+/**
+ * A level of quality at which the readings of a sensor are sent, e.g. at full rate,
+ * decimated or reduced to features. Levels are applied to every reading before it is
+ * queued and may keep state per stream.
+ *
+ * @author Sean Noran
+ *
+ * @see DecimationLevel
+ * @see FeatureLevel
+ * @see edu.umass.cs.MHLClient.client.QualityController
+ */
+public abstract class QualityLevel {
+
+    /** Sends every reading unchanged. **/
+    public static final QualityLevel FULL = new QualityLevel("full") {
+        @Override
+        public SensorReading apply(SensorReading reading) {
+            return reading;
+        }
+    };
+
+    /** The name of the level, which is sent with quality changes. **/
+    private final String name;
+
+    /**
+     * Instantiates a quality level.
+     * @param name the name of the level, e.g. "decimate-4".
+     */
+    protected QualityLevel(String name){
+        this.name = name;
+    }
+
+    /**
+     * Gets the name of the level.
+     * @return the name.
+     */
+    public String getName(){
+        return name;
+    }
+
+    /**
+     * Applies the level to a reading.
+     * @param reading the reading.
+     * @return the reading to send in its place, which may be the reading itself, or null if nothing should be sent.
+     */
+    public abstract SensorReading apply(SensorReading reading);
+
+    /**
+     * Discards any state kept for the streams, called when the level is switched to.
+     */
+    public void reset(){
+    }
+
+    @Override
+    public String toString(){
+        return name;
+    }
+}
@@ -0,0 +1,13 @@
+package edu.umass.cs.MHLClient.processing;
+
+import edu.umass.cs.MHLClient.sensors.SensorReading;
+
+/**
+ * Receives the sensor readings produced by a processing stage, e.g. the
+ * combined readings emitted by an {@link IMUResampler}.
+ *
+ * @author Sean Noran
+ */
+public interface SensorReadingListener {
+    void onSensorReading(SensorReading reading);
+}
@@ -0,0 +1,92 @@
+package edu.umass.cs.MHLClient.processing;
+
+import edu.umass.cs.MHLClient.sensors.SensorReading;
+import edu.umass.cs.MHLClient.sensors.SensorReadingEncoder;
+import edu.umass.cs.MHLClient.sensors.SummaryReading;
+
+/**
+ * Accumulates the mean, minimum and maximum of each channel of a stream over fixed
+ * intervals, without allocating until a {@link SummaryReading} is emitted.
+ *
+ * @author Sean Noran
+ */
+class StreamSummary {
+
+    /** The metadata of the stream. **/
+    private final String userID, deviceType, deviceID, sensorType;
+
+    /** The channel names, separated by commas. **/
+    private final String channels;
+
+    /** The running sums of the current interval. **/
+    private final double[] sum;
+
+    /** The running minima and maxima of the current interval. **/
+    private final float[] min, max;
+
+    /** The number of samples in the current interval. **/
+    private int count;
+
+    /** The start of the current interval. **/
+    private long start;
+
+    /**
+     * Instantiates a stream summary.
+     * @param reading a reading of the stream, whose metadata is used for the summaries.
+     * @param encoder the encoder of the stream's readings, which must have at least one channel.
+     */
+    StreamSummary(SensorReading reading, SensorReadingEncoder encoder){
+        userID = reading.getUserID();
+        deviceType = reading.getDeviceType();
+        deviceID = reading.getDeviceID();
+        sensorType = reading.getSensorType();
+        int n = encoder.getChannelCount();
+        sum = new double[n];
+        min = new float[n];
+        max = new float[n];
+        StringBuilder sb = new StringBuilder();
+        for (String name : encoder.getChannelNames())
+            sb.append(sb.length() == 0 ? "" : ",").append(name);
+        channels = sb.toString();
+    }
+
+    /**
+     * Adds a sample, completing the current interval first if the sample falls after it.
+     * @param t the timestamp of the sample.
+     * @param sample the values of the sample, one per channel.
+     * @param interval the duration of the intervals.
+     * @return the summary of the completed interval, or null if the interval has not passed.
+     */
+    SummaryReading add(long t, float[] sample, long interval){
+        SummaryReading summary = null;
+        if (count > 0 && t - start >= interval) {
+            float[] mean = new float[sum.length];
+            for (int c = 0; c < mean.length; c++)
+                mean[c] = (float) (sum[c] / count);
+            summary = new SummaryReading(userID, deviceType, deviceID, start, sensorType, channels,
+                    t - start, count, mean, min.clone(), max.clone());
+            reset();
+        }
+        if (count == 0)
+            start = t;
+        for (int c = 0; c < sum.length; c++) {
+            float v = sample[c];
+            sum[c] += v;
+            if (count == 0 || v < min[c])
+                min[c] = v;
+            if (count == 0 || v > max[c])
+                max[c] = v;
+        }
+        count++;
+        return summary;
+    }
+
+    /**
+     * Discards the samples of the current interval.
+     */
+    void reset(){
+        count = 0;
+        for (int c = 0; c < sum.length; c++)
+            sum[c] = 0;
+    }
+}
@@ -1,8 +1,5 @@
 package edu.umass.cs.MHLClient.sensors;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
 /**
  * Wraps an accelerometer reading and defines a JSON structure that allows
  * the reading to be sent to the server.
@@ -14,13 +11,16 @@ import org.json.JSONObject;
 public class AccelerometerReading extends SensorReading {
 
     /** The acceleration along the x-axis **/
-    private final double x;
+    @SensorField
+    final double x;
 
     /** The acceleration along the y-axis **/
-    private final double y;
+    @SensorField
+    final double y;
 
     /** The acceleration along the z-axis **/
-    private final double z;
+    @SensorField
+    final double z;
 
     /**
      * Instantiates an accelerometer reading.
@@ -55,22 +55,27 @@ public class AccelerometerReading extends SensorReading {
         this.z = values[2];
     }
 
-    @Override
-    protected JSONObject toJSONObject(){
-        JSONObject obj = getBaseJSONObject();
-        JSONObject data = new JSONObject();
-
-        try {
-            data.put("t", timestamp);
-            data.put("x", x);
-            data.put("y", y);
-            data.put("z", z);
+    /**
+     * Gets the acceleration along the x-axis.
+     * @return the x-axis reading.
+     */
+    public double getX(){
+        return x;
+    }
 
-            obj.put("data", data);
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
+    /**
+     * Gets the acceleration along the y-axis.
+     * @return the y-axis reading.
+     */
+    public double getY(){
+        return y;
+    }
 
-        return obj;
+    /**
+     * Gets the acceleration along the z-axis.
+     * @return the z-axis reading.
+     */
+    public double getZ(){
+        return z;
     }
 }
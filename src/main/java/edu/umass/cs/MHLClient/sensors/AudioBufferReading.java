@@ -1,12 +1,5 @@
 package edu.umass.cs.MHLClient.sensors;
 
-import android.annotation.TargetApi;
-import android.os.Build;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
 /**
  * Wraps an audio buffer into a sensor reading to send to the server.
  *
@@ -20,7 +13,8 @@ public class AudioBufferReading extends SensorReading {
     /**
      * The entries in the feature vector.
      */
-    private final short[] buffer;
+    @SensorField("values")
+    final short[] buffer;
 
     /**
      * Instantiates an audio buffer reading.
@@ -35,21 +29,4 @@ public class AudioBufferReading extends SensorReading {
         super(userID, deviceType, deviceID, "SENSOR_AUDIO", t);
         this.buffer = buffer;
     }
-
-    @TargetApi(Build.VERSION_CODES.KITKAT)
-    @Override
-    protected JSONObject toJSONObject() {
-        JSONObject obj = getBaseJSONObject();
-        JSONObject data = new JSONObject();
-        try {
-            data.put("t", timestamp);
-            JSONArray audioBuffer = new JSONArray(buffer);
-            data.put("values", audioBuffer);
-            obj.put("data", data);
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
-
-        return obj;
-    }
-}
\ No newline at end of file
+}
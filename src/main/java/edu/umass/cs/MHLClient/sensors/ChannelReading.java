@@ -0,0 +1,77 @@
+package edu.umass.cs.MHLClient.sensors;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A reading reconstructed from the channels of another reading, e.g. after it was held
+ * in a primitive time series buffer. It is sent with the sensor type and channel names
+ * of the original reading, so the server receives the same 'data' keys; only the
+ * precision of the values is limited to that of a float.
+ *
+ * @author Sean Noran
+ *
+ * @see SensorReadingEncoder#readChannels(SensorReading, float[])
+ * @see edu.umass.cs.MHLClient.processing.EventCapture
+ */
+public class ChannelReading extends SensorReading {
+
+    /** The keys of the values, shared by all readings of a stream. **/
+    private final String[] channelNames;
+
+    /** The value of each channel. **/
+    private final float[] values;
+
+    /**
+     * Instantiates a channel reading.
+     * @param userID a 10-byte hex string identifying the current user.
+     * @param deviceType describes the device.
+     * @param deviceID unique device identifier.
+     * @param sensorType the sensor type of the original reading.
+     * @param t the timestamp at which the event occurred, in Unix time by convention.
+     * @param label the class label associated with the reading, -1 if none.
+     * @param channelNames the keys of the values.
+     * @param values the value of each channel.
+     */
+    public ChannelReading(String userID, String deviceType, String deviceID, String sensorType, long t, int label, String[] channelNames, float[] values){
+        super(userID, deviceType, deviceID, sensorType, t, label);
+
+        this.channelNames = channelNames;
+        this.values = values;
+    }
+
+    /**
+     * Gets the value of a channel.
+     * @param channel the index of the channel.
+     * @return the value.
+     */
+    public float getValue(int channel){
+        return values[channel];
+    }
+
+    @Override
+    protected JSONObject toJSONObject(){
+        JSONObject obj = getBaseJSONObject();
+        try {
+            obj.put("data", toDataJSONObject());
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return obj;
+    }
+
+    @Override
+    protected JSONObject toDataJSONObject(){
+        JSONObject data = new JSONObject();
+        try {
+            data.put("t", timestamp);
+            for (int c = 0; c < channelNames.length; c++) {
+                //go through the decimal representation of the float, so that e.g. 0.1f is not sent as 0.10000000149011612
+                data.put(channelNames[c], Double.parseDouble(Float.toString(values[c])));
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return data;
+    }
+}
@@ -0,0 +1,42 @@
+package edu.umass.cs.MHLClient.sensors;
+
+/**
+ * Acknowledges a control message from the server, reporting whether the requested
+ * sampling policy was applied.
+ *
+ * @author Sean Noran
+ *
+ * @see edu.umass.cs.MHLClient.client.SamplingPolicy
+ */
+public class ControlAckReading extends SensorReading {
+
+    /** The sensor type identifying acknowledgements of control messages. **/
+    public static final String SENSOR_TYPE = "SENSOR_CONTROL_ACK";
+
+    /** The ID of the acknowledged control message, -1 if it had none. **/
+    @SensorField("id")
+    final long controlID;
+
+    /** Indicates whether the policy was applied. **/
+    @SensorField("applied")
+    final boolean applied;
+
+    /** Describes why the policy was rejected, empty if it was applied. **/
+    @SensorField("error")
+    final String error;
+
+    /**
+     * Instantiates an acknowledgement.
+     * @param userID a 10-byte hex string identifying the current user.
+     * @param t the time at which the control message was handled, in Unix time by convention.
+     * @param controlID the ID of the acknowledged control message, -1 if it had none.
+     * @param applied true if the policy was applied, false if it was rejected.
+     * @param error describes why the policy was rejected, empty if it was applied.
+     */
+    public ControlAckReading(String userID, long t, long controlID, boolean applied, String error){
+        super(userID, null, null, SENSOR_TYPE, t);
+        this.controlID = controlID;
+        this.applied = applied;
+        this.error = error;
+    }
+}
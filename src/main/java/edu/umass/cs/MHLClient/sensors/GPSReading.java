@@ -1,8 +1,5 @@
 package edu.umass.cs.MHLClient.sensors;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
 /**
  * Wraps a GPS reading and defines a JSON structure that allows
  * the reading to be sent to the server.
@@ -14,10 +11,12 @@ import org.json.JSONObject;
 public class GPSReading extends SensorReading {
 
     /** The latitude of the GPS reading **/
-    private final double latitude;
+    @SensorField
+    final double latitude;
 
     /** The longitude of the GPS reading **/
-    private final double longitude;
+    @SensorField
+    final double longitude;
 
     /**
      * Instantiates a GPS reading.
@@ -34,22 +33,4 @@ public class GPSReading extends SensorReading {
         this.latitude = latitude;
         this.longitude = longitude;
     }
-
-    @Override
-    protected JSONObject toJSONObject(){
-        JSONObject obj = getBaseJSONObject();
-        JSONObject data = new JSONObject();
-
-        try {
-            data.put("t", timestamp);
-            data.put("latitude", latitude);
-            data.put("longitude", longitude);
-
-            obj.put("data", data);
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
-
-        return obj;
-    }
 }
@@ -1,8 +1,5 @@
 package edu.umass.cs.MHLClient.sensors;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
 /**
  * Wraps a gyroscope reading and defines a JSON structure that allows
  * the reading to be sent to the server.
@@ -14,13 +11,16 @@ import org.json.JSONObject;
 public class GyroscopeReading extends SensorReading {
 
     /** The change in orientation along the x-axis **/
-    private final double x;
+    @SensorField
+    final double x;
 
     /** The change in orientation along the y-axis **/
-    private final double y;
+    @SensorField
+    final double y;
 
     /** The change in orientation along the z-axis **/
-    private final double z;
+    @SensorField
+    final double z;
 
     /**
      * Instantiates a gyroscope reading.
@@ -53,22 +53,27 @@ public class GyroscopeReading extends SensorReading {
         this.z = values[2];
     }
 
-    @Override
-    protected JSONObject toJSONObject(){
-        JSONObject obj = getBaseJSONObject();
-        JSONObject data = new JSONObject();
-
-        try {
-            data.put("t", timestamp);
-            data.put("x", x);
-            data.put("y", y);
-            data.put("z", z);
+    /**
+     * Gets the change in orientation along the x-axis.
+     * @return the x-axis reading.
+     */
+    public double getX(){
+        return x;
+    }
 
-            obj.put("data", data);
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
+    /**
+     * Gets the change in orientation along the y-axis.
+     * @return the y-axis reading.
+     */
+    public double getY(){
+        return y;
+    }
 
-        return obj;
+    /**
+     * Gets the change in orientation along the z-axis.
+     * @return the z-axis reading.
+     */
+    public double getZ(){
+        return z;
     }
-}
\ No newline at end of file
+}
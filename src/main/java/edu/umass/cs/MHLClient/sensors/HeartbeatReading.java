@@ -0,0 +1,33 @@
+package edu.umass.cs.MHLClient.sensors;
+
+/**
+ * An application-level heartbeat sent periodically by the
+ * {@link edu.umass.cs.MHLClient.client.MobileIOClient} to verify that the
+ * connection to the server is still alive. Servers that support heartbeats
+ * echo the message back unchanged, which allows the client to measure the
+ * round-trip time.
+ *
+ * @author Sean Noran
+ *
+ * @see SensorReading
+ */
+public class HeartbeatReading extends SensorReading {
+
+    /** The sensor type identifying heartbeat messages, in both directions. **/
+    public static final String SENSOR_TYPE = "SENSOR_HEARTBEAT";
+
+    /** Identifies the heartbeat, so that its echo can be matched. **/
+    @SensorField("seq")
+    final int sequenceNumber;
+
+    /**
+     * Instantiates a heartbeat.
+     * @param userID a 10-byte hex string identifying the current user.
+     * @param t the time at which the heartbeat is sent, in Unix time by convention.
+     * @param sequenceNumber identifies the heartbeat.
+     */
+    public HeartbeatReading(String userID, long t, int sequenceNumber){
+        super(userID, null, null, SENSOR_TYPE, t);
+        this.sequenceNumber = sequenceNumber;
+    }
+}
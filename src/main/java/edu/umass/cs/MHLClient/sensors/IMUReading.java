@@ -0,0 +1,58 @@
+package edu.umass.cs.MHLClient.sensors;
+
+/**
+ * Wraps a combined 6-axis inertial reading, i.e. an accelerometer and a gyroscope
+ * sample aligned to the same timestamp, and defines a JSON structure that allows
+ * the reading to be sent to the server.
+ *
+ * @author Sean Noran
+ *
+ * @see SensorReading
+ * @see edu.umass.cs.MHLClient.processing.IMUResampler
+ */
+public class IMUReading extends SensorReading {
+
+    /** The acceleration along the x-axis **/
+    @SensorField
+    final double ax;
+
+    /** The acceleration along the y-axis **/
+    @SensorField
+    final double ay;
+
+    /** The acceleration along the z-axis **/
+    @SensorField
+    final double az;
+
+    /** The change in orientation along the x-axis **/
+    @SensorField
+    final double gx;
+
+    /** The change in orientation along the y-axis **/
+    @SensorField
+    final double gy;
+
+    /** The change in orientation along the z-axis **/
+    @SensorField
+    final double gz;
+
+    /**
+     * Instantiates an IMU reading.
+     * @param userID a 10-byte hex string identifying the current user.
+     * @param deviceType describes the device.
+     * @param deviceID unique device identifier.
+     * @param t the timestamp at which the event occurred, in Unix time by convention.
+     * @param label the class label associated with the reading, -1 if none.
+     * @param values the accelerometer x, y, z readings followed by the gyroscope x, y, z readings.
+     */
+    public IMUReading(String userID, String deviceType, String deviceID, long t, int label, float... values){
+        super(userID, deviceType, deviceID, "SENSOR_IMU", t, label);
+
+        this.ax = values[0];
+        this.ay = values[1];
+        this.az = values[2];
+        this.gx = values[3];
+        this.gy = values[4];
+        this.gz = values[5];
+    }
+}
@@ -0,0 +1,42 @@
+package edu.umass.cs.MHLClient.sensors;
+
+/**
+ * Marks a change in the quality at which the readings of a sensor are sent, so that the
+ * server can interpret the readings that follow, e.g. as decimated or as features only.
+ *
+ * @author Sean Noran
+ *
+ * @see edu.umass.cs.MHLClient.client.QualityController
+ */
+public class QualityReading extends SensorReading {
+
+    /** The sensor type identifying quality changes. **/
+    public static final String SENSOR_TYPE = "SENSOR_QUALITY";
+
+    /** The sensor type whose quality changed. **/
+    @SensorField("sensor")
+    final String affectedType;
+
+    /** The index of the new level, 0 being the highest quality. **/
+    @SensorField("level")
+    final int level;
+
+    /** The name of the new level. **/
+    @SensorField("name")
+    final String name;
+
+    /**
+     * Instantiates a quality reading.
+     * @param userID a 10-byte hex string identifying the current user.
+     * @param t the time of the change, in Unix time by convention.
+     * @param affectedType the sensor type whose quality changed.
+     * @param level the index of the new level, 0 being the highest quality.
+     * @param name the name of the new level.
+     */
+    public QualityReading(String userID, long t, String affectedType, int level, String name){
+        super(userID, null, null, SENSOR_TYPE, t);
+        this.affectedType = affectedType;
+        this.level = level;
+        this.name = name;
+    }
+}
@@ -1,8 +1,5 @@
 package edu.umass.cs.MHLClient.sensors;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
 /**
  * Wraps a received signal strength indicator (RSSI) reading and defines a
  * JSON structure that allows the reading to be sent to the server.
@@ -14,7 +11,8 @@ import org.json.JSONObject;
 public class RSSIReading extends SensorReading {
 
     /** The RSSI reading. **/
-    private final int rssi;
+    @SensorField
+    final int rssi;
 
     /**
      * Instantiates an RSSI reading.
@@ -42,20 +40,4 @@ public class RSSIReading extends SensorReading {
         super(userID, deviceType, deviceID, "SENSOR_RSSI", t, label);
         this.rssi = rssi;
     }
-
-    @Override
-    protected JSONObject toJSONObject() {
-        JSONObject obj = getBaseJSONObject();
-        JSONObject data = new JSONObject();
-
-        try {
-            data.put("t", timestamp);
-            data.put("rssi", rssi);
-
-            obj.put("data", data);
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
-        return obj;
-    }
 }
@@ -0,0 +1,35 @@
+package edu.umass.cs.MHLClient.sensors;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a field of a {@link SensorReading} subclass as part of the reading's data.
+ * Readings with annotated fields are serialized by a {@link SensorReadingEncoder}
+ * directly into the transmitted string, using the same metadata envelope as the
+ * built-in readings, and do not need to implement {@link SensorReading#toJSONObject()}.
+ * <br><br>
+ * Supported field types are the primitive types, arrays of primitive types and
+ * {@link String}. For example, a heart rate reading could be defined as
+ * <pre>
+ * public class HeartRateReading extends SensorReading {
+ *     &#64;SensorField("bpm")
+ *     private final int beatsPerMinute;
+ *     ...
+ * }
+ * </pre>
+ *
+ * @author Sean Noran
+ *
+ * @see SensorReadingEncoder
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface SensorField {
+    /**
+     * The key of the field in the 'data' object. Defaults to the name of the field.
+     */
+    String value() default "";
+}
@@ -0,0 +1,46 @@
+package edu.umass.cs.MHLClient.sensors;
+
+/**
+ * Reads the {@link SensorField annotated fields} of one {@link SensorReading} subclass
+ * without reflection. Implementations are generated at compile time by the
+ * {@code SensorFieldProcessor} of the processor module, named after the reading class
+ * with the suffix {@code _SensorFieldAccessor}, and are picked up by the
+ * {@link SensorReadingEncoder} when present. Classes without a generated accessor are
+ * read by reflection instead.
+ *
+ * @author Sean Noran
+ *
+ * @see SensorReadingEncoder
+ */
+public interface SensorFieldAccessor {
+
+    /**
+     * Gets the keys of the annotated fields, superclass fields first, in declaration order.
+     * @return the field keys.
+     */
+    String[] getFieldNames();
+
+    /**
+     * Appends each annotated field as a comma-prefixed JSON key-value pair, in the
+     * order of {@link #getFieldNames()}.
+     * @param reading a reading of the class the accessor was generated for.
+     * @param sb the string builder to append to.
+     */
+    void appendFields(SensorReading reading, StringBuilder sb);
+
+    /**
+     * Reads the numeric scalar fields of the reading.
+     * @param reading a reading of the class the accessor was generated for.
+     * @param out receives one value per channel.
+     * @see SensorReadingEncoder#readChannels(SensorReading, float[])
+     */
+    void readChannels(SensorReading reading, float[] out);
+
+    /**
+     * Reads the numeric scalar fields of the reading at full precision.
+     * @param reading a reading of the class the accessor was generated for.
+     * @param out receives one value per channel.
+     * @see SensorReadingEncoder#readChannels(SensorReading, double[])
+     */
+    void readChannels(SensorReading reading, double[] out);
+}
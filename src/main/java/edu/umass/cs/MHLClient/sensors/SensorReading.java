@@ -6,8 +6,16 @@ import org.json.JSONObject;
 /**
  * Base class for a sensor reading. You may use existing implementations such
  * as {@link AccelerometerReading} or, if your sensing modality is not available,
- * subclass {@link SensorReading} in your own custom reading. To do so, you must
- * only define the {@link #toJSONObject()} method.
+ * subclass {@link SensorReading} in your own custom reading. To do so, either
+ * annotate the fields holding the data with {@link SensorField}, as the built-in
+ * readings do, or define the {@link #toJSONObject()} method. Annotated readings are
+ * serialized by a {@link SensorReadingEncoder} without intermediate JSON objects,
+ * and annotations take precedence over {@link #toJSONObject()} for transmission.
+ * <br><br>
+ * Readings with annotated fields, or that define {@link #toDataJSONObject()}, can be
+ * sent in a compact session, in which the metadata is declared once per stream and
+ * each reading only carries its stream ID, label and data. Readings that do not
+ * are always sent with the full metadata envelope.
  *
  * @author Erik Risinger
  *
@@ -37,6 +45,12 @@ public abstract class SensorReading {
     /** Indicates the label, -1 indicates that no label is available **/
     protected final int label;
 
+    /**
+     * The stream key, computed on first use. Like {@link String#hashCode()}, it may be
+     * computed more than once by racing threads, which all compute the same immutable string.
+     */
+    private String streamKey;
+
     /**
      * Instantiates a sensor reading object. Because {@link SensorReading} is
      * abstract, this should only be called by subclasses for initializing
@@ -49,12 +63,7 @@ public abstract class SensorReading {
      * @param timestamp indicates when the sensor reading occurred, in Unix time by convention.
      */
     protected SensorReading(String userID, String deviceType, String deviceID, String sensorType, long timestamp){
-        this.userID = userID;
-        this.deviceType = deviceType;
-        this.deviceID = deviceID;
-        this.sensorType = sensorType;
-        this.timestamp = timestamp;
-        this.label = -1;
+        this(userID, deviceType, deviceID, sensorType, timestamp, -1);
     }
 
     /**
@@ -67,6 +76,7 @@ public abstract class SensorReading {
      * @param deviceID TODO
      * @param sensorType identifies the sensor type.
      * @param timestamp indicates when the sensor reading occurred, in Unix time by convention.
+     * @param label the class label, or -1 if no label is available.
      */
     protected SensorReading(String userID, String deviceType, String deviceID, String sensorType, long timestamp, int label){
         this.userID = userID;
@@ -93,6 +103,14 @@ public abstract class SensorReading {
         return deviceType;
     }
 
+    /**
+     * Gets the unique identifier of the device associated with the sensor reading.
+     * @return a String identifying the device.
+     */
+    public String getDeviceID(){
+        return deviceID;
+    }
+
     /**
      * Gets the sensor modality associated with the sensor reading.
      * @return a String representing the sensor type.
@@ -110,10 +128,116 @@ public abstract class SensorReading {
     }
 
     /**
-     * Defines how the data is converted to a JSON object.
+     * Gets the label associated with the sensor reading.
+     * @return the class label, or -1 if no label is available.
+     */
+    public int getLabel(){
+        return label;
+    }
+
+    /**
+     * Defines how the data is converted to a JSON object. The default implementation
+     * encodes the {@link SensorField annotated fields}; subclasses without annotated
+     * fields must override this method.
      * @return a JSON object encoding the sensor reading.
+     * @throws UnsupportedOperationException if the reading has no annotated fields.
      */
-    protected abstract JSONObject toJSONObject();
+    protected JSONObject toJSONObject(){
+        JSONObject data = toDataJSONObject();
+        if (data == null)
+            throw new UnsupportedOperationException(getClass().getName() + " has no @SensorField fields and does not define toJSONObject()");
+        JSONObject obj = getBaseJSONObject();
+        try {
+            obj.put("data", data);
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+        return obj;
+    }
+
+    /**
+     * Defines how the data, excluding any metadata, is converted to a JSON object. This is
+     * the 'data' object of {@link #toJSONObject()}. The default implementation encodes the
+     * {@link SensorField annotated fields}, or returns null if there are none or if the
+     * class only defines {@link #toJSONObject()}, which indicates that the reading does not
+     * support compact sessions.
+     * @return a JSON object encoding the data, or null.
+     */
+    protected JSONObject toDataJSONObject(){
+        SensorReadingEncoder encoder = SensorReadingEncoder.forClass(getClass());
+        return encoder == null || encoder.customJSON ? null : encoder.toDataJSONObject(this);
+    }
+
+    /**
+     * Returns a key identifying the stream the reading belongs to, i.e. the combination
+     * of user, device and sensor type. Readings with equal stream keys share metadata.
+     * The key is built once per reading, however often it is requested.
+     * @return the stream key.
+     */
+    public String getStreamKey(){
+        String key = streamKey;
+        if (key == null) {
+            key = userID + "," + deviceType + "," + deviceID + "," + sensorType;
+            streamKey = key;
+        }
+        return key;
+    }
+
+    /**
+     * Returns the declaration of the stream the reading belongs to, which assigns the
+     * given stream ID to the reading's metadata for the remainder of a compact session.
+     * @param streamID the small integer identifying the stream within the session.
+     * @return a transmission-ready string declaring the stream.
+     */
+    public String toStreamDeclarationString(int streamID){
+        JSONObject obj = new JSONObject();
+        JSONObject device = new JSONObject();
+
+        try {
+            device.put("device_type", deviceType);
+            device.put("device_id", deviceID);
+            obj.put("declare_stream", streamID);
+            obj.put("user_id", userID);
+            obj.put("device_type", deviceType);
+            obj.put("device", device);
+            obj.put("sensor_type", sensorType);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+
+        return obj.toString();
+    }
+
+    /**
+     * Converts the reading into a compact transmission-ready string, which refers to
+     * previously declared metadata by stream ID.
+     * @param streamID the ID assigned to the reading's stream.
+     * @return a compact string form of the reading, or null if the reading does not
+     * have annotated fields or define {@link #toDataJSONObject()}.
+     * @see #toStreamDeclarationString(int)
+     */
+    public String toCompactJSONString(int streamID){
+        SensorReadingEncoder encoder = SensorReadingEncoder.forClass(getClass());
+        if (encoder != null && !encoder.customJSON)
+            return encoder.toCompactJSONString(this, streamID);
+
+        JSONObject data = toDataJSONObject();
+        if (data == null)
+            return null;
+
+        JSONObject obj = new JSONObject();
+        try {
+            obj.put("s", streamID);
+            if (label != -1){
+                obj.put("label", label);
+            }
+            obj.put("data", data);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+
+        return obj.toString();
+    }
 
     /**
      * Returns a base JSON object with the sensor reading metadata already encoded.
@@ -147,6 +271,9 @@ public abstract class SensorReading {
      * @return a string form of the JSON object.
      */
     public String toJSONString(){
+        SensorReadingEncoder encoder = SensorReadingEncoder.forClass(getClass());
+        if (encoder != null && !encoder.customJSON)
+            return encoder.toJSONString(this);
         return this.toJSONObject().toString();
     }
 }
@@ -0,0 +1,710 @@
+package edu.umass.cs.MHLClient.sensors;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serializes the {@link SensorField annotated fields} of a {@link SensorReading} subclass
+ * without building intermediate {@link org.json.JSONObject JSON objects}. The fields of a
+ * class are resolved once, when its encoder is first requested, after which encoding only
+ * reads primitive field values and appends them to a reused {@link StringBuilder}.
+ * <br><br>
+ * The fields are read by the {@link SensorFieldAccessor} generated for the class at compile
+ * time if there is one, and by reflection otherwise.
+ * <br><br>
+ * The JSON encoding uses the same metadata envelope as {@link SensorReading#getBaseJSONObject()}
+ * and stores the timestamp as "t" in the 'data' object, followed by the annotated fields.
+ * <br><br>
+ * The numeric scalar fields are also exposed as channels, which allows readings of any
+ * type to be stored in primitive time series buffers, see {@link #readChannels(SensorReading, float[])}.
+ *
+ * @author Sean Noran
+ *
+ * @see SensorField
+ */
+public final class SensorReadingEncoder {
+
+    private static final int TYPE_BOOLEAN = 0;
+    private static final int TYPE_BYTE = 1;
+    private static final int TYPE_SHORT = 2;
+    private static final int TYPE_INT = 3;
+    private static final int TYPE_LONG = 4;
+    private static final int TYPE_FLOAT = 5;
+    private static final int TYPE_DOUBLE = 6;
+    private static final int TYPE_STRING = 7;
+    private static final int TYPE_BYTE_ARRAY = 8;
+    private static final int TYPE_SHORT_ARRAY = 9;
+    private static final int TYPE_INT_ARRAY = 10;
+    private static final int TYPE_LONG_ARRAY = 11;
+    private static final int TYPE_FLOAT_ARRAY = 12;
+    private static final int TYPE_DOUBLE_ARRAY = 13;
+
+    /** The encoders of all classes requested so far; classes without annotated fields map to {@link #NONE}. **/
+    private static final ConcurrentHashMap<Class<?>, SensorReadingEncoder> encoders = new ConcurrentHashMap<>();
+
+    /** Placeholder for classes without annotated fields. **/
+    private static final SensorReadingEncoder NONE = new SensorReadingEncoder(new Field[0], new int[0], new String[0], new String[0], false, null);
+
+    /** The suffix of the name of generated {@link SensorFieldAccessor accessors}. **/
+    private static final String ACCESSOR_SUFFIX = "_SensorFieldAccessor";
+
+    /** The string builder reused by each thread. **/
+    private static final ThreadLocal<StringBuilder> builders = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
+
+    /** The annotated fields, in declaration order, superclass fields first. **/
+    private final Field[] fields;
+
+    /** The type of each field. **/
+    private final int[] types;
+
+    /** The key of each field. **/
+    private final String[] names;
+
+    /** The quoted key of each field, followed by a colon. **/
+    private final String[] keys;
+
+    /** The indices of the numeric scalar fields, which form the channels. **/
+    private final int[] channels;
+
+    /** The key of each channel. **/
+    private final String[] channelNames;
+
+    /** Indicates whether the class defines its own JSON encoding, which takes precedence over the annotated fields. **/
+    final boolean customJSON;
+
+    /** The generated accessor of the class, or null if the fields are read by reflection. **/
+    private final SensorFieldAccessor accessor;
+
+    private SensorReadingEncoder(Field[] fields, int[] types, String[] keys, String[] names, boolean customJSON,
+                                 SensorFieldAccessor accessor){
+        this.fields = fields;
+        this.customJSON = customJSON;
+        this.accessor = accessor;
+        this.types = types;
+        this.names = names;
+        this.keys = keys;
+
+        int count = 0;
+        for (int type : types) {
+            if (type >= TYPE_BYTE && type <= TYPE_DOUBLE)
+                count++;
+        }
+        this.channels = new int[count];
+        this.channelNames = new String[count];
+        count = 0;
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] >= TYPE_BYTE && types[i] <= TYPE_DOUBLE) {
+                channels[count] = i;
+                channelNames[count++] = names[i];
+            }
+        }
+    }
+
+    /**
+     * Gets the encoder of a sensor reading class.
+     * @param cls a subclass of {@link SensorReading}.
+     * @return the encoder, or null if the class has no {@link SensorField annotated fields}.
+     * @throws IllegalArgumentException if an annotated field has an unsupported type and the
+     * class does not define {@link SensorReading#toJSONObject()}.
+     */
+    public static SensorReadingEncoder forClass(Class<? extends SensorReading> cls){
+        SensorReadingEncoder encoder = encoders.get(cls);
+        if (encoder == null) {
+            encoder = create(cls);
+            encoders.put(cls, encoder);
+        }
+        return encoder == NONE ? null : encoder;
+    }
+
+    /**
+     * Resolves the annotated fields of a class and its superclasses.
+     * @param cls a subclass of {@link SensorReading}.
+     * @return the encoder, or {@link #NONE} if the class has no annotated fields.
+     * @throws IllegalArgumentException if the class cannot be serialized.
+     */
+    private static SensorReadingEncoder create(Class<?> cls){
+        ArrayList<Class<?>> hierarchy = new ArrayList<>();
+        for (Class<?> c = cls; c != null && c != SensorReading.class; c = c.getSuperclass())
+            hierarchy.add(0, c);
+        boolean customJSON = definesJSON(hierarchy);
+
+        ArrayList<Field> fields = new ArrayList<>();
+        ArrayList<Integer> fieldTypes = new ArrayList<>();
+        for (Class<?> c : hierarchy) {
+            for (Field field : c.getDeclaredFields()) {
+                if (!field.isAnnotationPresent(SensorField.class) || Modifier.isStatic(field.getModifiers()))
+                    continue;
+                int type = typeOf(field.getType());
+                if (type < 0) {
+                    //fields the encoder cannot write are fine as long as the class writes its own JSON
+                    if (customJSON)
+                        continue;
+                    throw new IllegalArgumentException("Unsupported type of @SensorField " + field.getName() + ": " + field.getType().getName());
+                }
+                fields.add(field);
+                fieldTypes.add(type);
+            }
+        }
+        if (fields.isEmpty())
+            return NONE;
+
+        SensorFieldAccessor accessor = loadAccessor(cls);
+        if (accessor != null && !orderFields(accessor.getFieldNames(), fields, fieldTypes))
+            accessor = null;
+
+        int[] types = new int[fields.size()];
+        String[] keys = new String[fields.size()];
+        String[] names = new String[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            Field field = fields.get(i);
+            field.setAccessible(true);
+            types[i] = fieldTypes.get(i);
+            names[i] = nameOf(field);
+            StringBuilder sb = new StringBuilder();
+            appendString(sb, names[i]);
+            keys[i] = sb.append(':').toString();
+        }
+        return new SensorReadingEncoder(fields.toArray(new Field[fields.size()]), types, keys, names, customJSON, accessor);
+    }
+
+    /**
+     * Gets the name of a field, as used in the 'data' object.
+     */
+    private static String nameOf(Field field){
+        String key = field.getAnnotation(SensorField.class).value();
+        return key.isEmpty() ? field.getName() : key;
+    }
+
+    /**
+     * Instantiates the accessor generated for the class, if there is one.
+     * @return the accessor, or null if the class is read by reflection.
+     */
+    private static SensorFieldAccessor loadAccessor(Class<?> cls){
+        try {
+            Class<?> accessor = Class.forName(cls.getName() + ACCESSOR_SUFFIX, true, cls.getClassLoader());
+            return (SensorFieldAccessor) accessor.newInstance();
+        } catch (ClassNotFoundException e) {
+            //no accessor was generated, e.g. because the processor did not run
+            return null;
+        } catch (InstantiationException | IllegalAccessException | ClassCastException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Orders the reflected fields the way the generated accessor writes them. The order of
+     * {@link Class#getDeclaredFields()} is unspecified, whereas the accessor follows the
+     * declaration order in the source.
+     * @return false if the accessor does not match the fields, i.e. it is out of date.
+     */
+    private static boolean orderFields(String[] order, ArrayList<Field> fields, ArrayList<Integer> fieldTypes){
+        if (order == null || order.length != fields.size())
+            return false;
+        HashMap<String, Integer> indices = new HashMap<>();
+        for (int i = 0; i < fields.size(); i++)
+            indices.put(nameOf(fields.get(i)), i);
+        ArrayList<Field> orderedFields = new ArrayList<>();
+        ArrayList<Integer> orderedTypes = new ArrayList<>();
+        for (String name : order) {
+            //removing the entry also rejects names that occur twice
+            Integer position = indices.remove(name);
+            if (position == null)
+                return false;
+            orderedFields.add(fields.get(position));
+            orderedTypes.add(fieldTypes.get(position));
+        }
+        fields.clear();
+        fields.addAll(orderedFields);
+        fieldTypes.clear();
+        fieldTypes.addAll(orderedTypes);
+        return true;
+    }
+
+    /**
+     * Indicates whether the fields are read by a generated {@link SensorFieldAccessor}.
+     */
+    boolean hasAccessor(){
+        return accessor != null;
+    }
+
+    /**
+     * Indicates whether any of the classes overrides {@link SensorReading#toJSONObject()}
+     * or {@link SensorReading#toDataJSONObject()}.
+     */
+    private static boolean definesJSON(ArrayList<Class<?>> hierarchy){
+        for (Class<?> c : hierarchy) {
+            for (String name : new String[]{"toJSONObject", "toDataJSONObject"}) {
+                try {
+                    c.getDeclaredMethod(name);
+                    return true;
+                } catch (NoSuchMethodException e) {
+                    //not declared by this class
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the type constant of a field type.
+     * @return the type, or -1 if the type is not supported.
+     */
+    private static int typeOf(Class<?> type){
+        if (type == boolean.class) return TYPE_BOOLEAN;
+        if (type == byte.class) return TYPE_BYTE;
+        if (type == short.class) return TYPE_SHORT;
+        if (type == int.class) return TYPE_INT;
+        if (type == long.class) return TYPE_LONG;
+        if (type == float.class) return TYPE_FLOAT;
+        if (type == double.class) return TYPE_DOUBLE;
+        if (type == String.class) return TYPE_STRING;
+        if (type == byte[].class) return TYPE_BYTE_ARRAY;
+        if (type == short[].class) return TYPE_SHORT_ARRAY;
+        if (type == int[].class) return TYPE_INT_ARRAY;
+        if (type == long[].class) return TYPE_LONG_ARRAY;
+        if (type == float[].class) return TYPE_FLOAT_ARRAY;
+        if (type == double[].class) return TYPE_DOUBLE_ARRAY;
+        return -1;
+    }
+
+    /**
+     * Gets the number of channels, i.e. numeric scalar fields, of the readings.
+     * @return the number of channels.
+     */
+    public int getChannelCount(){
+        return channels.length;
+    }
+
+    /**
+     * Gets the keys of the channels, in the order they are read by {@link #readChannels(SensorReading, float[])}.
+     * @return the channel names.
+     */
+    public String[] getChannelNames(){
+        return channelNames.clone();
+    }
+
+    /**
+     * Reads the numeric scalar fields of the reading, e.g. the x, y and z values of an
+     * accelerometer reading, without allocating.
+     * @param reading a reading of the class this encoder was created for.
+     * @param out receives one value per channel.
+     */
+    public void readChannels(SensorReading reading, float[] out){
+        if (accessor != null) {
+            accessor.readChannels(reading, out);
+            return;
+        }
+        try {
+            for (int c = 0; c < channels.length; c++) {
+                Field field = fields[channels[c]];
+                switch (types[channels[c]]) {
+                    case TYPE_BYTE: out[c] = field.getByte(reading); break;
+                    case TYPE_SHORT: out[c] = field.getShort(reading); break;
+                    case TYPE_INT: out[c] = field.getInt(reading); break;
+                    case TYPE_LONG: out[c] = field.getLong(reading); break;
+                    case TYPE_FLOAT: out[c] = field.getFloat(reading); break;
+                    default: out[c] = (float) field.getDouble(reading);
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads the numeric scalar fields of the reading at full precision, without allocating.
+     * @param reading a reading of the class this encoder was created for.
+     * @param out receives one value per channel.
+     * @see #readChannels(SensorReading, float[])
+     */
+    public void readChannels(SensorReading reading, double[] out){
+        if (accessor != null) {
+            accessor.readChannels(reading, out);
+            return;
+        }
+        try {
+            for (int c = 0; c < channels.length; c++) {
+                Field field = fields[channels[c]];
+                switch (types[channels[c]]) {
+                    case TYPE_BYTE: out[c] = field.getByte(reading); break;
+                    case TYPE_SHORT: out[c] = field.getShort(reading); break;
+                    case TYPE_INT: out[c] = field.getInt(reading); break;
+                    case TYPE_LONG: out[c] = field.getLong(reading); break;
+                    case TYPE_FLOAT: out[c] = field.getFloat(reading); break;
+                    default: out[c] = field.getDouble(reading);
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Converts the reading into a transmission-ready string with the full metadata envelope.
+     * @param reading a reading of the class this encoder was created for.
+     * @return the JSON string.
+     */
+    public String toJSONString(SensorReading reading){
+        StringBuilder sb = builders.get();
+        sb.setLength(0);
+        appendEnvelope(reading, sb);
+        if (reading.label != -1)
+            sb.append(",\"label\":").append(reading.label);
+        sb.append(",\"data\":");
+        appendData(reading, sb);
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Converts a batch of readings encoded by a {@link edu.umass.cs.MHLClient.codec.TimeSeriesCodec}
+     * into a transmission-ready string. The metadata envelope is taken from the first reading of
+     * the batch; the labels are part of the encoded payload.
+     * @param first the first reading of the batch, of the class this encoder was created for.
+     * @param codec the name of the codec.
+     * @param count the number of readings in the batch.
+     * @param payload the encoded batch, in Base64.
+     * @return the JSON string.
+     */
+    public String toBatchJSONString(SensorReading first, String codec, int count, String payload){
+        StringBuilder sb = builders.get();
+        sb.setLength(0);
+        appendEnvelope(first, sb);
+        sb.append(",\"codec\":");
+        appendString(sb, codec);
+        sb.append(",\"fields\":[");
+        for (int c = 0; c < channelNames.length; c++) {
+            if (c > 0)
+                sb.append(',');
+            appendString(sb, channelNames[c]);
+        }
+        sb.append("],\"n\":").append(count);
+        sb.append(",\"payload\":");
+        appendString(sb, payload);
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Appends the opening brace and the metadata of the reading, i.e. the user, device and sensor type.
+     */
+    private static void appendEnvelope(SensorReading reading, StringBuilder sb){
+        sb.append('{');
+        if (reading.userID != null) {
+            sb.append("\"user_id\":");
+            appendString(sb, reading.userID);
+            sb.append(',');
+        }
+        if (reading.deviceType != null) {
+            sb.append("\"device_type\":");
+            appendString(sb, reading.deviceType);
+            sb.append(',');
+        }
+        sb.append("\"device\":{");
+        if (reading.deviceType != null) {
+            sb.append("\"device_type\":");
+            appendString(sb, reading.deviceType);
+            if (reading.deviceID != null)
+                sb.append(',');
+        }
+        if (reading.deviceID != null) {
+            sb.append("\"device_id\":");
+            appendString(sb, reading.deviceID);
+        }
+        sb.append("},\"sensor_type\":");
+        appendString(sb, reading.sensorType);
+    }
+
+    /**
+     * Converts the reading into a compact transmission-ready string, which refers to
+     * previously declared metadata by stream ID.
+     * @param reading a reading of the class this encoder was created for.
+     * @param streamID the ID assigned to the reading's stream.
+     * @return the compact JSON string.
+     * @see SensorReading#toCompactJSONString(int)
+     */
+    public String toCompactJSONString(SensorReading reading, int streamID){
+        StringBuilder sb = builders.get();
+        sb.setLength(0);
+        sb.append("{\"s\":").append(streamID);
+        if (reading.label != -1)
+            sb.append(",\"label\":").append(reading.label);
+        sb.append(",\"data\":");
+        appendData(reading, sb);
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Appends the 'data' object of the reading, i.e. the timestamp and the annotated fields.
+     * @param reading a reading of the class this encoder was created for.
+     * @param sb the string builder to append to.
+     */
+    public void appendData(SensorReading reading, StringBuilder sb){
+        sb.append("{\"t\":").append(reading.timestamp);
+        if (accessor != null) {
+            accessor.appendFields(reading, sb);
+            sb.append('}');
+            return;
+        }
+        try {
+            for (int i = 0; i < fields.length; i++) {
+                sb.append(',').append(keys[i]);
+                appendValue(sb, fields[i], types[i], reading);
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        sb.append('}');
+    }
+
+    /**
+     * Builds the 'data' object of the reading, i.e. the timestamp and the annotated fields,
+     * for callers that need a {@link JSONObject} rather than a transmission-ready string.
+     * @param reading a reading of the class this encoder was created for.
+     * @return the data object, equivalent to the one appended by {@link #appendData(SensorReading, StringBuilder)}.
+     */
+    public JSONObject toDataJSONObject(SensorReading reading){
+        JSONObject data = new JSONObject();
+        try {
+            data.put("t", reading.timestamp);
+            for (int i = 0; i < fields.length; i++)
+                data.put(names[i], toJSONValue(fields[i], types[i], reading));
+        } catch (IllegalAccessException | JSONException e) {
+            throw new IllegalStateException(e);
+        }
+        return data;
+    }
+
+    private static Object toJSONValue(Field field, int type, Object obj) throws IllegalAccessException {
+        switch (type) {
+            case TYPE_BOOLEAN: return field.getBoolean(obj);
+            case TYPE_BYTE: return (int) field.getByte(obj);
+            case TYPE_SHORT: return (int) field.getShort(obj);
+            case TYPE_INT: return field.getInt(obj);
+            case TYPE_LONG: return field.getLong(obj);
+            case TYPE_FLOAT: return toJSONNumber(field.getFloat(obj));
+            case TYPE_DOUBLE: return toJSONNumber(field.getDouble(obj));
+        }
+        Object value = field.get(obj);
+        if (value == null)
+            return JSONObject.NULL;
+        if (type == TYPE_STRING)
+            return value;
+        JSONArray array = new JSONArray();
+        switch (type) {
+            case TYPE_BYTE_ARRAY: for (byte v : (byte[]) value) array.put((int) v); break;
+            case TYPE_SHORT_ARRAY: for (short v : (short[]) value) array.put((int) v); break;
+            case TYPE_INT_ARRAY: for (int v : (int[]) value) array.put(v); break;
+            case TYPE_LONG_ARRAY: for (long v : (long[]) value) array.put(v); break;
+            case TYPE_FLOAT_ARRAY: for (float v : (float[]) value) array.put(toJSONNumber(v)); break;
+            case TYPE_DOUBLE_ARRAY: for (double v : (double[]) value) array.put(toJSONNumber(v)); break;
+        }
+        return array;
+    }
+
+    /**
+     * Boxes a floating point number, using null for values that JSON cannot represent.
+     */
+    private static Object toJSONNumber(double value){
+        if (Double.isNaN(value) || Double.isInfinite(value))
+            return JSONObject.NULL;
+        return value;
+    }
+
+    private static void appendValue(StringBuilder sb, Field field, int type, Object obj) throws IllegalAccessException {
+        switch (type) {
+            case TYPE_BOOLEAN: sb.append(field.getBoolean(obj)); break;
+            case TYPE_BYTE: sb.append(field.getByte(obj)); break;
+            case TYPE_SHORT: sb.append(field.getShort(obj)); break;
+            case TYPE_INT: sb.append(field.getInt(obj)); break;
+            case TYPE_LONG: sb.append(field.getLong(obj)); break;
+            case TYPE_FLOAT: appendNumber(sb, field.getFloat(obj)); break;
+            case TYPE_DOUBLE: appendNumber(sb, field.getDouble(obj)); break;
+            case TYPE_STRING: appendString(sb, (String) field.get(obj)); break;
+            case TYPE_BYTE_ARRAY: appendArray(sb, (byte[]) field.get(obj)); break;
+            case TYPE_SHORT_ARRAY: appendArray(sb, (short[]) field.get(obj)); break;
+            case TYPE_INT_ARRAY: appendArray(sb, (int[]) field.get(obj)); break;
+            case TYPE_LONG_ARRAY: appendArray(sb, (long[]) field.get(obj)); break;
+            case TYPE_FLOAT_ARRAY: appendArray(sb, (float[]) field.get(obj)); break;
+            case TYPE_DOUBLE_ARRAY: appendArray(sb, (double[]) field.get(obj)); break;
+        }
+    }
+
+    /**
+     * Appends a floating point number the way {@link JSONObject} formats it, i.e. integral
+     * values without a fraction, negative zero as -0, and null for values that JSON cannot
+     * represent. This keeps the output identical to readings serialized through {@link JSONObject}.
+     * @param sb the string builder to append to.
+     * @param value the number.
+     */
+    public static void appendNumber(StringBuilder sb, double value){
+        if (Double.isNaN(value) || Double.isInfinite(value))
+            sb.append("null");
+        else if (value == 0 && Double.doubleToRawLongBits(value) != 0)
+            sb.append("-0");
+        else if (value == (long) value)
+            sb.append((long) value);
+        else
+            sb.append(value);
+    }
+
+    /**
+     * Appends a quoted JSON string, escaped the way {@link JSONObject} escapes it.
+     * @param sb the string builder to append to.
+     * @param value the string, or null.
+     */
+    public static void appendString(StringBuilder sb, String value){
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/': sb.append('\\').append(c); break;
+                case '\t': sb.append("\\t"); break;
+                case '\b': sb.append("\\b"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\f': sb.append("\\f"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append("\\u00");
+                        sb.append(Character.forDigit(c >> 4, 16));
+                        sb.append(Character.forDigit(c & 0xF, 16));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Appends a JSON array of numbers, or null.
+     * @param sb the string builder to append to.
+     * @param values the numbers, or null.
+     */
+    public static void appendArray(StringBuilder sb, byte[] values){
+        if (values == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('[');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append(values[i]);
+        }
+        sb.append(']');
+    }
+
+    /**
+     * Appends a JSON array of numbers, or null.
+     * @param sb the string builder to append to.
+     * @param values the numbers, or null.
+     */
+    public static void appendArray(StringBuilder sb, short[] values){
+        if (values == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('[');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append(values[i]);
+        }
+        sb.append(']');
+    }
+
+    /**
+     * Appends a JSON array of numbers, or null.
+     * @param sb the string builder to append to.
+     * @param values the numbers, or null.
+     */
+    public static void appendArray(StringBuilder sb, int[] values){
+        if (values == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('[');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append(values[i]);
+        }
+        sb.append(']');
+    }
+
+    /**
+     * Appends a JSON array of numbers, or null.
+     * @param sb the string builder to append to.
+     * @param values the numbers, or null.
+     */
+    public static void appendArray(StringBuilder sb, long[] values){
+        if (values == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('[');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append(values[i]);
+        }
+        sb.append(']');
+    }
+
+    /**
+     * Appends a JSON array of numbers, or null.
+     * @param sb the string builder to append to.
+     * @param values the numbers, or null.
+     */
+    public static void appendArray(StringBuilder sb, float[] values){
+        if (values == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('[');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0)
+                sb.append(',');
+            appendNumber(sb, values[i]);
+        }
+        sb.append(']');
+    }
+
+    /**
+     * Appends a JSON array of numbers, or null.
+     * @param sb the string builder to append to.
+     * @param values the numbers, or null.
+     */
+    public static void appendArray(StringBuilder sb, double[] values){
+        if (values == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('[');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0)
+                sb.append(',');
+            appendNumber(sb, values[i]);
+        }
+        sb.append(']');
+    }
+}
@@ -0,0 +1,71 @@
+package edu.umass.cs.MHLClient.sensors;
+
+/**
+ * Summarizes the readings of a stream over an interval by the mean, minimum and maximum
+ * of each channel. Summaries are sent instead of the raw readings outside of capture
+ * windows, see {@link edu.umass.cs.MHLClient.processing.EventCapture}.
+ *
+ * @author Sean Noran
+ *
+ * @see SensorReading
+ */
+public class SummaryReading extends SensorReading {
+
+    /** The sensor type identifying summaries. **/
+    public static final String SENSOR_TYPE = "SENSOR_SUMMARY";
+
+    /** The sensor type of the summarized readings. **/
+    @SensorField("sensor")
+    final String summarizedType;
+
+    /** The keys of the channels of the summarized readings, separated by commas. **/
+    @SensorField("channels")
+    final String channelNames;
+
+    /** The duration of the interval, in the unit of the timestamps. **/
+    @SensorField("duration")
+    final long duration;
+
+    /** The number of summarized readings. **/
+    @SensorField("n")
+    final int count;
+
+    /** The mean of each channel. **/
+    @SensorField("mean")
+    final float[] mean;
+
+    /** The minimum of each channel. **/
+    @SensorField("min")
+    final float[] min;
+
+    /** The maximum of each channel. **/
+    @SensorField("max")
+    final float[] max;
+
+    /**
+     * Instantiates a summary reading.
+     * @param userID a 10-byte hex string identifying the current user.
+     * @param deviceType describes the device.
+     * @param deviceID unique device identifier.
+     * @param t the start of the interval, in Unix time by convention.
+     * @param summarizedType the sensor type of the summarized readings.
+     * @param channelNames the keys of the channels, separated by commas.
+     * @param duration the duration of the interval.
+     * @param count the number of summarized readings.
+     * @param mean the mean of each channel.
+     * @param min the minimum of each channel.
+     * @param max the maximum of each channel.
+     */
+    public SummaryReading(String userID, String deviceType, String deviceID, long t, String summarizedType, String channelNames,
+                          long duration, int count, float[] mean, float[] min, float[] max){
+        super(userID, deviceType, deviceID, SENSOR_TYPE, t);
+
+        this.summarizedType = summarizedType;
+        this.channelNames = channelNames;
+        this.duration = duration;
+        this.count = count;
+        this.mean = mean;
+        this.min = min;
+        this.max = max;
+    }
+}
@@ -0,0 +1,84 @@
+package edu.umass.cs.MHLClient.structures;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A thread-safe pool of heap {@link ByteBuffer byte buffers}, which avoids allocating
+ * a new buffer for every encoded message. Buffers that had to grow beyond the initial
+ * size are pooled as well, up to a maximum capacity, so the pool adapts to the size of
+ * the messages.
+ *
+ * @author Sean Noran
+ */
+public class ByteBufferPool {
+
+    /** The pooled buffers. **/
+    private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+
+    /** The number of pooled buffers. **/
+    private final AtomicInteger size = new AtomicInteger();
+
+    /** The capacity of newly allocated buffers. **/
+    private final int bufferSize;
+
+    /** The largest number of buffers kept in the pool. **/
+    private final int maxBuffers;
+
+    /** The largest capacity of a buffer kept in the pool. **/
+    private final int maxCapacity;
+
+    /**
+     * Instantiates a byte buffer pool.
+     * @param bufferSize the capacity of newly allocated buffers.
+     * @param maxBuffers the largest number of buffers kept in the pool.
+     * @param maxCapacity the largest capacity of a buffer kept in the pool; larger buffers are discarded on release.
+     */
+    public ByteBufferPool(int bufferSize, int maxBuffers, int maxCapacity){
+        this.bufferSize = bufferSize;
+        this.maxBuffers = maxBuffers;
+        this.maxCapacity = maxCapacity;
+    }
+
+    /**
+     * Takes a buffer from the pool, or allocates one if the pool is empty.
+     * @return an empty buffer with a capacity of at least the initial buffer size.
+     */
+    public ByteBuffer acquire(){
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null)
+            return ByteBuffer.allocate(bufferSize);
+        size.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. The buffer must not be used afterwards.
+     * @param buffer a heap buffer, not necessarily acquired from this pool.
+     */
+    public void release(ByteBuffer buffer){
+        if (buffer.capacity() > maxCapacity)
+            return;
+        if (size.incrementAndGet() > maxBuffers) {
+            size.decrementAndGet();
+            return;
+        }
+        buffers.offer(buffer);
+    }
+
+    /**
+     * Copies the contents of a buffer into a new buffer of twice its capacity, returning
+     * the old buffer to the pool.
+     * @param buffer the buffer to grow, in write mode.
+     * @return the larger buffer, in write mode, positioned after the copied contents.
+     */
+    public ByteBuffer grow(ByteBuffer buffer){
+        ByteBuffer larger = ByteBuffer.allocate(2 * buffer.capacity());
+        buffer.flip();
+        larger.put(buffer);
+        release(buffer);
+        return larger;
+    }
+}
@@ -0,0 +1,43 @@
+package edu.umass.cs.MHLClient.structures;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An output stream that counts the number of bytes written to the underlying stream.
+ * It is intended to be written by a single thread and read by any number of threads.
+ *
+ * @author Sean Noran
+ *
+ * @see FilterOutputStream
+ */
+public class CountingOutputStream extends FilterOutputStream {
+
+    /** The number of bytes written so far. **/
+    private volatile long count;
+
+    public CountingOutputStream(OutputStream out){
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        count += len;
+    }
+
+    /**
+     * Gets the number of bytes written to the underlying stream.
+     * @return the byte count.
+     */
+    public long getCount(){
+        return count;
+    }
+}
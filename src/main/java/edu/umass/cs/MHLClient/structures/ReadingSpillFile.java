@@ -0,0 +1,109 @@
+package edu.umass.cs.MHLClient.structures;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * A file to which serialized sensor readings are spilled when the in-memory
+ * {@link BlockingSensorReadingQueue} is full. Readings are appended as lines by
+ * any number of producers; the consumer {@link #take() takes} the file as a whole,
+ * after which new readings are appended to a fresh file. A taken file that has not
+ * been {@link #release(File) released}, e.g. because the connection was lost while
+ * sending it, is returned again by the next call to {@link #take()}, so spilled
+ * readings are delivered at least once.
+ *
+ * @author Sean Noran
+ */
+public class ReadingSpillFile {
+
+    /** The file readings are appended to. **/
+    private final File file;
+
+    /** The file handed to the consumer. **/
+    private final File takenFile;
+
+    /** The maximum size of the file, in bytes. **/
+    private final long maxSize;
+
+    /** Appends readings to the file, null if the file is not open. **/
+    private BufferedWriter writer;
+
+    /** The number of readings in the file. **/
+    private int count;
+
+    /** The number of characters written to the file. **/
+    private long size;
+
+    /**
+     * Instantiates a spill file.
+     * @param directory the directory in which the file is created, e.g. the cache directory.
+     * @param name the name of the file.
+     * @param maxSize the maximum size of the file, in bytes, after which readings are rejected.
+     */
+    public ReadingSpillFile(File directory, String name, long maxSize){
+        this.file = new File(directory, name);
+        this.takenFile = new File(directory, name + ".sending");
+        this.maxSize = maxSize;
+        this.file.delete();
+    }
+
+    /**
+     * Appends a serialized reading to the file.
+     * @param line the serialized reading, excluding the line terminator.
+     * @return true if the reading was appended, false if the file is full or could not be written.
+     */
+    public synchronized boolean append(String line){
+        if (size + line.length() + 1 > maxSize)
+            return false;
+        try {
+            if (writer == null)
+                writer = new BufferedWriter(new FileWriter(file, true));
+            writer.write(line);
+            writer.write('\n');
+            count++;
+            size += line.length() + 1;
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Gets the number of readings appended since the file was last taken.
+     * @return the number of spilled readings.
+     */
+    public synchronized int size(){
+        return count;
+    }
+
+    /**
+     * Takes the spilled readings for sending. Subsequent readings are appended to a new file.
+     * @return the file containing the spilled readings, one per line, or null if there are none.
+     */
+    public synchronized File take(){
+        if (takenFile.exists())
+            return takenFile;
+        if (writer == null)
+            return null;
+        try {
+            writer.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        writer = null;
+        count = 0;
+        size = 0;
+        return file.renameTo(takenFile) ? takenFile : null;
+    }
+
+    /**
+     * Releases a file returned by {@link #take()} once all of its readings have been sent.
+     * @param taken the taken file.
+     */
+    public synchronized void release(File taken){
+        taken.delete();
+    }
+}
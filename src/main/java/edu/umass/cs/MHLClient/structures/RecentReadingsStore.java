@@ -0,0 +1,205 @@
+package edu.umass.cs.MHLClient.structures;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.umass.cs.MHLClient.sensors.SensorReading;
+import edu.umass.cs.MHLClient.sensors.SensorReadingEncoder;
+
+/**
+ * Keeps the most recent readings of each stream in memory, so that the application
+ * UI and on-device models can query them without buffering their own copies. Each stream,
+ * identified by its {@link SensorReading#getStreamKey() stream key}, i.e. the user, device
+ * and sensor type, is stored in its own {@link TimeSeriesRingBuffer}, whose channels are the
+ * numeric {@link edu.umass.cs.MHLClient.sensors.SensorField annotated fields} of the reading,
+ * e.g. x, y and z for accelerometer readings. Readings without numeric fields are not stored.
+ * <br><br>
+ * Streams are queried by their stream key, see {@link #getStreamKeys(String)}. For the
+ * common case of a single device per sensor type, they may also be queried by sensor type,
+ * which selects the stream of that type that received the most recent reading.
+ * <br><br>
+ * Queries return {@link TimeSeriesView views} that read the underlying arrays directly.
+ * The store supports a single writer per stream and any number of readers without
+ * locking. Readings are expected in chronological order per stream; out-of-order
+ * readings are dropped.
+ *
+ * @author Sean Noran
+ *
+ * @see TimeSeriesView
+ * @see edu.umass.cs.MHLClient.client.MobileIOClient#setRecentReadingsStore(RecentReadingsStore)
+ */
+public class RecentReadingsStore {
+
+    /** The number of samples retained per stream. **/
+    private final int capacity;
+
+    /** The buffer of each stream, keyed by stream key. **/
+    private final ConcurrentHashMap<String, Series> series = new ConcurrentHashMap<>();
+
+    /**
+     * Instantiates a store.
+     * @param capacity the minimum number of samples retained per stream. For a window of
+     *                 N seconds, this should be N times the sampling rate.
+     */
+    public RecentReadingsStore(int capacity){
+        this.capacity = capacity;
+    }
+
+    /**
+     * Adds a reading to the buffer of its stream.
+     * @param reading the reading to store.
+     * @return true if the reading was stored, false if it has no numeric fields or is out of order.
+     */
+    public boolean add(SensorReading reading){
+        String key = reading.getStreamKey();
+        Series s = series.get(key);
+        if (s == null) {
+            SensorReadingEncoder encoder = SensorReadingEncoder.forClass(reading.getClass());
+            if (encoder == null || encoder.getChannelCount() == 0)
+                return false;
+            s = new Series(reading.getSensorType(), encoder, capacity);
+            Series existing = series.putIfAbsent(key, s);
+            if (existing != null)
+                s = existing;
+        }
+        return s.add(reading);
+    }
+
+    /**
+     * Gets the keys of the stored streams of a sensor type.
+     * @param sensorType the sensor type, e.g. "SENSOR_ACCEL".
+     * @return the stream keys, see {@link SensorReading#getStreamKey()}, empty if none are stored.
+     */
+    public List<String> getStreamKeys(String sensorType){
+        List<String> keys = new ArrayList<>();
+        for (Map.Entry<String, Series> entry : series.entrySet()) {
+            if (entry.getValue().sensorType.equals(sensorType))
+                keys.add(entry.getKey());
+        }
+        return keys;
+    }
+
+    /**
+     * Gets the names of the channels stored for a stream, e.g. {"x", "y", "z"}.
+     * @param stream the stream key, or a sensor type, e.g. "SENSOR_ACCEL".
+     * @return the channel names, or null if no reading of the stream has been stored.
+     */
+    public String[] getChannelNames(String stream){
+        Series s = find(stream);
+        return s == null ? null : s.encoder.getChannelNames();
+    }
+
+    /**
+     * Gets the readings of a stream within a time range.
+     * @param stream the stream key, or a sensor type, e.g. "SENSOR_ACCEL".
+     * @param from the start of the range, inclusive.
+     * @param to the end of the range, inclusive.
+     * @return a view of the readings, which is empty if none are stored in the range.
+     */
+    public TimeSeriesView query(String stream, long from, long to){
+        return query(stream, from, to, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Gets the readings of a stream within a time range, downsampled to at most the
+     * given number of samples by taking every n-th reading.
+     * @param stream the stream key, or a sensor type, e.g. "SENSOR_ACCEL".
+     * @param from the start of the range, inclusive.
+     * @param to the end of the range, inclusive.
+     * @param maxSamples the maximum number of samples in the view.
+     * @return a view of the readings, which is empty if none are stored in the range.
+     */
+    public TimeSeriesView query(String stream, long from, long to, int maxSamples){
+        return query(find(stream), from, to, maxSamples);
+    }
+
+    private TimeSeriesView query(Series s, long from, long to, int maxSamples){
+        if (s == null)
+            return new TimeSeriesView(null, 0, 0, 1);
+        TimeSeriesRingBuffer buffer = s.buffer;
+
+        long last = buffer.floorIndex(to);
+        if (last < 0)
+            return new TimeSeriesView(buffer, 0, 0, 1);
+        long first = buffer.floorIndex(from - 1) + 1;
+        first = Math.max(first, buffer.getOldestIndex());
+        if (first > last)
+            return new TimeSeriesView(buffer, 0, 0, 1);
+
+        long count = last - first + 1;
+        int stride = (int) Math.max(1, (count + maxSamples - 1) / maxSamples);
+        //align the samples to the end of the range, so the most recent reading is included
+        int size = (int) ((count - 1) / stride + 1);
+        long start = last - (long) (size - 1) * stride;
+        return new TimeSeriesView(buffer, start, size, stride);
+    }
+
+    /**
+     * Gets the readings of a stream received within the given duration before the most
+     * recent reading of that stream.
+     * @param stream the stream key, or a sensor type, e.g. "SENSOR_ACCEL".
+     * @param duration the length of the window, in milliseconds.
+     * @return a view of the readings.
+     */
+    public TimeSeriesView latest(String stream, long duration){
+        Series s = find(stream);
+        if (s == null || s.buffer.getCount() == 0)
+            return new TimeSeriesView(null, 0, 0, 1);
+        long newest = s.buffer.getTimestamp(s.buffer.getCount() - 1);
+        return query(s, newest - duration, newest, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Finds a stream by its key or, if there is no such stream, the stream of the given
+     * sensor type that received the most recent reading.
+     * @param stream the stream key or sensor type.
+     * @return the stream, or null if none matches.
+     */
+    private Series find(String stream){
+        Series s = series.get(stream);
+        if (s != null)
+            return s;
+        long newest = Long.MIN_VALUE;
+        for (Series candidate : series.values()) {
+            long count = candidate.buffer.getCount();
+            if (!candidate.sensorType.equals(stream) || count == 0)
+                continue;
+            long t = candidate.buffer.getTimestamp(count - 1);
+            if (s == null || t > newest) {
+                s = candidate;
+                newest = t;
+            }
+        }
+        return s;
+    }
+
+    /**
+     * The buffer of a single stream, together with the encoder used to extract its channels.
+     */
+    private static class Series {
+        final String sensorType;
+        final SensorReadingEncoder encoder;
+        final TimeSeriesRingBuffer buffer;
+
+        /** Holds the channels of the reading being added. **/
+        final float[] sample;
+
+        Series(String sensorType, SensorReadingEncoder encoder, int capacity){
+            this.sensorType = sensorType;
+            this.encoder = encoder;
+            this.buffer = new TimeSeriesRingBuffer(capacity, encoder.getChannelCount());
+            this.sample = new float[encoder.getChannelCount()];
+        }
+
+        boolean add(SensorReading reading){
+            long count = buffer.getCount();
+            if (count > 0 && reading.getTimestamp() < buffer.getTimestamp(count - 1))
+                return false;
+            encoder.readChannels(reading, sample);
+            buffer.add(reading.getTimestamp(), sample);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package edu.umass.cs.MHLClient.structures;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size ring buffer of multi-channel time series samples, stored in primitive
+ * arrays so that adding a sample does not allocate. Samples are addressed by their
+ * absolute index, i.e. the number of samples added before them, which remains valid
+ * until the sample is overwritten. The buffer supports a single writer and any number
+ * of readers without locking, much like a sequence lock: the writer publishes each sample
+ * by incrementing the volatile {@link #getCount() count}, and readers check
+ * {@link #isAvailable(long)} after reading a sample to detect that it was overwritten in
+ * the meantime. Since the writer overwrites the slot of the oldest sample before it
+ * publishes the new count, that slot is never reported as available; the buffer therefore
+ * has one more slot than it retains.
+ * <br><br>
+ * The slots are read and written with volatile semantics. Plain accesses could be
+ * reordered around the accesses of the count, e.g. a reader's loads of a slot after its
+ * validating load of the count, or the writer's stores into the slot of the next sample
+ * before its store of the current count, which would let a torn sample pass validation.
+ *
+ * @author Sean Noran
+ */
+public class TimeSeriesRingBuffer {
+
+    /** The timestamps of the samples. **/
+    private final AtomicLongArray timestamps;
+
+    /** The raw bits of the sample values, the values of each sample being adjacent. **/
+    private final AtomicIntegerArray values;
+
+    /** The number of values per sample. **/
+    private final int channels;
+
+    /** The index mask, the capacity being a power of two. **/
+    private final int mask;
+
+    /** The total number of samples added. **/
+    private volatile long count;
+
+    /**
+     * Instantiates a ring buffer.
+     * @param capacity the minimum number of samples retained; the number of slots is the
+     *                 smallest power of two that is larger.
+     * @param channels the number of values per sample.
+     */
+    public TimeSeriesRingBuffer(int capacity, int channels){
+        int size = Integer.highestOneBit(Math.max(1, capacity)) << 1;
+        this.timestamps = new AtomicLongArray(size);
+        this.values = new AtomicIntegerArray(size * channels);
+        this.channels = channels;
+        this.mask = size - 1;
+    }
+
+    /**
+     * Adds a sample, overwriting the oldest sample if the buffer is full.
+     * @param timestamp the timestamp of the sample.
+     * @param sample the values of the sample, one per channel.
+     */
+    public void add(long timestamp, float[] sample){
+        long n = count;
+        int slot = (int) n & mask;
+        timestamps.set(slot, timestamp);
+        int offset = slot * channels;
+        for (int c = 0; c < channels; c++)
+            values.set(offset + c, Float.floatToRawIntBits(sample[c]));
+        count = n + 1;
+    }
+
+    /**
+     * Adds a three-channel sample, overwriting the oldest sample if the buffer is full.
+     * @param timestamp the timestamp of the sample.
+     * @param x the value of the first channel.
+     * @param y the value of the second channel.
+     * @param z the value of the third channel.
+     */
+    public void add(long timestamp, float x, float y, float z){
+        long n = count;
+        int slot = (int) n & mask;
+        timestamps.set(slot, timestamp);
+        int offset = slot * channels;
+        values.set(offset, Float.floatToRawIntBits(x));
+        values.set(offset + 1, Float.floatToRawIntBits(y));
+        values.set(offset + 2, Float.floatToRawIntBits(z));
+        count = n + 1;
+    }
+
+    /**
+     * Removes all samples. Must only be called by the writer.
+     */
+    public void clear(){
+        count = 0;
+    }
+
+    /**
+     * Gets the total number of samples added, which is the index of the next sample.
+     * @return the sample count.
+     */
+    public long getCount(){
+        return count;
+    }
+
+    /**
+     * Gets the number of slots of the buffer, a power of two. One slot is reserved for the
+     * sample being written, so the buffer retains one sample less.
+     * @return the number of slots.
+     */
+    public int getCapacity(){
+        return mask + 1;
+    }
+
+    /**
+     * Gets the number of values per sample.
+     * @return the number of channels.
+     */
+    public int getChannels(){
+        return channels;
+    }
+
+    /**
+     * Gets the index of the oldest sample still in the buffer.
+     * @return the oldest index, equal to {@link #getCount()} if the buffer is empty.
+     */
+    public long getOldestIndex(){
+        return Math.max(0, count + 1 - (mask + 1));
+    }
+
+    /**
+     * Indicates whether the sample at the given index is still in the buffer.
+     * @param index the absolute index of the sample.
+     * @return true if the sample has been added and is not being or has not been overwritten.
+     */
+    public boolean isAvailable(long index){
+        long n = count;
+        //the slot of index n - length is overwritten by the next sample before count is incremented
+        return index < n && index > n - (mask + 1);
+    }
+
+    /**
+     * Gets the timestamp of a sample. The result is only meaningful if the sample is still
+     * {@link #isAvailable(long) available} after the call.
+     * @param index the absolute index of the sample.
+     * @return the timestamp.
+     */
+    public long getTimestamp(long index){
+        return timestamps.get((int) index & mask);
+    }
+
+    /**
+     * Gets a value of a sample. The result is only meaningful if the sample is still
+     * {@link #isAvailable(long) available} after the call.
+     * @param index the absolute index of the sample.
+     * @param channel the channel.
+     * @return the value.
+     */
+    public float getValue(long index, int channel){
+        return Float.intBitsToFloat(values.get(((int) index & mask) * channels + channel));
+    }
+
+    /**
+     * Finds the most recent sample at or before the given time, assuming that samples are
+     * added in chronological order. The search is repeated if the writer overwrote any of
+     * the searched samples in the meantime.
+     * @param timestamp the time to search for.
+     * @return the absolute index of the sample, or -1 if all samples in the buffer are newer.
+     */
+    public long floorIndex(long timestamp){
+        while (true) {
+            long n = count;
+            long oldest = Math.max(0, n + 1 - (mask + 1));
+            long low = oldest;
+            long high = n - 1;
+            long result = -1;
+            while (low <= high) {
+                long mid = (low + high) >>> 1;
+                if (getTimestamp(mid) <= timestamp) {
+                    result = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            //the timestamps read are consistent if the oldest searched sample is still in the buffer
+            if (oldest >= n || isAvailable(oldest))
+                return result;
+        }
+    }
+}
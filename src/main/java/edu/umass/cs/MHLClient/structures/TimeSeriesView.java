@@ -0,0 +1,85 @@
+package edu.umass.cs.MHLClient.structures;
+
+/**
+ * A read-only view of a range of samples in a {@link TimeSeriesRingBuffer}, optionally
+ * downsampled by taking every n-th sample. The view does not copy the samples; it reads
+ * them directly from the buffer. Because the writer may overwrite the oldest samples at
+ * any time, callers should check {@link #isValid()} after reading the values they need
+ * and discard them, or query again, if the view is no longer valid.
+ *
+ * @author Sean Noran
+ *
+ * @see RecentReadingsStore
+ */
+public class TimeSeriesView {
+
+    /** The underlying buffer. **/
+    private final TimeSeriesRingBuffer buffer;
+
+    /** The absolute index of the first sample in the view. **/
+    private final long start;
+
+    /** The number of samples in the view. **/
+    private final int size;
+
+    /** The distance between consecutive samples of the view, in samples of the buffer. **/
+    private final int stride;
+
+    /**
+     * Instantiates a view.
+     * @param buffer the underlying buffer.
+     * @param start the absolute index of the first sample.
+     * @param size the number of samples in the view.
+     * @param stride the distance between consecutive samples, 1 for no downsampling.
+     */
+    public TimeSeriesView(TimeSeriesRingBuffer buffer, long start, int size, int stride){
+        this.buffer = buffer;
+        this.start = start;
+        this.size = size;
+        this.stride = stride;
+    }
+
+    /**
+     * Gets the number of samples in the view.
+     * @return the size.
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Gets the number of values per sample.
+     * @return the number of channels.
+     */
+    public int getChannels(){
+        return buffer == null ? 0 : buffer.getChannels();
+    }
+
+    /**
+     * Gets the timestamp of a sample.
+     * @param i the position of the sample in the view, from 0 (oldest) to size - 1.
+     * @return the timestamp.
+     */
+    public long getTimestamp(int i){
+        return buffer.getTimestamp(start + (long) i * stride);
+    }
+
+    /**
+     * Gets a value of a sample.
+     * @param i the position of the sample in the view, from 0 (oldest) to size - 1.
+     * @param channel the channel.
+     * @return the value.
+     */
+    public float getValue(int i, int channel){
+        return buffer.getValue(start + (long) i * stride, channel);
+    }
+
+    /**
+     * Indicates whether all samples of the view are still in the buffer, i.e. whether the
+     * values read so far are consistent.
+     * @return true if no sample of the view has been overwritten.
+     */
+    public boolean isValid(){
+        return size == 0 || buffer.isAvailable(start);
+    }
+}
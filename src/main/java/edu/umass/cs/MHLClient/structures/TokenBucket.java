@@ -0,0 +1,75 @@
+package edu.umass.cs.MHLClient.structures;
+
+/**
+ * A thread-safe token bucket that limits the rate at which bytes are sent. Tokens accrue
+ * at the configured rate up to the capacity of the bucket, which bounds the size of a
+ * burst after an idle period. Acquiring more tokens than are available puts the bucket
+ * into debt, and the caller sleeps until the debt has been paid off; this way writes
+ * larger than the capacity are still limited to the configured rate on average.
+ *
+ * @author Sean Noran
+ */
+public class TokenBucket {
+
+    /** The rate at which tokens accrue, in tokens per second, or 0 if unlimited. **/
+    private long rate;
+
+    /** The largest number of tokens that accrue while the bucket is not used. **/
+    private final long capacity;
+
+    /** The number of available tokens, negative if the bucket is in debt. **/
+    private double tokens;
+
+    /** The time of the last refill, see {@link System#nanoTime()}. **/
+    private long lastRefill = System.nanoTime();
+
+    /**
+     * Instantiates a token bucket, which is initially full.
+     * @param rate the rate at which tokens accrue, in tokens per second, or 0 for no limit.
+     * @param capacity the largest number of tokens that accrue while the bucket is not used.
+     */
+    public TokenBucket(long rate, long capacity){
+        this.rate = rate;
+        this.capacity = capacity;
+        this.tokens = capacity;
+    }
+
+    /**
+     * Sets the rate at which tokens accrue.
+     * @param rate the rate in tokens per second, or 0 for no limit.
+     */
+    public synchronized void setRate(long rate){
+        refill();
+        this.rate = rate;
+    }
+
+    public synchronized long getRate(){
+        return rate;
+    }
+
+    /**
+     * Takes tokens from the bucket, blocking until the rate permits it.
+     * @param n the number of tokens, e.g. the number of bytes about to be sent.
+     * @throws InterruptedException if the calling thread is interrupted while waiting.
+     */
+    public void acquire(long n) throws InterruptedException {
+        long wait;
+        synchronized (this) {
+            if (rate <= 0)
+                return;
+            refill();
+            tokens -= n;
+            wait = tokens >= 0 ? 0 : (long) Math.ceil(-tokens * 1000 / rate);
+        }
+        //sleep outside of the lock, so that other threads can take their share in the meantime
+        if (wait > 0)
+            Thread.sleep(wait);
+    }
+
+    private void refill(){
+        long now = System.nanoTime();
+        if (rate > 0)
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * rate / 1e9);
+        lastRefill = now;
+    }
+}
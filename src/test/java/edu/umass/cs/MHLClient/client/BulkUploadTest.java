@@ -0,0 +1,157 @@
+package edu.umass.cs.MHLClient.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import cs.umass.edu.MHLClient.BuildConfig;
+import edu.umass.cs.MHLClient.emulation.RealtimeSystemClock;
+import edu.umass.cs.MHLClient.emulation.StandInUploadServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Uploads a file of several chunks to a {@link StandInUploadServer} and checks that the
+ * server receives it intact, also when the connection is dropped, a chunk is reported as
+ * corrupted or the acknowledgements are slow.
+ *
+ * @author Sean Noran
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21, shadows = RealtimeSystemClock.class)
+public class BulkUploadTest {
+
+    /** The number of chunks of the uploaded file, the last of which is partial. **/
+    private static final int CHUNKS = 7;
+
+    private StandInUploadServer server;
+
+    private MobileIOClient client;
+
+    private File file;
+
+    private byte[] contents;
+
+    /** The failures reported to the listener of the current upload. **/
+    private final CopyOnWriteArrayList<Exception> failures = new CopyOnWriteArrayList<>();
+
+    private CountDownLatch completed;
+
+    private final UploadListener listener = new UploadListener() {
+        @Override
+        public void onUploadProgress(File file, long bytesUploaded, long totalBytes, long throughput) {
+        }
+
+        @Override
+        public void onUploadComplete(File file) {
+            completed.countDown();
+        }
+
+        @Override
+        public void onUploadFailed(File file, Exception e, boolean retrying) {
+            assertTrue(retrying);
+            failures.add(e);
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        failures.clear();
+        completed = new CountDownLatch(1);
+        server = new StandInUploadServer(TestClients.createServerContext());
+        int port = server.start();
+        client = TestClients.create("0");
+        client.setServer("127.0.0.1", port);
+        client.setUploadRate(0);
+
+        //compressible like a sensor recording, but not trivially
+        contents = new byte[(CHUNKS - 1) * BulkUpload.CHUNK_SIZE + 12345];
+        Random random = new Random(1);
+        for (int i = 0; i < contents.length; i++)
+            contents[i] = (byte) ('a' + random.nextInt(16));
+        file = File.createTempFile("session", ".csv");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents);
+        } finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+        file.delete();
+    }
+
+    /** Uploads the file and waits until the upload is complete. **/
+    private BulkUpload upload() throws InterruptedException {
+        BulkUpload upload = client.uploadFile(file, listener);
+        assertTrue("upload did not complete", completed.await(20, TimeUnit.SECONDS));
+        assertTrue(upload.isComplete());
+        assertEquals(contents.length, upload.getBytesUploaded());
+        assertTrue(Arrays.equals(contents, server.getData(upload.getUploadID())));
+        assertNull(server.getViolation());
+        return upload;
+    }
+
+    @Test
+    public void testUploadsFile() throws Exception {
+        upload();
+        assertEquals(Arrays.asList(0), server.getResumeIndices());
+        assertEquals(CHUNKS, server.getChunksReceived());
+        assertTrue(failures.isEmpty());
+    }
+
+    @Test
+    public void testResumesAfterConnectionLoss() throws Exception {
+        server.setDropAfter(3);
+        upload();
+        //the upload resumes after the three chunks the server stored, acknowledged or not
+        assertEquals(Arrays.asList(0, 3), server.getResumeIndices());
+        assertEquals(1, failures.size());
+        assertTrue(failures.get(0) instanceof IOException);
+        //chunks in flight when the connection dropped are sent again, but no others
+        assertTrue(server.getChunksReceived() <= CHUNKS + BulkUpload.WINDOW);
+    }
+
+    @Test
+    public void testCorruptedChunkIsSentAgain() throws Exception {
+        server.setCorruptChunk(2);
+        upload();
+        assertEquals(1, server.getNaks());
+        assertEquals(Arrays.asList(0, 2), server.getResumeIndices());
+        assertEquals(1, failures.size());
+    }
+
+    @Test
+    public void testWindowLimitsUnacknowledgedChunks() throws Exception {
+        server.setAckDelay(300);
+        upload();
+        assertEquals(BulkUpload.WINDOW, server.getMaxUnacknowledged());
+        assertTrue(failures.isEmpty());
+    }
+
+    @Test
+    public void testUploadingAgainResumesAfterLastChunk() throws Exception {
+        upload();
+        completed = new CountDownLatch(1);
+        upload();
+        assertEquals(Arrays.asList(0, CHUNKS), server.getResumeIndices());
+        assertEquals(CHUNKS, server.getChunksReceived());
+    }
+}
@@ -0,0 +1,121 @@
+package edu.umass.cs.MHLClient.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cs.umass.edu.MHLClient.BuildConfig;
+import edu.umass.cs.MHLClient.emulation.RealtimeSystemClock;
+import edu.umass.cs.MHLClient.emulation.StandInServer;
+import edu.umass.cs.MHLClient.sensors.AccelerometerReading;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that readings are held until the next burst in burst mode, and that readings
+ * spilled to disk when the queue is full are delivered with a later burst.
+ *
+ * @author Sean Noran
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21, shadows = RealtimeSystemClock.class)
+public class BurstModeTest {
+
+    /** The capacity of the client's queue. **/
+    private static final int QUEUE_CAPACITY = 5000;
+
+    private StandInServer server;
+
+    private MobileIOClient client;
+
+    /** The number of readings reported by the burst listener. **/
+    private final AtomicInteger burstReadings = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        burstReadings.set(0);
+        server = new StandInServer(TestClients.createServerContext());
+        int port = server.start(0);
+        client = TestClients.create("0");
+        client.setServer("127.0.0.1", port);
+        client.setBurstListener(new BurstListener() {
+            @Override
+            public void onBurstSent(int readings, long bytes, long duration, long estimatedRadioOnTime) {
+                burstReadings.addAndGet(readings);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        client.disconnect();
+        server.stop();
+    }
+
+    private void sendReadings(int count){
+        long t = System.currentTimeMillis();
+        for (int i = 0; i < count; i++)
+            assertTrue(client.sendSensorReading(new AccelerometerReading("0", "MOBILE", "phone", t + i, 0f, 0f, 9.81f)));
+    }
+
+    private void awaitLines(long lines, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (server.getLinesReceived() < lines && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+    }
+
+    /** Waits for the burst listener, which is notified after the burst has been written. **/
+    private void awaitBurstReadings(int readings, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (burstReadings.get() < readings && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+    }
+
+    @Test
+    public void testReadingsAreHeldUntilTheBurst() throws InterruptedException {
+        client.setBurstPolicy(new BurstPolicy(1500));
+        client.connect();
+        Thread.sleep(200);
+        sendReadings(20);
+        Thread.sleep(500);
+        assertEquals(0, server.getLinesReceived());
+        awaitLines(20, 3000);
+        //the burst carries the readings and a heartbeat
+        assertTrue(server.getLinesReceived() >= 20);
+        awaitBurstReadings(20, 1000);
+        assertEquals(20, burstReadings.get());
+    }
+
+    @Test
+    public void testFlushSendsRightAway() throws InterruptedException {
+        client.setBurstPolicy(new BurstPolicy(60000));
+        client.connect();
+        Thread.sleep(200);
+        sendReadings(20);
+        long start = System.currentTimeMillis();
+        client.flush();
+        awaitLines(20, 3000);
+        assertTrue(server.getLinesReceived() >= 20);
+        assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+
+    @Test
+    public void testSpilledReadingsAreSentWithTheNextBurst() throws InterruptedException {
+        client.setBurstPolicy(new BurstPolicy(60000, Integer.MAX_VALUE, false, true));
+        //the queue fills up before the client connects, the rest is spilled to disk
+        sendReadings(QUEUE_CAPACITY + 100);
+        assertEquals(QUEUE_CAPACITY, client.getQueuedReadingCount());
+        client.connect();
+        Thread.sleep(200);
+        client.flush();
+        awaitLines(QUEUE_CAPACITY + 100, 5000);
+        awaitBurstReadings(QUEUE_CAPACITY + 100, 1000);
+        assertEquals(QUEUE_CAPACITY + 100, burstReadings.get());
+    }
+}
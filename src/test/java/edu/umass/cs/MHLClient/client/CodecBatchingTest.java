@@ -0,0 +1,94 @@
+package edu.umass.cs.MHLClient.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import cs.umass.edu.MHLClient.BuildConfig;
+import edu.umass.cs.MHLClient.codec.TimeSeriesCodec;
+import edu.umass.cs.MHLClient.emulation.RealtimeSystemClock;
+import edu.umass.cs.MHLClient.emulation.StandInServer;
+import edu.umass.cs.MHLClient.sensors.AccelerometerReading;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that readings sent with a codec in real-time mode are held until a batch is
+ * large or old enough, instead of being sent as batches of a few readings each.
+ *
+ * @author Sean Noran
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21, shadows = RealtimeSystemClock.class)
+public class CodecBatchingTest {
+
+    private StandInServer server;
+
+    private MobileIOClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StandInServer(TestClients.createServerContext());
+        int port = server.start(0);
+        client = TestClients.create("0");
+        client.setServer("127.0.0.1", port);
+        client.setCodec("SENSOR_ACCEL", TimeSeriesCodec.quantized(3));
+        client.connect();
+    }
+
+    @After
+    public void tearDown() {
+        client.disconnect();
+        server.stop();
+    }
+
+    private void sendReadings(int count, long t){
+        for (int i = 0; i < count; i++)
+            client.sendSensorReading(new AccelerometerReading("0", "MOBILE", "phone", t + 20 * i, 0.1f * i, 0f, 9.81f));
+    }
+
+    /**
+     * Waits for a batch message to arrive.
+     * @return the batch, or null if none arrived in time.
+     */
+    private String awaitBatch(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (System.currentTimeMillis() < deadline) {
+            String line = server.getLastLine();
+            if (line != null && line.contains("\"codec\""))
+                return line;
+            Thread.sleep(10);
+        }
+        return null;
+    }
+
+    @Test
+    public void testFewReadingsAreHeldUntilTheBatchIsOld() throws InterruptedException {
+        long start = System.currentTimeMillis();
+        //readings arriving one drain cycle at a time would otherwise be sent as single-reading batches
+        for (int i = 0; i < 10; i++) {
+            sendReadings(1, start + 20 * i);
+            Thread.sleep(20);
+        }
+        String batch = awaitBatch(5000);
+        assertNotNull(batch);
+        assertTrue(System.currentTimeMillis() - start >= 1000);
+        assertTrue(batch, batch.contains("\"n\":10,"));
+        assertEquals(1, server.getLinesReceived());
+    }
+
+    @Test
+    public void testFullBatchIsSentRightAway() throws InterruptedException {
+        long start = System.currentTimeMillis();
+        sendReadings(50, start);
+        String batch = awaitBatch(5000);
+        assertNotNull(batch);
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertTrue(batch, batch.contains("\"n\":50,"));
+    }
+}
@@ -0,0 +1,102 @@
+package edu.umass.cs.MHLClient.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import cs.umass.edu.MHLClient.BuildConfig;
+import edu.umass.cs.MHLClient.emulation.RealtimeSystemClock;
+import edu.umass.cs.MHLClient.emulation.StandInServer;
+import edu.umass.cs.MHLClient.sensors.AccelerometerReading;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Negotiates compact sessions with a {@link StandInServer} that accepts, declines or,
+ * like servers that predate compact sessions, ignores the request.
+ *
+ * @author Sean Noran
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21, shadows = RealtimeSystemClock.class)
+public class CompactSessionTest {
+
+    /** The longest time to wait for a reading to arrive, in milliseconds. **/
+    private static final long TIMEOUT = 10000;
+
+    private StandInServer server;
+
+    private MobileIOClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StandInServer(TestClients.createServerContext());
+        int port = server.start(0);
+        client = TestClients.create("0");
+        client.setServer("127.0.0.1", port);
+        client.setCompactSessionEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        client.disconnect();
+        server.stop();
+    }
+
+    /**
+     * Connects, sends an accelerometer reading and waits for the server to receive it.
+     * @return the line the server received.
+     */
+    private String sendReading() throws InterruptedException {
+        client.connect();
+        client.sendSensorReading(new AccelerometerReading("0", "MOBILE", "phone", System.currentTimeMillis(), 1f, 2f, 3f));
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (System.currentTimeMillis() < deadline) {
+            String line = server.getLastLine();
+            if (line != null && line.contains("\"x\""))
+                return line;
+            Thread.sleep(20);
+        }
+        return null;
+    }
+
+    @Test
+    public void testAcceptedSessionSendsStreamIDs() throws InterruptedException {
+        String line = sendReading();
+        assertNotNull(line);
+        assertTrue(line, line.startsWith("{\"s\":0,"));
+        assertEquals(1, server.getConnections());
+        assertEquals(1, server.getSessionRequests());
+    }
+
+    @Test
+    public void testDeclinedSessionSendsFullEnvelopes() throws InterruptedException {
+        server.setCompactSessionsAccepted(false);
+        String line = sendReading();
+        assertNotNull(line);
+        assertTrue(line, line.contains("\"sensor_type\":\"SENSOR_ACCEL\""));
+        assertEquals(1, server.getConnections());
+        assertTrue(client.getCurrentServer().supportsCompactSession());
+    }
+
+    @Test
+    public void testUnansweredRequestReconnectsWithoutCompactSession() throws InterruptedException {
+        server.setSessionRequestsAnswered(false);
+        long start = System.currentTimeMillis();
+        String line = sendReading();
+        assertNotNull(line);
+        //well within the read timeout, which bounds the rest of the handshake
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertTrue(line, line.contains("\"sensor_type\":\"SENSOR_ACCEL\""));
+        //the request is not repeated on the new connection
+        assertEquals(2, server.getConnections());
+        assertEquals(1, server.getSessionRequests());
+        assertFalse(client.getCurrentServer().supportsCompactSession());
+    }
+}
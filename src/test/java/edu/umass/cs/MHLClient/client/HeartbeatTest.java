@@ -0,0 +1,114 @@
+package edu.umass.cs.MHLClient.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import cs.umass.edu.MHLClient.BuildConfig;
+import edu.umass.cs.MHLClient.emulation.RealtimeSystemClock;
+import edu.umass.cs.MHLClient.emulation.StandInServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the heartbeats and the read timeout against a {@link StandInServer} that echoes
+ * heartbeats, stops echoing them, or never did, as servers predating heartbeats.
+ *
+ * @author Sean Noran
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21, shadows = RealtimeSystemClock.class)
+public class HeartbeatTest {
+
+    private static final long HEARTBEAT_INTERVAL = 200;
+
+    private static final long READ_TIMEOUT = 1000;
+
+    private StandInServer server;
+
+    private MobileIOClient client;
+
+    /** The failures reported to the connection state handler. **/
+    private final CopyOnWriteArrayList<Exception> failures = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        failures.clear();
+        server = new StandInServer(TestClients.createServerContext());
+        int port = server.start(0);
+        client = TestClients.create("0");
+        client.setServer("127.0.0.1", port);
+        client.setHeartbeatInterval(HEARTBEAT_INTERVAL);
+        client.setReadTimeout(READ_TIMEOUT);
+        client.setConnectionStateHandler(new ConnectionStateHandler() {
+            @Override
+            public void onConnected() {
+            }
+
+            @Override
+            public void onConnectionFailed(Exception e) {
+                failures.add(e);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        client.disconnect();
+        server.stop();
+    }
+
+    @Test
+    public void testEchoedHeartbeatsMeasureTheRoundTrip() throws InterruptedException {
+        client.connect();
+        Thread.sleep(10 * HEARTBEAT_INTERVAL);
+        ConnectionStatistics statistics = client.getConnectionStatistics();
+        assertTrue(statistics.getHeartbeatsSent() >= 5);
+        assertTrue(statistics.getHeartbeatsReceived() >= statistics.getHeartbeatsSent() - 1);
+        assertTrue(statistics.getLastRoundTripTime() >= 0 && statistics.getLastRoundTripTime() < HEARTBEAT_INTERVAL);
+        assertEquals(0, statistics.getDeadConnectionsDetected());
+        assertEquals(1, server.getConnections());
+        assertTrue(failures.isEmpty());
+    }
+
+    @Test
+    public void testSilentServerIsDetectedAndReconnected() throws InterruptedException {
+        client.connect();
+        Thread.sleep(5 * HEARTBEAT_INTERVAL);
+        //the connection stays open, but the server stops responding
+        server.setHeartbeatsEchoed(false);
+        long silent = System.currentTimeMillis();
+        while (failures.isEmpty() && System.currentTimeMillis() - silent < 3 * READ_TIMEOUT)
+            Thread.sleep(10);
+        assertEquals(1, failures.size());
+        assertTrue(failures.get(0) instanceof ConnectionLostException);
+        //detected once the read timeout has passed since the last echo
+        long detection = client.getConnectionStatistics().getLastFailureDetectionTime();
+        assertTrue(detection >= READ_TIMEOUT && detection < READ_TIMEOUT + 2 * HEARTBEAT_INTERVAL + 500);
+        assertEquals(1, client.getConnectionStatistics().getDeadConnectionsDetected());
+
+        server.setHeartbeatsEchoed(true);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getConnections() < 2 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(2, server.getConnections());
+    }
+
+    @Test
+    public void testServerWithoutEchoIsNotTimedOut() throws InterruptedException {
+        //servers that predate heartbeats never echo them, so the read timeout is not armed
+        server.setHeartbeatsEchoed(false);
+        client.connect();
+        Thread.sleep(3 * READ_TIMEOUT);
+        assertTrue(failures.isEmpty());
+        assertEquals(1, server.getConnections());
+        assertTrue(client.getConnectionStatistics().getHeartbeatsSent() > 0);
+        assertEquals(0, client.getConnectionStatistics().getHeartbeatsReceived());
+    }
+}
@@ -0,0 +1,121 @@
+package edu.umass.cs.MHLClient.client;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+import cs.umass.edu.MHLClient.BuildConfig;
+import edu.umass.cs.MHLClient.sensors.AccelerometerReading;
+import edu.umass.cs.MHLClient.sensors.AudioBufferReading;
+import edu.umass.cs.MHLClient.sensors.SensorReading;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the {@link ParallelSerializer} returns the lines of each chunk in the order
+ * the chunks were submitted, however the work is spread over the worker threads.
+ *
+ * @author Sean Noran
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class ParallelSerializerTest {
+
+    private static final int THREADS = 8;
+
+    private static final int CHUNKS = 400;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private ParallelSerializer serializer;
+
+    /** A reading without annotated fields or JSON method, which cannot be encoded. **/
+    private static class UnencodableReading extends SensorReading {
+        UnencodableReading(long t){
+            super("0", "MOBILE", "phone", "SENSOR_UNKNOWN", t);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        serializer = new ParallelSerializer(THREADS);
+    }
+
+    @After
+    public void tearDown() {
+        serializer.shutdown();
+    }
+
+    /**
+     * Creates the reading with the given sequence number. Every seventh chunk holds large
+     * audio buffers, so that it takes much longer to encode than the chunks after it.
+     */
+    private static SensorReading reading(int sequence){
+        if (sequence / ParallelSerializer.CHUNK_SIZE % 7 == 0)
+            return new AudioBufferReading("0", "MOBILE", "phone", sequence, new short[2048]);
+        return new AccelerometerReading("0", "MOBILE", "phone/" + sequence % 3, sequence, 0f, 0f, 9.81f);
+    }
+
+    /** Waits for each chunk in turn and collects the timestamps of the encoded lines. **/
+    private ArrayList<Long> collect(ArrayList<ParallelSerializer.Chunk> chunks) throws InterruptedException, JSONException {
+        ArrayList<Long> timestamps = new ArrayList<>();
+        for (ParallelSerializer.Chunk chunk : chunks) {
+            ByteBuffer buffer = serializer.await(chunk);
+            String text = UTF_8.decode(buffer).toString();
+            serializer.release(buffer);
+            for (String line : text.split("\n"))
+                timestamps.add(new JSONObject(line).getJSONObject("data").getLong("t"));
+        }
+        return timestamps;
+    }
+
+    @Test
+    public void testChunksAreReturnedInSubmissionOrder() throws Exception {
+        ArrayList<ParallelSerializer.Chunk> chunks = new ArrayList<>();
+        ParallelSerializer.Chunk chunk = new ParallelSerializer.Chunk();
+        for (int i = 0; i < CHUNKS * ParallelSerializer.CHUNK_SIZE; i++) {
+            //compact lines for some streams, full lines for the others
+            if (chunk.add(reading(i), i % 2 == 0 ? -1 : i % 3)) {
+                serializer.submit(chunk);
+                chunks.add(chunk);
+                chunk = new ParallelSerializer.Chunk();
+            }
+        }
+        ArrayList<Long> timestamps = collect(chunks);
+        assertEquals(CHUNKS * ParallelSerializer.CHUNK_SIZE, timestamps.size());
+        for (int i = 0; i < timestamps.size(); i++)
+            assertEquals(i, (long) timestamps.get(i));
+    }
+
+    @Test
+    public void testUnencodableReadingsAreDropped() throws Exception {
+        ParallelSerializer.Chunk chunk = new ParallelSerializer.Chunk();
+        for (int i = 0; i < 10; i++)
+            chunk.add(i % 4 == 1 ? new UnencodableReading(i) : reading(ParallelSerializer.CHUNK_SIZE + i), -1);
+        serializer.submit(chunk);
+        ArrayList<ParallelSerializer.Chunk> chunks = new ArrayList<>();
+        chunks.add(chunk);
+        assertEquals(7, collect(chunks).size());
+        assertEquals(3, chunk.dropped);
+    }
+
+    @Test
+    public void testChunksSubmittedAfterShutdownAreEncoded() throws Exception {
+        serializer.shutdown();
+        ParallelSerializer.Chunk chunk = new ParallelSerializer.Chunk();
+        chunk.add(reading(ParallelSerializer.CHUNK_SIZE), -1);
+        serializer.submit(chunk);
+        ArrayList<ParallelSerializer.Chunk> chunks = new ArrayList<>();
+        chunks.add(chunk);
+        assertEquals(1, collect(chunks).size());
+    }
+}
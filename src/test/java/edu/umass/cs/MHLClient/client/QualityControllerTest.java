@@ -0,0 +1,97 @@
+package edu.umass.cs.MHLClient.client;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.umass.cs.MHLClient.processing.QualityLevel;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Drives the {@link QualityController} with synthetic transmission reports, checking that the
+ * throughput against the offered rate, the queue depth and the write latency each move the step.
+ *
+ * @author Sean Noran
+ */
+public class QualityControllerTest {
+
+    private static final long RECOVERY_TIME = 5000;
+
+    private QualityController controller;
+
+    /** The simulated time, in milliseconds. **/
+    private long now;
+
+    @Before
+    public void setUp() {
+        controller = new QualityController(2500, 250, 1000, RECOVERY_TIME);
+        controller.setLevels("SENSOR_ACCEL", QualityLevel.FULL, QualityLevel.FULL, QualityLevel.FULL);
+        now = 100000;
+    }
+
+    /**
+     * Reports an idle cycle, which starts the first evaluation interval.
+     */
+    private void start(boolean burst){
+        controller.update(now, burst, 0, 0, 0, 0);
+    }
+
+    /**
+     * Simulates one second in which the given number of readings of 100 bytes are offered and sent.
+     */
+    private void second(boolean burst, int queueDepth, int offered, int sent, long writeLatency){
+        for (int i = 0; i < offered; i++)
+            controller.onReadingOffered();
+        now += 1000;
+        controller.update(now, burst, queueDepth, sent, sent * 100L, writeLatency);
+    }
+
+    @Test
+    public void testSaturatedLinkStepsDownInBurstMode() {
+        //the queue depth is ignored and the writes are fast, only the throughput shows the shortfall
+        start(true);
+        second(true, 5000, 100, 100, 10);
+        assertEquals(0, controller.getStep());
+        second(true, 5000, 100, 50, 10);
+        assertEquals(5000, controller.getThroughput());
+        assertEquals(10000, controller.getOfferedRate());
+        assertEquals(1, controller.getStep());
+    }
+
+    @Test
+    public void testLinkKeepingUpWithOfferedRateRecovers() {
+        start(false);
+        second(false, 0, 100, 50, 10);
+        assertEquals(1, controller.getStep());
+        //the lower quality offers less, which the link now keeps up with
+        for (int i = 0; i < RECOVERY_TIME / 1000 + 1; i++)
+            second(false, 0, 50, 50, 10);
+        assertEquals(0, controller.getStep());
+    }
+
+    @Test
+    public void testBurstIntervalSpansTimeBetweenBursts() {
+        start(true);
+        second(true, 0, 100, 100, 10);
+        //no bytes are written between bursts, which must not count as a shortfall
+        for (int i = 0; i < 9; i++)
+            second(true, 0, 100, 0, 0);
+        assertEquals(0, controller.getStep());
+        second(true, 0, 100, 1000, 200);
+        assertEquals(10000, controller.getThroughput());
+        assertEquals(0, controller.getStep());
+    }
+
+    @Test
+    public void testQueueDepthAndLatencyStillLowerQuality() {
+        start(false);
+        second(false, 0, 100, 100, 10);
+        second(false, 0, 100, 100, 10);
+        second(false, 3000, 100, 100, 10);
+        assertEquals(1, controller.getStep());
+        second(false, 0, 100, 100, 10);
+        second(false, 0, 100, 100, 10);
+        second(false, 0, 100, 100, 1500);
+        assertEquals(2, controller.getStep());
+    }
+}
@@ -0,0 +1,163 @@
+package edu.umass.cs.MHLClient.client;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import cs.umass.edu.MHLClient.BuildConfig;
+import edu.umass.cs.MHLClient.emulation.RealtimeSystemClock;
+import edu.umass.cs.MHLClient.emulation.StandInServer;
+import edu.umass.cs.MHLClient.sensors.AccelerometerReading;
+import edu.umass.cs.MHLClient.sensors.GyroscopeReading;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sends control messages from a {@link StandInServer} and checks that the client
+ * acknowledges them and limits the readings it sends accordingly, including readings
+ * that are fused into IMU readings.
+ *
+ * @author Sean Noran
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21, shadows = RealtimeSystemClock.class)
+public class RemoteControlTest {
+
+    private StandInServer server;
+
+    private MobileIOClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StandInServer(TestClients.createServerContext());
+        server.setLinesRecorded(true);
+        int port = server.start(0);
+        client = TestClients.create("0");
+        client.setServer("127.0.0.1", port);
+    }
+
+    @After
+    public void tearDown() {
+        client.disconnect();
+        server.stop();
+    }
+
+    private void connect() throws InterruptedException {
+        client.connect();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getSessions() == 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(1, server.getSessions());
+    }
+
+    /**
+     * Sends a control message and waits for its acknowledgement.
+     * @param id the ID of the message.
+     * @param data the 'data' object of the message, without the ID.
+     * @return the 'data' object of the acknowledgement.
+     */
+    private JSONObject control(long id, String data) throws Exception {
+        server.send("{\"sensor_type\":\"SENSOR_CONTROL\",\"data\":{\"id\":" + id + (data.isEmpty() ? "" : "," + data) + "}}");
+        long deadline = System.currentTimeMillis() + 3000;
+        while (System.currentTimeMillis() < deadline) {
+            for (String line : server.getLines()) {
+                JSONObject obj = new JSONObject(line);
+                if (obj.getString("sensor_type").equals("SENSOR_CONTROL_ACK") && obj.getJSONObject("data").getLong("id") == id)
+                    return obj.getJSONObject("data");
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("Control message " + id + " was not acknowledged.");
+    }
+
+    /** Counts the recorded lines of a sensor type. **/
+    private int count(String sensorType) throws JSONException {
+        int count = 0;
+        for (String line : server.getLines()) {
+            if (new JSONObject(line).getString("sensor_type").equals(sensorType))
+                count++;
+        }
+        return count;
+    }
+
+    /** Sends one second of accelerometer and gyroscope readings at 100 Hz and waits until they have been sent. **/
+    private void sendReadings() throws InterruptedException {
+        for (long t = 1000; t < 2000; t += 10) {
+            client.sendSensorReading(new AccelerometerReading("0", "MOBILE", "phone", t, 0f, 0f, 9.81f));
+            client.sendSensorReading(new GyroscopeReading("0", "MOBILE", "phone", t + 3, 0f, 0f, 0f));
+        }
+        long deadline = System.currentTimeMillis() + 3000;
+        while (client.getQueuedReadingCount() > 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        Thread.sleep(300);
+    }
+
+    @Test
+    public void testControlMessageIsAppliedAndAcknowledged() throws Exception {
+        connect();
+        JSONObject ack = control(17, "\"sensors\":{\"SENSOR_GYRO\":{\"paused\":true},\"SENSOR_ACCEL\":{\"max_rate\":10}}");
+        assertTrue(ack.getBoolean("applied"));
+        assertEquals("", ack.getString("error"));
+        assertEquals(17, client.getSamplingPolicy().getId());
+
+        sendReadings();
+        assertEquals(10, count("SENSOR_ACCEL"));
+        assertEquals(0, count("SENSOR_GYRO"));
+
+        //a message without limits lifts them
+        assertTrue(control(18, "").getBoolean("applied"));
+        assertFalse(client.getSamplingPolicy().isPaused("SENSOR_GYRO"));
+    }
+
+    @Test
+    public void testInvalidControlMessageIsRejected() throws Exception {
+        connect();
+        assertTrue(control(1, "\"sensors\":{\"SENSOR_AUDIO\":{\"paused\":true}}").getBoolean("applied"));
+        JSONObject ack = control(2, "\"sensors\":{\"SENSOR_ACCEL\":{\"max_rate\":-1}}");
+        assertFalse(ack.getBoolean("applied"));
+        assertFalse(ack.getString("error").isEmpty());
+        //the previous policy stays in effect
+        assertEquals(1, client.getSamplingPolicy().getId());
+        assertTrue(client.getSamplingPolicy().isPaused("SENSOR_AUDIO"));
+    }
+
+    @Test
+    public void testControlMessageIsRejectedWhenRemoteControlIsDisabled() throws Exception {
+        client.setRemoteControlEnabled(false);
+        connect();
+        JSONObject ack = control(3, "\"sensors\":{\"SENSOR_ACCEL\":{\"paused\":true}}");
+        assertFalse(ack.getBoolean("applied"));
+        assertEquals("remote control disabled", ack.getString("error"));
+        assertSame(SamplingPolicy.UNRESTRICTED, client.getSamplingPolicy());
+    }
+
+    @Test
+    public void testLimitsApplyBeforeFusion() throws Exception {
+        client.setIMUFusionRate(100);
+        connect();
+        assertTrue(control(4, "\"sensors\":{\"SENSOR_GYRO\":{\"paused\":true},\"SENSOR_ACCEL\":{\"max_rate\":10}}").getBoolean("applied"));
+        sendReadings();
+        //without gyroscope readings, nothing is fused, and each admitted accelerometer reading is passed on once
+        assertEquals(0, count("SENSOR_IMU"));
+        assertEquals(0, count("SENSOR_GYRO"));
+        assertEquals(10, count("SENSOR_ACCEL"));
+    }
+
+    @Test
+    public void testReadingsAreFusedWithoutLimits() throws Exception {
+        client.setIMUFusionRate(100);
+        connect();
+        sendReadings();
+        assertTrue(count("SENSOR_IMU") >= 98);
+        assertTrue(count("SENSOR_ACCEL") <= 2);
+        assertEquals(0, count("SENSOR_GYRO"));
+    }
+}
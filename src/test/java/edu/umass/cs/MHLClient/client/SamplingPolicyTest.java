@@ -0,0 +1,89 @@
+package edu.umass.cs.MHLClient.client;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import cs.umass.edu.MHLClient.BuildConfig;
+import edu.umass.cs.MHLClient.sensors.AccelerometerReading;
+import edu.umass.cs.MHLClient.sensors.GyroscopeReading;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks how a {@link SamplingPolicy} is parsed from the 'data' object of a control
+ * message and which readings it admits.
+ *
+ * @author Sean Noran
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class SamplingPolicyTest {
+
+    private static SamplingPolicy parse(String data) throws JSONException {
+        return SamplingPolicy.fromJSON(new JSONObject(data));
+    }
+
+    private static AccelerometerReading accel(String deviceID, long t){
+        return new AccelerometerReading("0", "MOBILE", deviceID, t, 0f, 0f, 9.81f);
+    }
+
+    @Test
+    public void testParsesControlMessage() throws JSONException {
+        SamplingPolicy policy = parse("{\"id\":17,\"sensors\":{\"SENSOR_AUDIO\":{\"paused\":true},"
+                + "\"SENSOR_ACCEL\":{\"max_rate\":10}},\"batch\":{\"interval\":5000,\"size\":500}}");
+        assertEquals(17, policy.getId());
+        assertTrue(policy.isPaused("SENSOR_AUDIO"));
+        assertFalse(policy.isPaused("SENSOR_ACCEL"));
+        assertEquals(10, policy.getMaxRate("SENSOR_ACCEL"), 0);
+        assertEquals(0, policy.getMaxRate("SENSOR_GYRO"), 0);
+        assertEquals(5000, policy.getBatchInterval());
+        assertEquals(500, policy.getBatchSize());
+    }
+
+    @Test
+    public void testEmptyMessageLiftsAllLimits() throws JSONException {
+        SamplingPolicy policy = parse("{}");
+        assertEquals(-1, policy.getId());
+        assertEquals(0, policy.getBatchSize());
+        for (long t = 0; t < 100; t++)
+            assertTrue(policy.admit(accel("phone", t)));
+    }
+
+    @Test(expected = JSONException.class)
+    public void testNegativeRateIsRejected() throws JSONException {
+        parse("{\"sensors\":{\"SENSOR_ACCEL\":{\"max_rate\":-1}}}");
+    }
+
+    @Test(expected = JSONException.class)
+    public void testInvalidBatchIsRejected() throws JSONException {
+        parse("{\"batch\":{\"interval\":5000,\"size\":0}}");
+    }
+
+    @Test
+    public void testPausedSensorIsNotAdmitted() throws JSONException {
+        SamplingPolicy policy = parse("{\"sensors\":{\"SENSOR_GYRO\":{\"paused\":true}}}");
+        assertFalse(policy.admit(new GyroscopeReading("0", "MOBILE", "phone", 0, 0f, 0f, 0f)));
+        assertTrue(policy.admit(accel("phone", 0)));
+    }
+
+    @Test
+    public void testRateIsCappedPerStream() throws JSONException {
+        SamplingPolicy policy = parse("{\"sensors\":{\"SENSOR_ACCEL\":{\"max_rate\":10}}}");
+        int phone = 0, watch = 0;
+        //one second of readings at 100 Hz from each of two devices
+        for (long t = 1000; t < 2000; t += 10) {
+            if (policy.admit(accel("phone", t)))
+                phone++;
+            if (policy.admit(accel("watch", t + 5)))
+                watch++;
+        }
+        assertEquals(10, phone);
+        assertEquals(10, watch);
+    }
+}
@@ -0,0 +1,58 @@
+package edu.umass.cs.MHLClient.client;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks how a {@link ServerEndpoint} ranks by its measured setup time and how long it is
+ * quarantined after failures.
+ *
+ * @author Sean Noran
+ */
+public class ServerEndpointTest {
+
+    @Test
+    public void testSetupTimeIsSmoothed() {
+        ServerEndpoint server = new ServerEndpoint("127.0.0.1", 9999);
+        assertEquals(Long.MAX_VALUE, server.getSetupTime());
+        server.onMeasured(40, 60);
+        assertEquals(100, server.getSetupTime());
+        //a single outlier moves the estimate by a quarter
+        server.onMeasured(440, 60);
+        assertEquals(140, server.getConnectTime());
+        assertEquals(200, server.getSetupTime());
+    }
+
+    @Test
+    public void testQuarantineGrowsWithConsecutiveFailures() {
+        ServerEndpoint server = new ServerEndpoint("127.0.0.1", 9999);
+        assertTrue(server.isAvailable(0));
+        long now = 1000;
+        long[] expected = {5000, 10000, 20000, 40000, 80000, 160000, 300000, 300000};
+        for (int i = 0; i < expected.length; i++) {
+            server.onFailure(now);
+            assertEquals(i + 1, server.getFailures());
+            assertFalse(server.isAvailable(now + expected[i] - 1));
+            assertTrue(server.isAvailable(now + expected[i]));
+        }
+        //the shift is bounded, so many failures do not overflow
+        for (int i = 0; i < 100; i++)
+            server.onFailure(now);
+        assertEquals(now + 300000, server.getQuarantinedUntil());
+    }
+
+    @Test
+    public void testConnectionEndsQuarantine() {
+        ServerEndpoint server = new ServerEndpoint("127.0.0.1", 9999);
+        server.onFailure(1000);
+        server.onFailure(1000);
+        server.onConnected();
+        assertEquals(0, server.getFailures());
+        assertTrue(server.isAvailable(1000));
+        server.onFailure(1000);
+        assertTrue(server.isAvailable(6000));
+    }
+}
@@ -0,0 +1,133 @@
+package edu.umass.cs.MHLClient.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+
+import cs.umass.edu.MHLClient.BuildConfig;
+import edu.umass.cs.MHLClient.emulation.NetworkEmulationProxy;
+import edu.umass.cs.MHLClient.emulation.NetworkProfile;
+import edu.umass.cs.MHLClient.emulation.RealtimeSystemClock;
+import edu.umass.cs.MHLClient.emulation.StandInServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the client probes the configured servers, connects to the one with the
+ * shortest setup time and fails over to another server when the connection is lost.
+ * Each server is a {@link StandInServer} behind a {@link NetworkEmulationProxy}.
+ *
+ * @author Sean Noran
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21, shadows = RealtimeSystemClock.class)
+public class ServerSelectionTest {
+
+    private final ArrayList<StandInServer> servers = new ArrayList<>();
+
+    private final ArrayList<NetworkEmulationProxy> proxies = new ArrayList<>();
+
+    private MobileIOClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        servers.clear();
+        proxies.clear();
+        client = TestClients.create("0");
+    }
+
+    @After
+    public void tearDown() {
+        client.disconnect();
+        for (NetworkEmulationProxy proxy : proxies)
+            proxy.stop();
+        for (StandInServer server : servers)
+            server.stop();
+    }
+
+    /**
+     * Starts a stand-in server behind an emulation proxy.
+     * @param profile the network conditions between the client and the server.
+     * @return the endpoint of the proxy.
+     */
+    private ServerEndpoint startServer(NetworkProfile profile) throws Exception {
+        StandInServer server = new StandInServer(TestClients.createServerContext());
+        int port = server.start(0);
+        NetworkEmulationProxy proxy = new NetworkEmulationProxy("127.0.0.1", port, profile);
+        servers.add(server);
+        proxies.add(proxy);
+        return new ServerEndpoint("127.0.0.1", proxy.start(0));
+    }
+
+    /** Gets a port nobody listens on. **/
+    private static ServerEndpoint unreachableServer() throws Exception {
+        StandInServer server = new StandInServer(null);
+        int port = server.start(0);
+        server.stop();
+        return new ServerEndpoint("127.0.0.1", port);
+    }
+
+    private void awaitSessions(int server, int sessions, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (servers.get(server).getSessions() < sessions && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(sessions, servers.get(server).getSessions());
+    }
+
+    @Test
+    public void testConnectsToServerWithShortestSetupTime() throws Exception {
+        ServerEndpoint slow = startServer(NetworkProfile.THREE_G);
+        ServerEndpoint fast = startServer(NetworkProfile.UNLIMITED);
+        client.setServers(slow, fast);
+        client.connect();
+        awaitSessions(1, 1, 5000);
+        assertEquals(0, servers.get(0).getSessions());
+        //both were probed, and only the fast one connected to afterwards
+        assertEquals(1, servers.get(0).getConnections());
+        assertEquals(2, servers.get(1).getConnections());
+        ServerEndpoint[] measured = client.getServers();
+        assertTrue(measured[0].getSetupTime() > measured[1].getSetupTime());
+        assertEquals(fast, client.getCurrentServer());
+    }
+
+    @Test
+    public void testUnreachableServerIsQuarantined() throws Exception {
+        ServerEndpoint unreachable = unreachableServer();
+        ServerEndpoint reachable = startServer(NetworkProfile.UNLIMITED);
+        client.setServers(unreachable, reachable);
+        client.connect();
+        awaitSessions(0, 1, 5000);
+        assertEquals(reachable, client.getCurrentServer());
+        ServerEndpoint[] endpoints = client.getServers();
+        assertEquals(1, endpoints[0].getFailures());
+        assertFalse(endpoints[0].isAvailable(RealtimeSystemClock.elapsedRealtime()));
+        assertEquals(0, endpoints[1].getFailures());
+    }
+
+    @Test
+    public void testFailsOverWhenConnectionIsLost() throws Exception {
+        client.setServers(startServer(NetworkProfile.UNLIMITED), startServer(NetworkProfile.UNLIMITED));
+        client.connect();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (servers.get(0).getSessions() + servers.get(1).getSessions() == 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        int first = servers.get(0).getSessions() == 1 ? 0 : 1;
+        ServerEndpoint failed = client.getCurrentServer();
+        assertEquals(client.getServers()[first], failed);
+
+        //the failed server is quarantined, so the reconnection goes to the other one
+        proxies.get(first).resetConnections();
+        awaitSessions(1 - first, 1, 5000);
+        assertNotEquals(failed, client.getCurrentServer());
+        assertEquals(1, client.getServers()[first].getFailures());
+        assertEquals(1, servers.get(first).getSessions());
+    }
+}
@@ -0,0 +1,79 @@
+package edu.umass.cs.MHLClient.client;
+
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+
+import edu.umass.cs.MHLClient.structures.BlockingSensorReadingQueue;
+
+/**
+ * Creates independent clients for tests, together with the TLS context of the test
+ * certificate, which the {@link edu.umass.cs.MHLClient.emulation.StandInServer} uses to
+ * accept connections and the clients trust. Unlike the singleton returned by
+ * {@link MobileIOClient#getInstance(android.content.Context, String)}, each client starts
+ * with the default settings, so tests cannot influence each other.
+ *
+ * @author Sean Noran
+ */
+public class TestClients {
+
+    /** The test key store, holding the self-signed certificate of the stand-in server. **/
+    private static final String KEY_STORE = "/edu/umass/cs/MHLClient/emulation/server.jks";
+
+    /** The password of the test key store. **/
+    private static final char[] PASSWORD = "password".toCharArray();
+
+    private TestClients(){
+    }
+
+    private static KeyStore loadKeyStore() throws IOException, GeneralSecurityException {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        InputStream in = TestClients.class.getResourceAsStream(KEY_STORE);
+        try {
+            keyStore.load(in, PASSWORD);
+        } finally {
+            in.close();
+        }
+        return keyStore;
+    }
+
+    /**
+     * Creates the TLS context of the stand-in server.
+     * @return a context whose server sockets present the test certificate.
+     */
+    public static SSLContext createServerContext() throws IOException, GeneralSecurityException {
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(loadKeyStore(), PASSWORD);
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagers.getKeyManagers(), null, null);
+        return sslContext;
+    }
+
+    /**
+     * Creates a trust store containing only the test certificate.
+     * @return the trust store, see {@link MobileIOClient#setTrustStore(KeyStore)}.
+     */
+    public static KeyStore createTrustStore() throws IOException, GeneralSecurityException {
+        KeyStore trustStore = KeyStore.getInstance("JKS");
+        trustStore.load(null, null);
+        trustStore.setCertificateEntry("server", loadKeyStore().getCertificate("server"));
+        return trustStore;
+    }
+
+    /**
+     * Creates a client with the default settings that trusts the test certificate.
+     * @param userId the user ID sent in the handshake.
+     * @return a new client, which is not connected yet.
+     */
+    public static MobileIOClient create(String userId) throws IOException, GeneralSecurityException {
+        MobileIOClient client = new MobileIOClient(RuntimeEnvironment.application, new BlockingSensorReadingQueue(), userId);
+        client.setTrustStore(createTrustStore());
+        return client;
+    }
+}
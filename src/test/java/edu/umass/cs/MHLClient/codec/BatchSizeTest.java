@@ -0,0 +1,96 @@
+package edu.umass.cs.MHLClient.codec;
+
+import android.util.Base64;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+
+import cs.umass.edu.MHLClient.BuildConfig;
+import edu.umass.cs.MHLClient.sensors.AccelerometerReading;
+import edu.umass.cs.MHLClient.sensors.SensorReading;
+import edu.umass.cs.MHLClient.sensors.SensorReadingEncoder;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the size of encoded batch messages, as the client writes them, with the size
+ * of the same readings sent as individual JSON messages.
+ *
+ * @author Sean Noran
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class BatchSizeTest {
+
+    /** The number of readings in a batch sent in real-time mode. **/
+    private static final int BATCH_SIZE = 50;
+
+    /**
+     * Generates accelerometer readings at 50 Hz with timing jitter, as a phone in a pocket
+     * reports them: a slow movement plus noise, at the 1/4096 g resolution of a typical sensor.
+     */
+    private static AccelerometerReading[] accelerometerReadings(int count){
+        Random random = new Random(42);
+        AccelerometerReading[] readings = new AccelerometerReading[count];
+        long t = 1445000000000L;
+        float resolution = 9.80665f / 4096;
+        for (int i = 0; i < count; i++) {
+            t += 20 + random.nextInt(3) - 1;
+            double phase = i / 25.0;
+            float x = Math.round((2 * Math.sin(phase) + 0.05 * random.nextGaussian()) / resolution) * resolution;
+            float y = Math.round((1.5 * Math.cos(phase) + 0.05 * random.nextGaussian()) / resolution) * resolution;
+            float z = Math.round((9.81 + 0.05 * random.nextGaussian()) / resolution) * resolution;
+            readings[i] = new AccelerometerReading("0123456789", "MOBILE", "phone", t, x, y, z);
+        }
+        return readings;
+    }
+
+    private static long jsonSize(SensorReading[] readings){
+        long size = 0;
+        for (SensorReading reading : readings)
+            size += reading.toJSONString().length() + 1;
+        return size;
+    }
+
+    /** Encodes the readings into one batch message, as the transmission thread does. **/
+    private static long batchSize(SensorReading[] readings, TimeSeriesCodec codec){
+        SensorReadingEncoder encoder = SensorReadingEncoder.forClass(readings[0].getClass());
+        TimeSeriesBatch batch = new TimeSeriesBatch(encoder.getChannelCount(), readings.length);
+        double[] sample = new double[encoder.getChannelCount()];
+        for (SensorReading reading : readings) {
+            encoder.readChannels(reading, sample);
+            batch.add(reading.getTimestamp(), reading.getLabel(), sample);
+        }
+        BitOutput bits = new BitOutput(1024);
+        codec.encode(batch, bits);
+        String payload = Base64.encodeToString(bits.toByteArray(), Base64.NO_WRAP);
+        return encoder.toBatchJSONString(readings[0], codec.getName(), readings.length, payload).length() + 1;
+    }
+
+    @Test
+    public void quantizedBatchIsFifteenTimesSmaller(){
+        AccelerometerReading[] readings = accelerometerReadings(BATCH_SIZE);
+        long json = jsonSize(readings), batch = batchSize(readings, TimeSeriesCodec.quantized(3));
+        System.out.println("quantized: " + json + " bytes of JSON, " + batch + " bytes batched");
+        assertTrue(json + " vs " + batch, batch * 15 <= json);
+    }
+
+    @Test
+    public void losslessBatchIsTenTimesSmaller(){
+        AccelerometerReading[] readings = accelerometerReadings(BATCH_SIZE);
+        long json = jsonSize(readings), batch = batchSize(readings, TimeSeriesCodec.lossless());
+        System.out.println("lossless: " + json + " bytes of JSON, " + batch + " bytes batched");
+        assertTrue(json + " vs " + batch, batch * 10 <= json);
+    }
+
+    @Test
+    public void singleReadingBatchIsLargerThanTheJSON(){
+        //why real-time mode holds readings instead of sending a batch per drained reading
+        AccelerometerReading[] readings = accelerometerReadings(1);
+        assertTrue(batchSize(readings, TimeSeriesCodec.quantized(3)) > jsonSize(readings));
+    }
+}
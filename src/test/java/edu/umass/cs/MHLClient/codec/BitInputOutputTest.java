@@ -0,0 +1,81 @@
+package edu.umass.cs.MHLClient.codec;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round-trips values of every width through {@link BitOutput} and {@link BitInput}.
+ *
+ * @author Sean Noran
+ */
+public class BitInputOutputTest {
+
+    @Test
+    public void bitsAreWrittenMostSignificantFirst(){
+        BitOutput out = new BitOutput(1);
+        out.writeBit(true);
+        out.writeBits(0x2, 3);
+        out.writeBits(0xF, 4);
+        out.writeBit(true);
+        assertEquals(9, out.getBitCount());
+        assertArrayEquals(new byte[]{(byte) 0xAF, (byte) 0x80}, out.toByteArray());
+    }
+
+    @Test
+    public void valuesOfEveryWidthRoundTrip(){
+        BitOutput out = new BitOutput(1);
+        for (int n = 0; n <= 64; n++)
+            out.writeBits(mask(0x9E3779B97F4A7C15L, n), n);
+        BitInput in = new BitInput(out.toByteArray());
+        for (int n = 0; n <= 64; n++)
+            assertEquals("width " + n, mask(0x9E3779B97F4A7C15L, n), in.readBits(n));
+    }
+
+    @Test
+    public void extremeValuesRoundTrip(){
+        long[] values = {0, -1, Long.MIN_VALUE, Long.MAX_VALUE, 1};
+        BitOutput out = new BitOutput(1);
+        out.writeBit(true);
+        for (long value : values)
+            out.writeBits(value, 64);
+        BitInput in = new BitInput(out.toByteArray());
+        assertTrue(in.readBit());
+        for (long value : values)
+            assertEquals(value, in.readBits(64));
+    }
+
+    @Test
+    public void higherBitsOfTheValueAreIgnored(){
+        BitOutput out = new BitOutput(1);
+        out.writeBits(-1, 3);
+        out.writeBits(0, 5);
+        assertArrayEquals(new byte[]{(byte) 0xE0}, out.toByteArray());
+    }
+
+    @Test
+    public void resetClearsTheWrittenBits(){
+        BitOutput out = new BitOutput(1);
+        out.writeBits(-1, 20);
+        out.reset();
+        out.writeBits(0, 12);
+        assertEquals(12, out.getBitCount());
+        assertArrayEquals(new byte[2], out.toByteArray());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void readingPastTheEndFails(){
+        BitOutput out = new BitOutput(1);
+        out.writeBits(0x5, 3);
+        BitInput in = new BitInput(out.toByteArray());
+        assertTrue(in.readBit());
+        assertEquals(0x20, in.readBits(7));
+        in.readBit();
+    }
+
+    private static long mask(long value, int n){
+        return n == 64 ? value : value & ((1L << n) - 1);
+    }
+}
@@ -0,0 +1,172 @@
+package edu.umass.cs.MHLClient.codec;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round-trips batches through the lossless and quantized {@link TimeSeriesCodec codecs},
+ * including the edge cases of the delta-of-delta and XOR encodings.
+ *
+ * @author Sean Noran
+ */
+public class TimeSeriesCodecTest {
+
+    /** A regularly sampled three-axis batch with some jitter and a label change. **/
+    private static TimeSeriesBatch regularBatch(){
+        TimeSeriesBatch batch = new TimeSeriesBatch(3, 16);
+        long t = 1445000000000L;
+        for (int i = 0; i < 200; i++) {
+            t += 20 + (i % 7 == 0 ? 1 : 0);
+            double phase = i / 10.0;
+            batch.add(t, i < 100 ? -1 : 3, new double[]{Math.sin(phase), Math.cos(phase), 9.81});
+        }
+        return batch;
+    }
+
+    private static void assertBatchEquals(TimeSeriesBatch expected, TimeSeriesBatch actual, double tolerance){
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.getChannels(), actual.getChannels());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals("timestamp " + i, expected.getTimestamp(i), actual.getTimestamp(i));
+            assertEquals("label " + i, expected.getLabel(i), actual.getLabel(i));
+            for (int c = 0; c < expected.getChannels(); c++) {
+                if (tolerance == 0) {
+                    //compare the bits, so that NaN and the sign of zero are checked as well
+                    assertEquals("value " + i + "," + c, Double.doubleToLongBits(expected.getValue(i, c)),
+                            Double.doubleToLongBits(actual.getValue(i, c)));
+                } else {
+                    assertEquals("value " + i + "," + c, expected.getValue(i, c), actual.getValue(i, c), tolerance);
+                }
+            }
+        }
+    }
+
+    private static TimeSeriesBatch roundTrip(TimeSeriesCodec codec, TimeSeriesBatch batch){
+        TimeSeriesCodec decoder = TimeSeriesCodec.forName(codec.getName());
+        return decoder.decode(codec.encode(batch), batch.getChannels());
+    }
+
+    @Test
+    public void losslessRoundTrip(){
+        TimeSeriesBatch batch = regularBatch();
+        assertBatchEquals(batch, roundTrip(TimeSeriesCodec.lossless(), batch), 0);
+    }
+
+    @Test
+    public void quantizedRoundTrip(){
+        TimeSeriesBatch batch = regularBatch();
+        assertBatchEquals(batch, roundTrip(TimeSeriesCodec.quantized(3), batch), 0.0005);
+    }
+
+    @Test
+    public void regularTimestampsCostOneBitPerSample(){
+        TimeSeriesBatch batch = new TimeSeriesBatch(1, 1000);
+        for (int i = 0; i < 1000; i++)
+            batch.add(1000L + 20 * i, -1, new double[]{1.5});
+        BitOutput out = new BitOutput(16);
+        TimeSeriesCodec.lossless().encode(batch, out);
+        //the count and the first timestamp, label and value in full, then a single bit per
+        //sample for each of the timestamps, the labels and the values, except for the first
+        //delta of the timestamps, which is written with the 7 bit code
+        assertEquals(32 + 64 + 32 + 64 + 3 * 999 + 8, out.getBitCount());
+    }
+
+    @Test
+    public void emptyBatch(){
+        TimeSeriesBatch batch = new TimeSeriesBatch(3, 0);
+        assertEquals(0, roundTrip(TimeSeriesCodec.lossless(), batch).size());
+        assertEquals(0, roundTrip(TimeSeriesCodec.quantized(2), batch).size());
+    }
+
+    @Test
+    public void singleSample(){
+        TimeSeriesBatch batch = new TimeSeriesBatch(2, 1);
+        batch.add(-5, Integer.MIN_VALUE, new double[]{-1234.5678, Double.MAX_VALUE});
+        assertBatchEquals(batch, roundTrip(TimeSeriesCodec.lossless(), batch), 0);
+
+        batch = new TimeSeriesBatch(2, 1);
+        batch.add(Long.MAX_VALUE, Integer.MAX_VALUE, new double[]{-1234.5678, 0.001});
+        assertBatchEquals(batch, roundTrip(TimeSeriesCodec.quantized(4), batch), 0.00005);
+    }
+
+    @Test
+    public void specialValuesAreLossless(){
+        double[] values = {0.0, -0.0, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                Double.MIN_VALUE, -0.0, -0.0, Double.NaN, 0.0, Double.MAX_VALUE, -Double.MAX_VALUE, 1.0};
+        TimeSeriesBatch batch = new TimeSeriesBatch(1, values.length);
+        for (int i = 0; i < values.length; i++)
+            batch.add(i, -1, new double[]{values[i]});
+        TimeSeriesBatch decoded = roundTrip(TimeSeriesCodec.lossless(), batch);
+        assertBatchEquals(batch, decoded, 0);
+        assertTrue(Double.isNaN(decoded.getValue(2, 0)));
+        assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(decoded.getValue(1, 0)));
+    }
+
+    @Test
+    public void signOfZeroIsDroppedWhenQuantized(){
+        TimeSeriesBatch batch = new TimeSeriesBatch(1, 2);
+        batch.add(0, -1, new double[]{-0.0});
+        batch.add(1, -1, new double[]{-0.0004});
+        TimeSeriesBatch decoded = roundTrip(TimeSeriesCodec.quantized(3), batch);
+        assertEquals(0.0, decoded.getValue(0, 0), 0);
+        assertEquals(0.0, decoded.getValue(1, 0), 0);
+    }
+
+    @Test
+    public void equalTimestamps(){
+        TimeSeriesBatch batch = new TimeSeriesBatch(1, 8);
+        long[] timestamps = {100, 100, 100, 120, 120, 140, 140, 140};
+        for (int i = 0; i < timestamps.length; i++)
+            batch.add(timestamps[i], -1, new double[]{i});
+        assertBatchEquals(batch, roundTrip(TimeSeriesCodec.lossless(), batch), 0);
+    }
+
+    @Test
+    public void deltaOfDeltaRanges(){
+        //one delta of delta at each boundary of each prefix code, then outside all of them
+        long[] dods = {0, 1, -1, 64, -63, 65, -64, 256, -255, 257, -256, 2048, -2047, 2049, -2048,
+                1L << 40, -(1L << 40), Integer.MAX_VALUE, Integer.MIN_VALUE};
+        TimeSeriesBatch batch = new TimeSeriesBatch(1, dods.length + 2);
+        long t = 0, delta = 0;
+        batch.add(t, 0, new double[]{0});
+        for (int i = 0; i < dods.length; i++) {
+            delta += dods[i];
+            t += delta;
+            batch.add(t, (int) (i * dods[i]), new double[]{t / 1000.0});
+        }
+        assertBatchEquals(batch, roundTrip(TimeSeriesCodec.lossless(), batch), 0);
+        assertBatchEquals(batch, roundTrip(TimeSeriesCodec.quantized(3), batch), 0.0005);
+    }
+
+    @Test
+    public void deltasThatOverflowRoundTrip(){
+        TimeSeriesBatch batch = new TimeSeriesBatch(1, 4);
+        batch.add(Long.MIN_VALUE, Integer.MIN_VALUE, new double[]{0});
+        batch.add(Long.MAX_VALUE, Integer.MAX_VALUE, new double[]{1});
+        batch.add(Long.MIN_VALUE, Integer.MIN_VALUE, new double[]{2});
+        batch.add(0, 0, new double[]{3});
+        assertBatchEquals(batch, roundTrip(TimeSeriesCodec.lossless(), batch), 0);
+    }
+
+    @Test
+    public void codecsAreNamed(){
+        assertEquals(TimeSeriesCodec.LOSSLESS, TimeSeriesCodec.lossless().getName());
+        assertEquals("quantized-3", TimeSeriesCodec.quantized(3).getName());
+        assertEquals("quantized-3", TimeSeriesCodec.forName("quantized-3").getName());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownCodecIsRejected(){
+        TimeSeriesCodec.forName("quantized-x");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedDataIsRejected(){
+        byte[] data = TimeSeriesCodec.lossless().encode(regularBatch());
+        TimeSeriesCodec.lossless().decode(Arrays.copyOf(data, data.length / 2), 3);
+    }
+}
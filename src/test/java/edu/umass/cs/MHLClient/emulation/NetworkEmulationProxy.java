@@ -0,0 +1,402 @@
+package edu.umass.cs.MHLClient.emulation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A local TCP proxy that forwards connections to a target server while injecting the
+ * delay, bandwidth limits, stalls and abrupt resets described by a {@link NetworkProfile}.
+ * The proxy operates on raw bytes, so it is transparent to TLS. Point the client at the
+ * proxy using {@link edu.umass.cs.MHLClient.client.MobileIOClient#setServer(String, int)}.
+ * <br><br>
+ * The proxy only depends on the Java standard library, so it can be run on any machine,
+ * together with a {@link StandInServer}, without outside services.
+ *
+ * @author Sean Noran
+ *
+ * @see NetworkScenario
+ */
+public class NetworkEmulationProxy {
+
+    /** The size of the chunks in which data is forwarded. **/
+    private static final int CHUNK_SIZE = 1024;
+
+    /** The bytes a bottleneck queues beyond those in flight, like the buffer of a cellular link. **/
+    private static final long QUEUE_SIZE = 64 * 1024;
+
+    /** The time, in nanoseconds, by which a pipe that fell behind its bandwidth may catch up. **/
+    private static final long PACING_CREDIT = 10000000L;
+
+    /** The bytes queued per direction when the bandwidth is unlimited. **/
+    private static final long UNLIMITED_QUEUE_SIZE = 4 * 1024 * 1024;
+
+    /** The host name or address of the target server. **/
+    private final String targetHost;
+
+    /** The port of the target server. **/
+    private final int targetPort;
+
+    /** The emulated network conditions. **/
+    private volatile NetworkProfile profile;
+
+    /** Accepts client connections. **/
+    private ServerSocket serverSocket;
+
+    /** The links currently being forwarded. **/
+    private final ArrayList<Link> links = new ArrayList<>();
+
+    /** The time until which forwarding is stalled, see {@link System#nanoTime()}. **/
+    private volatile long stalledUntil;
+
+    /** The bytes forwarded from the clients to the server. **/
+    private volatile long bytesUpstream;
+
+    /** The bytes forwarded from the server to the clients. **/
+    private volatile long bytesDownstream;
+
+    /** The number of connections reset by the proxy. **/
+    private volatile int resets;
+
+    /** The time of the most recent reset, in milliseconds since the proxy started. **/
+    private volatile long lastResetTime = -1;
+
+    /** The time the proxy started, see {@link System#nanoTime()}. **/
+    private long startTime;
+
+    /** Indicates whether the proxy is running. **/
+    private volatile boolean running;
+
+    /**
+     * Instantiates a proxy.
+     * @param targetHost the host name or address of the target server.
+     * @param targetPort the port of the target server.
+     * @param profile the emulated network conditions.
+     */
+    public NetworkEmulationProxy(String targetHost, int targetPort, NetworkProfile profile){
+        this.targetHost = targetHost;
+        this.targetPort = targetPort;
+        this.profile = profile;
+    }
+
+    /**
+     * Starts accepting connections on the loopback interface.
+     * @param port the port to listen on, or 0 for any free port.
+     * @return the port the proxy listens on.
+     * @throws IOException if the port could not be bound.
+     */
+    public int start(int port) throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress("127.0.0.1", port));
+        startTime = System.nanoTime();
+        running = true;
+
+        Thread acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (running) {
+                    try {
+                        Socket client = serverSocket.accept();
+                        Socket server = new Socket(targetHost, targetPort);
+                        Link link = new Link(client, server);
+                        synchronized (links) {
+                            links.add(link);
+                        }
+                        link.start();
+                    } catch (IOException e) {
+                        if (running)
+                            e.printStackTrace();
+                    }
+                }
+            }
+        }, "proxy-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+
+        Thread impairmentThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long lastStall = System.nanoTime(), lastReset = System.nanoTime();
+                while (running) {
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    NetworkProfile p = profile;
+                    long now = System.nanoTime();
+                    if (p.getStallInterval() > 0 && now - lastStall >= p.getStallInterval() * 1000000L) {
+                        stall(p.getStallDuration());
+                        lastStall = now;
+                    }
+                    if (p.getResetInterval() > 0 && now - lastReset >= p.getResetInterval() * 1000000L) {
+                        resetConnections();
+                        lastReset = now;
+                    }
+                }
+            }
+        }, "proxy-impairments");
+        impairmentThread.setDaemon(true);
+        impairmentThread.start();
+
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops the proxy and closes all connections.
+     */
+    public void stop(){
+        running = false;
+        try {
+            if (serverSocket != null)
+                serverSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        synchronized (links) {
+            for (Link link : links)
+                link.close(false);
+            links.clear();
+        }
+    }
+
+    /**
+     * Changes the emulated network conditions, e.g. to emulate a handoff between networks.
+     * @param profile the new network conditions.
+     */
+    public void setProfile(NetworkProfile profile){
+        this.profile = profile;
+    }
+
+    /**
+     * Stops forwarding data in both directions for the given duration, without closing
+     * the connections, as happens to half-open connections after a cell handoff.
+     * @param duration the duration of the stall, in milliseconds.
+     */
+    public void stall(long duration){
+        stalledUntil = System.nanoTime() + duration * 1000000L;
+    }
+
+    /**
+     * Abruptly resets all forwarded connections by sending a TCP RST to both ends.
+     */
+    public void resetConnections(){
+        synchronized (links) {
+            if (links.isEmpty())
+                return;
+            for (Link link : links)
+                link.close(true);
+            links.clear();
+        }
+        resets++;
+        lastResetTime = getTime();
+    }
+
+    /**
+     * Gets the time since the proxy started.
+     * @return the time in milliseconds.
+     */
+    public long getTime(){
+        return (System.nanoTime() - startTime) / 1000000L;
+    }
+
+    public long getBytesUpstream(){
+        return bytesUpstream;
+    }
+
+    public long getBytesDownstream(){
+        return bytesDownstream;
+    }
+
+    public int getResets(){
+        return resets;
+    }
+
+    /**
+     * Gets the time of the most recent reset.
+     * @return the time in milliseconds since the proxy started, or -1 if no connection has been reset.
+     */
+    public long getLastResetTime(){
+        return lastResetTime;
+    }
+
+    /**
+     * A forwarded connection, consisting of a pipe in each direction.
+     */
+    private class Link {
+        private final Socket client, server;
+        private final Pipe upstream, downstream;
+
+        Link(Socket client, Socket server) throws IOException {
+            this.client = client;
+            this.server = server;
+            this.upstream = new Pipe(client.getInputStream(), server.getOutputStream(), true);
+            this.downstream = new Pipe(server.getInputStream(), client.getOutputStream(), false);
+        }
+
+        void start(){
+            upstream.start();
+            downstream.start();
+        }
+
+        void close(boolean reset){
+            close(client, reset);
+            close(server, reset);
+            upstream.stop();
+            downstream.stop();
+        }
+
+        private void close(Socket socket, boolean reset){
+            try {
+                if (reset)
+                    socket.setSoLinger(true, 0);
+                socket.close();
+            } catch (IOException e) {
+                //already closed
+            }
+        }
+    }
+
+    /**
+     * Forwards data in one direction. A reader thread timestamps incoming chunks, and a
+     * writer thread releases each chunk once its delay has elapsed, no stall is in progress
+     * and the bandwidth budget allows it. Like a real link, the pipe only holds the bytes in
+     * flight plus a bottleneck queue; once it is full, or while the link is stalled, the
+     * reader stops reading, so the sender's socket buffers fill up and its writes block.
+     */
+    private class Pipe {
+        private final InputStream in;
+        private final OutputStream out;
+        private final boolean upstream;
+        private final LinkedBlockingQueue<Chunk> chunks = new LinkedBlockingQueue<>();
+        private Thread reader, writer;
+
+        /** The bytes read but not yet written, guarded by this pipe. **/
+        private long queuedBytes;
+
+        Pipe(InputStream in, OutputStream out, boolean upstream){
+            this.in = in;
+            this.out = out;
+            this.upstream = upstream;
+        }
+
+        void start(){
+            reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    byte[] buffer = new byte[CHUNK_SIZE];
+                    try {
+                        int n;
+                        while (true) {
+                            sleepUntil(stalledUntil);
+                            synchronized (Pipe.this) {
+                                while (queuedBytes >= getCapacity())
+                                    Pipe.this.wait();
+                            }
+                            if ((n = in.read(buffer)) < 0)
+                                break;
+                            synchronized (Pipe.this) {
+                                queuedBytes += n;
+                            }
+                            long release = System.nanoTime() + profile.getLatency() * 1000000L;
+                            chunks.put(new Chunk(Arrays.copyOf(buffer, n), release));
+                        }
+                        chunks.put(Chunk.END);
+                    } catch (IOException | InterruptedException e) {
+                        //connection closed or reset
+                    }
+                }
+            }, "proxy-reader");
+            writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    long nextSend = 0;
+                    try {
+                        while (true) {
+                            Chunk chunk = chunks.take();
+                            if (chunk == Chunk.END) {
+                                out.close();
+                                return;
+                            }
+                            sleepUntil(chunk.release);
+                            sleepUntil(stalledUntil);
+                            out.write(chunk.data);
+                            out.flush();
+                            synchronized (Pipe.this) {
+                                queuedBytes -= chunk.data.length;
+                                Pipe.this.notifyAll();
+                            }
+                            if (upstream)
+                                bytesUpstream += chunk.data.length;
+                            else
+                                bytesDownstream += chunk.data.length;
+                            //pace in nanoseconds, since a chunk takes less than a millisecond at high bandwidths,
+                            //and keep a few milliseconds of credit to make up for the coarse granularity of sleeping
+                            long bandwidth = profile.getBandwidth();
+                            if (bandwidth > 0) {
+                                long now = System.nanoTime();
+                                nextSend = Math.max(nextSend, now - PACING_CREDIT) + chunk.data.length * 1000000000L / bandwidth;
+                                if (nextSend - now >= 1000000L)
+                                    sleepUntil(nextSend);
+                            }
+                        }
+                    } catch (SocketException e) {
+                        //connection reset
+                    } catch (IOException | InterruptedException e) {
+                        //connection closed
+                    }
+                }
+            }, "proxy-writer");
+            reader.setDaemon(true);
+            writer.setDaemon(true);
+            reader.start();
+            writer.start();
+        }
+
+        void stop(){
+            if (reader != null)
+                reader.interrupt();
+            if (writer != null)
+                writer.interrupt();
+        }
+
+        /**
+         * Gets the number of bytes the pipe holds before the reader stops reading: the
+         * bandwidth-delay product of the link plus the bottleneck queue.
+         * @return the capacity in bytes.
+         */
+        private long getCapacity(){
+            NetworkProfile p = profile;
+            if (p.getBandwidth() <= 0)
+                return UNLIMITED_QUEUE_SIZE;
+            return p.getBandwidth() * p.getLatency() / 1000 + QUEUE_SIZE;
+        }
+
+        private void sleepUntil(long time) throws InterruptedException {
+            long remaining;
+            while ((remaining = time - System.nanoTime()) > 0)
+                Thread.sleep(remaining / 1000000L, (int) (remaining % 1000000L));
+        }
+    }
+
+    /**
+     * A chunk of data and the time at which it may be forwarded.
+     */
+    private static class Chunk {
+        static final Chunk END = new Chunk(new byte[0], 0);
+        final byte[] data;
+        final long release;
+
+        Chunk(byte[] data, long release){
+            this.data = data;
+            this.release = release;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package edu.umass.cs.MHLClient.emulation;
+
+/**
+ * Describes the network conditions emulated by a {@link NetworkEmulationProxy}: a one-way
+ * delay, a bandwidth cap, periodic stalls during which no data is forwarded, and periodic
+ * abrupt connection resets. A value of 0 disables the corresponding impairment.
+ *
+ * @author Sean Noran
+ */
+public class NetworkProfile {
+
+    /** Forwards data without impairments. **/
+    public static final NetworkProfile UNLIMITED = new NetworkProfile("unlimited", 0, 0, 0, 0, 0);
+
+    /** A typical LTE connection. **/
+    public static final NetworkProfile LTE = new NetworkProfile("lte", 35, 1500000, 0, 0, 0);
+
+    /** A typical 3G connection. **/
+    public static final NetworkProfile THREE_G = new NetworkProfile("3g", 150, 100000, 0, 0, 0);
+
+    /** A typical 2G (EDGE) connection. **/
+    public static final NetworkProfile EDGE = new NetworkProfile("edge", 400, 20000, 0, 0, 0);
+
+    /** A 3G connection that stalls for 8 seconds every 30 seconds, as during cell handoffs. **/
+    public static final NetworkProfile STALLING_3G = new NetworkProfile("stalling-3g", 150, 100000, 30000, 8000, 0);
+
+    /** A 3G connection that is reset every minute. **/
+    public static final NetworkProfile RESETTING_3G = new NetworkProfile("resetting-3g", 150, 100000, 0, 0, 60000);
+
+    /** The name of the profile, used in scenario results. **/
+    private final String name;
+
+    /** The one-way delay, in milliseconds. **/
+    private final long latency;
+
+    /** The maximum throughput in each direction, in bytes per second. **/
+    private final long bandwidth;
+
+    /** The time between the starts of two stalls, in milliseconds. **/
+    private final long stallInterval;
+
+    /** The duration of each stall, in milliseconds. **/
+    private final long stallDuration;
+
+    /** The time between two connection resets, in milliseconds. **/
+    private final long resetInterval;
+
+    /**
+     * Instantiates a network profile.
+     * @param name the name of the profile.
+     * @param latency the one-way delay, in milliseconds.
+     * @param bandwidth the maximum throughput in each direction, in bytes per second.
+     * @param stallInterval the time between the starts of two stalls, in milliseconds.
+     * @param stallDuration the duration of each stall, in milliseconds.
+     * @param resetInterval the time between two abrupt connection resets, in milliseconds.
+     */
+    public NetworkProfile(String name, long latency, long bandwidth, long stallInterval, long stallDuration, long resetInterval){
+        this.name = name;
+        this.latency = latency;
+        this.bandwidth = bandwidth;
+        this.stallInterval = stallInterval;
+        this.stallDuration = stallDuration;
+        this.resetInterval = resetInterval;
+    }
+
+    public String getName(){
+        return name;
+    }
+
+    public long getLatency(){
+        return latency;
+    }
+
+    public long getBandwidth(){
+        return bandwidth;
+    }
+
+    public long getStallInterval(){
+        return stallInterval;
+    }
+
+    public long getStallDuration(){
+        return stallDuration;
+    }
+
+    public long getResetInterval(){
+        return resetInterval;
+    }
+
+    @Override
+    public String toString(){
+        return name;
+    }
+}
@@ -0,0 +1,108 @@
+package edu.umass.cs.MHLClient.emulation;
+
+import java.io.IOException;
+
+import javax.net.ssl.SSLContext;
+
+import edu.umass.cs.MHLClient.client.MobileIOClient;
+import edu.umass.cs.MHLClient.sensors.AccelerometerReading;
+
+/**
+ * Runs a {@link MobileIOClient} against a {@link StandInServer} through a
+ * {@link NetworkEmulationProxy}, streaming synthetic accelerometer readings at a fixed
+ * rate, and reports how the client coped with the emulated network conditions. This
+ * makes it possible to check changes to the client's buffering, batching and reconnection
+ * logic under repeatable conditions, e.g.
+ * <pre>
+ * NetworkScenario scenario = new NetworkScenario(client, sslContext, NetworkProfile.RESETTING_3G);
+ * ScenarioResult result = scenario.run(50, 5 * 60 * 1000);
+ * </pre>
+ * The client must have been configured with a trust store that accepts the certificate of
+ * the given SSL context, see {@link MobileIOClient#setTrustStore(java.security.KeyStore)}.
+ * Since the client depends on the Android runtime, scenarios run on the JVM under
+ * Robolectric, with the real-time clock of {@link RealtimeSystemClock}; the suite of
+ * scenarios is {@link NetworkScenarioTest}.
+ *
+ * @author Sean Noran
+ */
+public class NetworkScenario {
+
+    /** The client under test. **/
+    private final MobileIOClient client;
+
+    /** The context used by the stand-in server to accept TLS connections. **/
+    private final SSLContext sslContext;
+
+    /** The emulated network conditions. **/
+    private final NetworkProfile profile;
+
+    /**
+     * Instantiates a network scenario.
+     * @param client the client under test.
+     * @param sslContext the context used by the stand-in server to accept TLS connections.
+     * @param profile the emulated network conditions.
+     */
+    public NetworkScenario(MobileIOClient client, SSLContext sslContext, NetworkProfile profile){
+        this.client = client;
+        this.sslContext = sslContext;
+        this.profile = profile;
+    }
+
+    /**
+     * Runs the scenario. The client is connected at the start and disconnected at the end.
+     * @param rate the rate at which readings are generated, in Hz.
+     * @param duration the duration of the scenario, in milliseconds.
+     * @return the observed behavior of the client.
+     * @throws IOException if the server or proxy could not be started.
+     * @throws InterruptedException if the calling thread was interrupted.
+     */
+    public ScenarioResult run(int rate, long duration) throws IOException, InterruptedException {
+        StandInServer server = new StandInServer(sslContext);
+        NetworkEmulationProxy proxy = new NetworkEmulationProxy("127.0.0.1", server.start(0), profile);
+        int proxyPort = proxy.start(0);
+        client.setServer("127.0.0.1", proxyPort);
+        client.connect();
+
+        long offered = 0, dropped = 0;
+        int maxQueued = 0;
+        int lastResets = 0;
+        long resetTime = 0, maxRecoveryTime = 0;
+        boolean recovering = false;
+
+        long period = 1000000000L / rate;
+        long start = System.nanoTime(), next = start, end = start + duration * 1000000L;
+        while (next < end) {
+            long now = System.nanoTime();
+            if (next > now)
+                Thread.sleep((next - now) / 1000000L, (int) ((next - now) % 1000000L));
+            next += period;
+
+            float t = (next - start) / 1e9f;
+            AccelerometerReading reading = new AccelerometerReading("scenario", "MOBILE", "", System.currentTimeMillis(),
+                    (float) Math.sin(t), (float) Math.cos(t), 9.81f);
+            offered++;
+            if (!client.sendSensorReading(reading))
+                dropped++;
+            maxQueued = Math.max(maxQueued, client.getQueuedReadingCount());
+
+            //recovery time is measured from the reset until the server receives data again
+            if (proxy.getResets() != lastResets) {
+                lastResets = proxy.getResets();
+                resetTime = System.nanoTime();
+                recovering = true;
+            } else if (recovering && server.getLastLineTime() > resetTime) {
+                maxRecoveryTime = Math.max(maxRecoveryTime, (server.getLastLineTime() - resetTime) / 1000000L);
+                recovering = false;
+            }
+        }
+
+        client.disconnect();
+        proxy.stop();
+        server.stop();
+        if (recovering)
+            maxRecoveryTime = -1;
+
+        return new ScenarioResult(profile, duration, offered, dropped, maxQueued, server.getLinesReceived(),
+                server.getBytesReceived(), proxy.getResets(), server.getConnections(), maxRecoveryTime);
+    }
+}
@@ -0,0 +1,98 @@
+package edu.umass.cs.MHLClient.emulation;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import javax.net.ssl.SSLContext;
+
+import cs.umass.edu.MHLClient.BuildConfig;
+import edu.umass.cs.MHLClient.client.MobileIOClient;
+import edu.umass.cs.MHLClient.client.TestClients;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the client through the {@link NetworkEmulationProxy} under a range of network
+ * conditions, entirely on the local machine. Each scenario prints its {@link ScenarioResult}.
+ * Since the scenarios run in real time for over a minute, they are excluded from the
+ * default test task. Run the suite with
+ * <pre>
+ * ./gradlew testDebugUnitTest -Pscenarios --tests '*NetworkScenarioTest'
+ * </pre>
+ *
+ * @author Sean Noran
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21, shadows = RealtimeSystemClock.class)
+public class NetworkScenarioTest {
+
+    /** The rate at which readings are generated, in Hz. **/
+    private static final int RATE = 50;
+
+    /** Accepts TLS connections with the test certificate. **/
+    private SSLContext sslContext;
+
+    /** The client of the current scenario, with its own settings. **/
+    private MobileIOClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        sslContext = TestClients.createServerContext();
+        client = TestClients.create("0");
+    }
+
+    @After
+    public void tearDown() {
+        client.disconnect();
+    }
+
+    private ScenarioResult run(NetworkProfile profile, long duration) throws Exception {
+        ScenarioResult result = new NetworkScenario(client, sslContext, profile).run(RATE, duration);
+        System.out.println(result);
+        return result;
+    }
+
+    @Test
+    public void unlimitedLinkDeliversAllReadings() throws Exception {
+        ScenarioResult result = run(NetworkProfile.UNLIMITED, 10000);
+        assertEquals(0, result.getReadingsDropped());
+        assertEquals(1, result.getConnections());
+        //all but the readings still in flight when the client disconnects
+        assertTrue(result.getLinesReceived() >= result.getReadingsOffered() - RATE);
+    }
+
+    @Test
+    public void slowLinkKeepsUpWithTheSensors() throws Exception {
+        ScenarioResult result = run(NetworkProfile.EDGE, 15000);
+        assertEquals(0, result.getReadingsDropped());
+        assertEquals(1, result.getConnections());
+        assertTrue(result.getLinesReceived() >= result.getReadingsOffered() - 2 * RATE);
+    }
+
+    @Test
+    public void stallLongerThanTheReadTimeoutIsDetected() throws Exception {
+        client.setHeartbeatInterval(1000);
+        client.setReadTimeout(3000);
+        //a 6 second stall every 10 seconds, from which the connection does not recover on its own
+        NetworkProfile profile = new NetworkProfile("long-stalls", 150, 100000, 10000, 6000, 0);
+        ScenarioResult result = run(profile, 25000);
+        assertEquals(0, result.getReadingsDropped());
+        assertTrue(result.getConnections() >= 2);
+        assertTrue(result.getLinesReceived() > 0);
+    }
+
+    @Test
+    public void resetConnectionsAreRecovered() throws Exception {
+        NetworkProfile profile = new NetworkProfile("frequent-resets", 150, 100000, 0, 0, 8000);
+        ScenarioResult result = run(profile, 20000);
+        assertEquals(0, result.getReadingsDropped());
+        assertTrue(result.getResets() >= 2);
+        assertTrue(result.getConnections() > result.getResets());
+        assertTrue(result.getMaxRecoveryTime() >= 0 && result.getMaxRecoveryTime() < 10000);
+    }
+}
@@ -0,0 +1,36 @@
+package edu.umass.cs.MHLClient.emulation;
+
+import android.os.SystemClock;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+
+/**
+ * A Robolectric shadow of {@link SystemClock} that follows the real time. Robolectric's
+ * default clock only advances with its scheduler, which would freeze the heartbeats,
+ * timeouts and reconnection delays of a client running on its own threads.
+ *
+ * @author Sean Noran
+ */
+@Implements(SystemClock.class)
+public class RealtimeSystemClock {
+
+    @Implementation
+    public static long elapsedRealtime(){
+        return System.nanoTime() / 1000000L;
+    }
+
+    @Implementation
+    public static long uptimeMillis(){
+        return System.nanoTime() / 1000000L;
+    }
+
+    @Implementation
+    public static void sleep(long ms){
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
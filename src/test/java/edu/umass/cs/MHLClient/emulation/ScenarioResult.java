@@ -0,0 +1,113 @@
+package edu.umass.cs.MHLClient.emulation;
+
+import java.util.Locale;
+
+/**
+ * The outcome of a {@link NetworkScenario}.
+ *
+ * @author Sean Noran
+ */
+public class ScenarioResult {
+
+    /** The network conditions the scenario ran under. **/
+    private final NetworkProfile profile;
+
+    /** The duration of the scenario, in milliseconds. **/
+    private final long duration;
+
+    /** The number of readings passed to the client. **/
+    private final long readingsOffered;
+
+    /** The number of readings the client refused because its queue was full. **/
+    private final long readingsDropped;
+
+    /** The largest number of readings queued in the client at once. **/
+    private final int maxQueuedReadings;
+
+    /** The number of lines received by the server. **/
+    private final long linesReceived;
+
+    /** The number of bytes received by the server. **/
+    private final long bytesReceived;
+
+    /** The number of connections reset by the proxy. **/
+    private final int resets;
+
+    /** The number of connections accepted by the server. **/
+    private final int connections;
+
+    /** The longest time from a reset until the server received data again, in milliseconds. **/
+    private final long maxRecoveryTime;
+
+    ScenarioResult(NetworkProfile profile, long duration, long readingsOffered, long readingsDropped, int maxQueuedReadings,
+                   long linesReceived, long bytesReceived, int resets, int connections, long maxRecoveryTime){
+        this.profile = profile;
+        this.duration = duration;
+        this.readingsOffered = readingsOffered;
+        this.readingsDropped = readingsDropped;
+        this.maxQueuedReadings = maxQueuedReadings;
+        this.linesReceived = linesReceived;
+        this.bytesReceived = bytesReceived;
+        this.resets = resets;
+        this.connections = connections;
+        this.maxRecoveryTime = maxRecoveryTime;
+    }
+
+    public NetworkProfile getProfile(){
+        return profile;
+    }
+
+    public long getDuration(){
+        return duration;
+    }
+
+    public long getReadingsOffered(){
+        return readingsOffered;
+    }
+
+    public long getReadingsDropped(){
+        return readingsDropped;
+    }
+
+    public int getMaxQueuedReadings(){
+        return maxQueuedReadings;
+    }
+
+    public long getLinesReceived(){
+        return linesReceived;
+    }
+
+    public long getBytesReceived(){
+        return bytesReceived;
+    }
+
+    public int getResets(){
+        return resets;
+    }
+
+    public int getConnections(){
+        return connections;
+    }
+
+    /**
+     * Gets the longest time from a reset until the server received data again.
+     * @return the time in milliseconds, or -1 if the client did not recover from a reset.
+     */
+    public long getMaxRecoveryTime(){
+        return maxRecoveryTime;
+    }
+
+    /**
+     * Gets the throughput observed by the server.
+     * @return the throughput in bytes per second.
+     */
+    public double getThroughput(){
+        return duration == 0 ? 0 : bytesReceived * 1000.0 / duration;
+    }
+
+    @Override
+    public String toString(){
+        return String.format(Locale.US, "%s: offered=%d dropped=%d maxQueued=%d received=%d throughput=%.0fB/s resets=%d connections=%d maxRecovery=%dms",
+                profile, readingsOffered, readingsDropped, maxQueuedReadings, linesReceived, getThroughput(), resets, connections, maxRecoveryTime);
+    }
+}
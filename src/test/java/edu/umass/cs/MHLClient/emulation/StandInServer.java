@@ -0,0 +1,290 @@
+package edu.umass.cs.MHLClient.emulation;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.net.ssl.SSLContext;
+
+/**
+ * A minimal stand-in for the data collection server, for testing the client without
+ * outside services. It performs the ID/ACK handshake, accepts compact sessions if
+ * enabled, echoes heartbeats and counts the lines it receives, which it can also record.
+ * It does not interpret the sensor readings themselves, but can send messages to the
+ * client of the most recent session.
+ * <br><br>
+ * Since the client only connects over TLS, the server must be given an {@link SSLContext}
+ * whose certificate is trusted by the key store passed to
+ * {@link edu.umass.cs.MHLClient.client.MobileIOClient#setTrustStore(java.security.KeyStore)}.
+ *
+ * @author Sean Noran
+ */
+public class StandInServer {
+
+    /** The compact session request, see {@link edu.umass.cs.MHLClient.client.MobileIOClient#setCompactSessionEnabled(boolean)}. **/
+    private static final String COMPACT_SESSION_REQUEST = "SESSION,COMPACT";
+
+    /** The sensor type of heartbeats, which are echoed back to the client. **/
+    private static final String HEARTBEAT_TYPE = "\"SENSOR_HEARTBEAT\"";
+
+    /** Creates TLS server sockets, or null for plain TCP. **/
+    private final SSLContext sslContext;
+
+    /** Indicates whether compact sessions are accepted. **/
+    private volatile boolean compactSessionsAccepted = true;
+
+    /** Indicates whether compact session requests are answered at all. **/
+    private volatile boolean sessionRequestsAnswered = true;
+
+    /** The number of compact session requests received. **/
+    private volatile int sessionRequests;
+
+    /** Indicates whether heartbeats are echoed. **/
+    private volatile boolean heartbeatsEchoed = true;
+
+    /** Accepts client connections. **/
+    private ServerSocket serverSocket;
+
+    /** Indicates whether the server is running. **/
+    private volatile boolean running;
+
+    /** The number of lines received after the handshake, including heartbeats. **/
+    private volatile long linesReceived;
+
+    /** The number of bytes received after the handshake. **/
+    private volatile long bytesReceived;
+
+    /** The number of connections accepted. **/
+    private volatile int connections;
+
+    /** The number of connections on which the client identified itself, excluding probes. **/
+    private volatile int sessions;
+
+    /** The time the last line was received, see {@link System#nanoTime()}. **/
+    private volatile long lastLineTime;
+
+    /** The last line received after the handshake, excluding session requests. **/
+    private volatile String lastLine;
+
+    /** The lines received after the handshake, excluding session requests, if recorded. **/
+    private final List<String> lines = Collections.synchronizedList(new ArrayList<String>());
+
+    /** Indicates whether the lines received are recorded. **/
+    private volatile boolean linesRecorded;
+
+    /** Writes to the client of the most recent session, guarded by itself. **/
+    private volatile BufferedWriter sessionOutput;
+
+    /**
+     * Instantiates a stand-in server.
+     * @param sslContext the context used to create TLS server sockets, or null for plain TCP.
+     */
+    public StandInServer(SSLContext sslContext){
+        this.sslContext = sslContext;
+    }
+
+    /**
+     * Starts accepting connections on the loopback interface.
+     * @param port the port to listen on, or 0 for any free port.
+     * @return the port the server listens on.
+     * @throws IOException if the port could not be bound.
+     */
+    public int start(int port) throws IOException {
+        serverSocket = sslContext == null ? new ServerSocket() : sslContext.getServerSocketFactory().createServerSocket();
+        serverSocket.bind(new InetSocketAddress("127.0.0.1", port));
+        running = true;
+        Thread acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (running) {
+                    try {
+                        final Socket socket = serverSocket.accept();
+                        connections++;
+                        Thread sessionThread = new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                serve(socket);
+                            }
+                        }, "stand-in-session");
+                        sessionThread.setDaemon(true);
+                        sessionThread.start();
+                    } catch (IOException e) {
+                        if (running)
+                            e.printStackTrace();
+                    }
+                }
+            }
+        }, "stand-in-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops accepting connections.
+     */
+    public void stop(){
+        running = false;
+        try {
+            if (serverSocket != null)
+                serverSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Handles a single client connection until it is closed.
+     * @param socket the client connection.
+     */
+    private void serve(Socket socket){
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+            out.write("ID\n");
+            out.flush();
+
+            String id = in.readLine();
+            if (id == null || !id.startsWith("ID,"))
+                return;
+            sessionOutput = out;
+            sessions++;
+            write(out, "ACK," + id.substring(3));
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.equals(COMPACT_SESSION_REQUEST)) {
+                    sessionRequests++;
+                    if (sessionRequestsAnswered)
+                        write(out, compactSessionsAccepted ? COMPACT_SESSION_REQUEST : "SESSION,FULL");
+                    continue;
+                }
+                linesReceived++;
+                bytesReceived += line.length() + 1;
+                lastLineTime = System.nanoTime();
+                lastLine = line;
+                if (linesRecorded)
+                    lines.add(line);
+                if (heartbeatsEchoed && line.contains(HEARTBEAT_TYPE))
+                    write(out, line);
+            }
+        } catch (IOException e) {
+            //connection closed or reset
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                //already closed
+            }
+        }
+    }
+
+    /**
+     * Writes a line to a client.
+     * @param out the output of the client's session.
+     * @param line the line, excluding the line terminator.
+     * @throws IOException if the line could not be written.
+     */
+    private static void write(BufferedWriter out, String line) throws IOException {
+        synchronized (out) {
+            out.write(line + "\n");
+            out.flush();
+        }
+    }
+
+    /**
+     * Sends a message to the client of the most recent session, e.g. a control message.
+     * @param line the message, excluding the line terminator.
+     * @throws IOException if no client has connected or the message could not be written.
+     */
+    public void send(String line) throws IOException {
+        BufferedWriter out = sessionOutput;
+        if (out == null)
+            throw new IOException("No client has connected.");
+        write(out, line);
+    }
+
+    /**
+     * Sets whether the lines received are recorded, see {@link #getLines()}.
+     * @param linesRecorded true to record the lines received from now on.
+     */
+    public void setLinesRecorded(boolean linesRecorded){
+        this.linesRecorded = linesRecorded;
+    }
+
+    /**
+     * Gets the lines recorded so far.
+     * @return a copy of the recorded lines.
+     */
+    public List<String> getLines(){
+        synchronized (lines) {
+            return new ArrayList<>(lines);
+        }
+    }
+
+    public void setCompactSessionsAccepted(boolean compactSessionsAccepted){
+        this.compactSessionsAccepted = compactSessionsAccepted;
+    }
+
+    /**
+     * Sets whether compact session requests are answered. Leaving them unanswered emulates
+     * a server that predates compact sessions.
+     * @param sessionRequestsAnswered true to answer requests, false to ignore them.
+     */
+    public void setSessionRequestsAnswered(boolean sessionRequestsAnswered){
+        this.sessionRequestsAnswered = sessionRequestsAnswered;
+    }
+
+    public int getSessionRequests(){
+        return sessionRequests;
+    }
+
+    /**
+     * Sets whether heartbeats are echoed. Disabling the echo emulates a server that
+     * silently stopped responding.
+     * @param heartbeatsEchoed true to echo heartbeats, false to ignore them.
+     */
+    public void setHeartbeatsEchoed(boolean heartbeatsEchoed){
+        this.heartbeatsEchoed = heartbeatsEchoed;
+    }
+
+    public long getLinesReceived(){
+        return linesReceived;
+    }
+
+    public long getBytesReceived(){
+        return bytesReceived;
+    }
+
+    public int getConnections(){
+        return connections;
+    }
+
+    public int getSessions(){
+        return sessions;
+    }
+
+    /**
+     * Gets the time the last line was received.
+     * @return the time in nanoseconds, see {@link System#nanoTime()}, or 0 if no line was received.
+     */
+    public long getLastLineTime(){
+        return lastLineTime;
+    }
+
+    /**
+     * Gets the last line received after the handshake.
+     * @return the line, or null if no line was received.
+     */
+    public String getLastLine(){
+        return lastLine;
+    }
+}
@@ -0,0 +1,333 @@
+package edu.umass.cs.MHLClient.emulation;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import javax.net.ssl.SSLContext;
+
+/**
+ * A minimal stand-in for the server side of {@link edu.umass.cs.MHLClient.client.BulkUpload
+ * bulk uploads}. It performs the ID/ACK handshake, stores the chunks of each upload in
+ * memory after checking their checksums, and resumes uploads after the last chunk stored.
+ * To exercise the client's recovery, it can drop the connection after a number of chunks,
+ * report a chunk as corrupted once, and delay its acknowledgements.
+ *
+ * @author Sean Noran
+ */
+public class StandInUploadServer {
+
+    private final SSLContext sslContext;
+
+    /** The received data of each upload, by upload ID, guarded by itself. **/
+    private final Map<String, ByteArrayOutputStream> uploads = new HashMap<>();
+
+    /** The chunk indices sent in RESUME responses, in order. **/
+    private final List<Integer> resumeIndices = Collections.synchronizedList(new ArrayList<Integer>());
+
+    /** Sends delayed acknowledgements. **/
+    private final ScheduledExecutorService acknowledger = Executors.newSingleThreadScheduledExecutor();
+
+    private ServerSocket serverSocket;
+
+    private volatile boolean running;
+
+    /** The number of chunks after which the next connection is dropped, 0 to keep it. **/
+    private volatile int dropAfter;
+
+    /** The index of the chunk reported as corrupted the next time it is received, -1 for none. **/
+    private volatile int corruptChunk = -1;
+
+    /** The delay of each acknowledgement, in milliseconds. **/
+    private volatile long ackDelay;
+
+    /** The number of chunks received, including those received again. **/
+    private volatile int chunksReceived;
+
+    /** The number of chunks rejected as corrupted. **/
+    private volatile int naks;
+
+    /** The number of chunks received but not yet acknowledged on the current connection. **/
+    private volatile int unacknowledged;
+
+    /** The largest number of chunks received ahead of their acknowledgements. **/
+    private volatile int maxUnacknowledged;
+
+    /** Describes the first protocol violation by the client, null if there was none. **/
+    private volatile String violation;
+
+    public StandInUploadServer(SSLContext sslContext){
+        this.sslContext = sslContext;
+    }
+
+    /**
+     * Starts accepting connections on the loopback interface.
+     * @return the port the server listens on.
+     * @throws IOException if no port could be bound.
+     */
+    public int start() throws IOException {
+        serverSocket = sslContext.getServerSocketFactory().createServerSocket();
+        serverSocket.bind(new InetSocketAddress("127.0.0.1", 0));
+        running = true;
+        Thread acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (running) {
+                    try {
+                        final Socket socket = serverSocket.accept();
+                        Thread sessionThread = new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                serve(socket);
+                            }
+                        }, "stand-in-upload");
+                        sessionThread.setDaemon(true);
+                        sessionThread.start();
+                    } catch (IOException e) {
+                        if (running)
+                            e.printStackTrace();
+                    }
+                }
+            }
+        }, "stand-in-upload-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        return serverSocket.getLocalPort();
+    }
+
+    public void stop(){
+        running = false;
+        acknowledger.shutdownNow();
+        try {
+            if (serverSocket != null)
+                serverSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Handles a single upload connection until it is closed or dropped.
+     * @param socket the client connection.
+     */
+    private void serve(final Socket socket){
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            final OutputStream out = socket.getOutputStream();
+            write(out, "ID");
+            String id = readLine(in);
+            if (id == null || !id.startsWith("ID,"))
+                return;
+            write(out, "ACK," + id.substring(3));
+
+            String[] upload = split(readLine(in));
+            if (upload.length != 4 || !upload[0].equals("UPLOAD"))
+                throw new IOException("Expected UPLOAD");
+            String uploadID = upload[1];
+            ByteArrayOutputStream data;
+            synchronized (uploads) {
+                data = uploads.get(uploadID);
+                if (data == null) {
+                    data = new ByteArrayOutputStream();
+                    uploads.put(uploadID, data);
+                }
+            }
+            int chunkSize = Integer.parseInt(upload[3]);
+            //only the last chunk of a file is partial
+            int stored = (data.size() + chunkSize - 1) / chunkSize;
+            resumeIndices.add(stored);
+            unacknowledged = 0;
+            write(out, "RESUME," + uploadID + "," + stored);
+
+            int received = 0;
+            String line;
+            while ((line = readLine(in)) != null) {
+                String[] fields = split(line);
+                if (fields[0].equals("DONE")) {
+                    //after the acknowledgements still pending
+                    acknowledge(out, "COMPLETE," + uploadID);
+                    continue;
+                }
+                if (fields.length != 5 || !fields[0].equals("CHUNK"))
+                    throw new IOException("Expected CHUNK: " + line);
+                int index = Integer.parseInt(fields[1]);
+                int length = Integer.parseInt(fields[2]);
+                byte[] packed = new byte[Integer.parseInt(fields[3])];
+                in.readFully(packed);
+                chunksReceived++;
+                maxUnacknowledged = Math.max(maxUnacknowledged, ++unacknowledged);
+                if (index != stored && violation == null)
+                    violation = "Chunk " + index + " received when " + stored + " was expected.";
+
+                if (index == corruptChunk) {
+                    corruptChunk = -1;
+                    naks++;
+                    write(out, "NAK," + index);
+                    return;
+                }
+                byte[] chunk = inflate(packed, length);
+                CRC32 crc = new CRC32();
+                crc.update(chunk);
+                if (crc.getValue() != Long.parseLong(fields[4])) {
+                    naks++;
+                    if (violation == null)
+                        violation = "Chunk " + index + " does not match its checksum.";
+                    write(out, "NAK," + index);
+                    return;
+                }
+                data.write(chunk);
+                stored++;
+
+                if (dropAfter > 0 && ++received == dropAfter) {
+                    dropAfter = 0;
+                    return;
+                }
+                acknowledge(out, "ACK," + index);
+            }
+        } catch (IOException | DataFormatException e) {
+            //connection closed or reset
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                //already closed
+            }
+        }
+    }
+
+    /**
+     * Sends a response after the acknowledgement delay, in order with the acknowledgements.
+     * @param out the output of the connection.
+     * @param line the response.
+     */
+    private void acknowledge(final OutputStream out, final String line){
+        acknowledger.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (line.startsWith("ACK,"))
+                    unacknowledged--;
+                try {
+                    write(out, line);
+                } catch (IOException e) {
+                    //connection closed
+                }
+            }
+        }, ackDelay, TimeUnit.MILLISECONDS);
+    }
+
+    private static byte[] inflate(byte[] packed, int length) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(packed);
+            byte[] chunk = new byte[length];
+            int inflated = 0;
+            while (inflated < length && !inflater.finished())
+                inflated += inflater.inflate(chunk, inflated, length - inflated);
+            if (inflated != length || !inflater.finished())
+                throw new DataFormatException("Chunk does not inflate to " + length + " bytes.");
+            return chunk;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static String[] split(String line){
+        return line == null ? new String[0] : line.split(",");
+    }
+
+    private static void write(OutputStream out, String line) throws IOException {
+        synchronized (out) {
+            out.write((line + "\n").getBytes("UTF-8"));
+            out.flush();
+        }
+    }
+
+    /** Reads a line of ASCII text without reading ahead into the binary data after it. **/
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1 && c != '\n')
+            sb.append((char) c);
+        return c == -1 && sb.length() == 0 ? null : sb.toString();
+    }
+
+    /**
+     * Drops the next connection after the given number of chunks have been stored, without
+     * acknowledging the last of them.
+     * @param chunks the number of chunks.
+     */
+    public void setDropAfter(int chunks){
+        this.dropAfter = chunks;
+    }
+
+    /**
+     * Reports the chunk with the given index as corrupted the next time it is received.
+     * @param index the index of the chunk.
+     */
+    public void setCorruptChunk(int index){
+        this.corruptChunk = index;
+    }
+
+    /**
+     * Sets the delay of each acknowledgement, which lets the client fill its window.
+     * @param ackDelay the delay in milliseconds.
+     */
+    public void setAckDelay(long ackDelay){
+        this.ackDelay = ackDelay;
+    }
+
+    /**
+     * Gets the data received for an upload.
+     * @param uploadID the ID of the upload.
+     * @return the data stored so far, or null if the upload is unknown.
+     */
+    public byte[] getData(String uploadID){
+        synchronized (uploads) {
+            ByteArrayOutputStream data = uploads.get(uploadID);
+            return data == null ? null : data.toByteArray();
+        }
+    }
+
+    public List<Integer> getResumeIndices(){
+        synchronized (resumeIndices) {
+            return new ArrayList<>(resumeIndices);
+        }
+    }
+
+    public int getChunksReceived(){
+        return chunksReceived;
+    }
+
+    public int getNaks(){
+        return naks;
+    }
+
+    public int getMaxUnacknowledged(){
+        return maxUnacknowledged;
+    }
+
+    /**
+     * Gets the first violation of the protocol by the client.
+     * @return a description of the violation, or null if there was none.
+     */
+    public String getViolation(){
+        return violation;
+    }
+}
@@ -0,0 +1,199 @@
+package edu.umass.cs.MHLClient.processing;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+
+import cs.umass.edu.MHLClient.BuildConfig;
+import edu.umass.cs.MHLClient.sensors.AccelerometerReading;
+import edu.umass.cs.MHLClient.sensors.AudioBufferReading;
+import edu.umass.cs.MHLClient.sensors.ChannelReading;
+import edu.umass.cs.MHLClient.sensors.SensorReading;
+import edu.umass.cs.MHLClient.sensors.SummaryReading;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Feeds the {@link EventCapture} with an accelerometer stream sampled every 10 ms and
+ * checks which readings are forwarded around triggers and how the stream is summarized
+ * in between.
+ *
+ * @author Sean Noran
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class EventCaptureTest {
+
+    private static final long PRE_TRIGGER_WINDOW = 500;
+
+    private static final long POST_TRIGGER_WINDOW = 1000;
+
+    /** The magnitude at which the trigger fires, well above gravity. **/
+    private static final float THRESHOLD = 20f;
+
+    /** Collects the forwarded readings and summaries. **/
+    private final ArrayList<SensorReading> forwarded = new ArrayList<>();
+
+    private final SensorReadingListener listener = new SensorReadingListener() {
+        @Override
+        public void onSensorReading(SensorReading reading) {
+            forwarded.add(reading);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        forwarded.clear();
+    }
+
+    private static EventCapture createCapture(long summaryInterval, SensorReadingListener listener){
+        EventCapture capture = new EventCapture(256, PRE_TRIGGER_WINDOW, POST_TRIGGER_WINDOW, summaryInterval, listener);
+        capture.addTrigger(new MagnitudeTrigger("SENSOR_ACCEL", THRESHOLD));
+        return capture;
+    }
+
+    private static AccelerometerReading accel(long t, boolean spike){
+        return new AccelerometerReading("0", "MOBILE", "phone", t, (int) (t / 1000), 0f, t % 100 / 100f, spike ? 30f : 9.81f);
+    }
+
+    /** Adds readings every 10 ms from start to end, with spikes at the given times. **/
+    private static void feed(EventCapture capture, long start, long end, long... spikes){
+        for (long t = start; t <= end; t += 10) {
+            boolean spike = false;
+            for (long s : spikes)
+                spike |= s == t;
+            capture.add(accel(t, spike));
+        }
+    }
+
+    /** Checks that the forwarded readings are the buffered samples, then the raw readings, of a window. **/
+    private void assertWindow(long flushedFrom, long trigger, long rawUntil){
+        long expected = flushedFrom;
+        for (int i = 0; i < forwarded.size(); i++, expected += 10) {
+            SensorReading reading = forwarded.get(i);
+            assertEquals(expected, reading.getTimestamp());
+            if (expected < trigger) {
+                assertTrue(reading instanceof ChannelReading);
+                assertEquals("SENSOR_ACCEL", reading.getSensorType());
+                assertEquals(expected / 1000, reading.getLabel());
+                assertEquals(expected % 100 / 100f, ((ChannelReading) reading).getValue(1), 0f);
+            } else {
+                assertTrue(reading instanceof AccelerometerReading);
+            }
+        }
+        assertEquals(rawUntil + 10, expected);
+    }
+
+    @Test
+    public void testForwardsPreAndPostTriggerWindows() {
+        EventCapture capture = createCapture(0, listener);
+        feed(capture, 0, 5000, 2000);
+        assertEquals(1, capture.getCaptureCount());
+        assertFalse(capture.isCapturing());
+        assertWindow(2000 - PRE_TRIGGER_WINDOW, 2000, 2000 + POST_TRIGGER_WINDOW);
+    }
+
+    @Test
+    public void testTriggerDuringCaptureExtendsIt() {
+        EventCapture capture = createCapture(0, listener);
+        feed(capture, 0, 5000, 2000, 2800);
+        assertEquals(1, capture.getCaptureCount());
+        assertWindow(2000 - PRE_TRIGGER_WINDOW, 2000, 2800 + POST_TRIGGER_WINDOW);
+    }
+
+    @Test
+    public void testSamplesAreNotSentTwice() {
+        EventCapture capture = createCapture(0, listener);
+        //the pre-trigger window of the second capture overlaps the end of the first
+        feed(capture, 0, 6000, 2000, 3300);
+        assertEquals(2, capture.getCaptureCount());
+        //the first capture ends at 3000, only the samples after it are flushed for the second
+        int first = (int) (PRE_TRIGGER_WINDOW + POST_TRIGGER_WINDOW) / 10 + 1;
+        ArrayList<SensorReading> second = new ArrayList<>(forwarded.subList(first, forwarded.size()));
+        forwarded.subList(first, forwarded.size()).clear();
+        assertWindow(2000 - PRE_TRIGGER_WINDOW, 2000, 2000 + POST_TRIGGER_WINDOW);
+        forwarded.clear();
+        forwarded.addAll(second);
+        assertWindow(2000 + POST_TRIGGER_WINDOW + 10, 3300, 3300 + POST_TRIGGER_WINDOW);
+    }
+
+    @Test
+    public void testManualTrigger() {
+        EventCapture capture = createCapture(0, listener);
+        capture.trigger();
+        assertFalse(capture.isCapturing());
+        feed(capture, 0, 2000);
+        assertEquals(0, forwarded.size());
+        capture.trigger();
+        assertTrue(capture.isCapturing());
+        feed(capture, 2010, 5000);
+        //the buffered sample at the trigger time is sent as well
+        assertEquals(2000 - PRE_TRIGGER_WINDOW, forwarded.get(0).getTimestamp());
+        assertTrue(forwarded.get(50) instanceof ChannelReading);
+        assertEquals(2000, forwarded.get(50).getTimestamp());
+        assertTrue(forwarded.get(51) instanceof AccelerometerReading);
+        assertEquals(2000 + POST_TRIGGER_WINDOW, forwarded.get(forwarded.size() - 1).getTimestamp());
+    }
+
+    @Test
+    public void testSummariesOutsideCaptures() throws JSONException {
+        EventCapture capture = createCapture(1000, listener);
+        feed(capture, 0, 2990);
+        //the third interval has not passed yet
+        assertEquals(2, forwarded.size());
+        for (int i = 0; i < 2; i++) {
+            SensorReading reading = forwarded.get(i);
+            assertTrue(reading instanceof SummaryReading);
+            assertEquals(1000 * i, reading.getTimestamp());
+            JSONObject data = new JSONObject(reading.toJSONString()).getJSONObject("data");
+            assertEquals("SENSOR_ACCEL", data.getString("sensor"));
+            assertEquals("x,y,z", data.getString("channels"));
+            assertEquals(1000, data.getLong("duration"));
+            assertEquals(100, data.getInt("n"));
+            //y runs from 0 to 0.9 ten times per interval
+            assertEquals(0.45, data.getJSONArray("mean").getDouble(1), 1e-5);
+            assertEquals(0, data.getJSONArray("min").getDouble(1), 1e-5);
+            assertEquals(0.9, data.getJSONArray("max").getDouble(1), 1e-5);
+            assertEquals(9.81, data.getJSONArray("mean").getDouble(2), 1e-5);
+        }
+    }
+
+    @Test
+    public void testSummariesRestartAfterCapture() throws JSONException {
+        EventCapture capture = createCapture(1000, listener);
+        feed(capture, 0, 5000, 2500);
+        ArrayList<SummaryReading> summaries = new ArrayList<>();
+        for (SensorReading reading : forwarded) {
+            if (reading instanceof SummaryReading)
+                summaries.add((SummaryReading) reading);
+        }
+        //the interval interrupted by the capture is discarded, summaries restart after it
+        assertEquals(3, summaries.size());
+        assertEquals(0, summaries.get(0).getTimestamp());
+        assertEquals(1000, summaries.get(1).getTimestamp());
+        assertEquals(3510, summaries.get(2).getTimestamp());
+        JSONObject data = new JSONObject(summaries.get(2).toJSONString()).getJSONObject("data");
+        assertEquals(100, data.getInt("n"));
+    }
+
+    @Test
+    public void testReadingsWithoutChannelsAreOnlyForwardedDuringCaptures() {
+        EventCapture capture = createCapture(1000, listener);
+        AudioBufferReading before = new AudioBufferReading("0", "MOBILE", "phone", 1000, new short[8]);
+        capture.add(before);
+        assertEquals(0, forwarded.size());
+        feed(capture, 1000, 2000, 2000);
+        AudioBufferReading during = new AudioBufferReading("0", "MOBILE", "phone", 2000, new short[8]);
+        capture.add(during);
+        assertSame(during, forwarded.get(forwarded.size() - 1));
+    }
+}
@@ -0,0 +1,199 @@
+package edu.umass.cs.MHLClient.processing;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import edu.umass.cs.MHLClient.sensors.AccelerometerReading;
+import edu.umass.cs.MHLClient.sensors.GyroscopeReading;
+import edu.umass.cs.MHLClient.sensors.IMUReading;
+import edu.umass.cs.MHLClient.sensors.SensorReading;
+import edu.umass.cs.MHLClient.sensors.SensorReadingEncoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Feeds the {@link IMUResampler} with synthetic accelerometer and gyroscope streams whose
+ * values are linear in time, so that every interpolated value can be checked exactly, and
+ * checks that samples that cannot be fused are passed on individually.
+ *
+ * @author Sean Noran
+ */
+public class IMUResamplerTest {
+
+    /** Collects the combined readings. **/
+    private final ArrayList<IMUReading> combined = new ArrayList<>();
+
+    /** Collects the readings passed on individually. **/
+    private final ArrayList<SensorReading> individual = new ArrayList<>();
+
+    private final SensorReadingListener listener = new SensorReadingListener() {
+        @Override
+        public void onSensorReading(SensorReading reading) {
+            if (reading instanceof IMUReading)
+                combined.add((IMUReading) reading);
+            else
+                individual.add(reading);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        combined.clear();
+        individual.clear();
+    }
+
+    private static AccelerometerReading accel(long t){
+        return new AccelerometerReading("0", "MOBILE", "phone", t, t, 2f * t, -t);
+    }
+
+    private static GyroscopeReading gyro(long t){
+        return new GyroscopeReading("0", "MOBILE", "phone", t, 3f * t, 1, -2f * t);
+    }
+
+    /** Checks that a combined reading holds the values of both linear streams at its time. **/
+    private static void assertInterpolated(IMUReading reading){
+        double[] values = new double[6];
+        SensorReadingEncoder.forClass(IMUReading.class).readChannels(reading, values);
+        double t = reading.getTimestamp();
+        double[] expected = {t, 2 * t, -t, 3 * t, 1, -2 * t};
+        for (int i = 0; i < 6; i++)
+            assertEquals("channel " + i + " at " + reading.getTimestamp(), expected[i], values[i], 1e-3 * t);
+    }
+
+    @Test
+    public void testInterpolatesOntoCommonTimeline() {
+        IMUResampler resampler = new IMUResampler(100, listener);
+        //both streams jittered and offset against each other and the 10 ms ticks
+        for (int i = 0; i < 100; i++) {
+            assertTrue(resampler.add(accel(1000 + 10 * i + (i % 3))));
+            assertTrue(resampler.add(gyro(1004 + 10 * i - (i % 2))));
+        }
+        assertEquals(99, combined.size());
+        for (int i = 0; i < combined.size(); i++) {
+            assertEquals(1010 + 10 * i, combined.get(i).getTimestamp());
+            assertInterpolated(combined.get(i));
+        }
+        //the first accelerometer reading arrives before any gyroscope reading
+        assertEquals(1, individual.size());
+        assertEquals(1000, individual.get(0).getTimestamp());
+    }
+
+    @Test
+    public void testGapIsNotInterpolated() {
+        IMUResampler resampler = new IMUResampler(100, listener);
+        for (long t = 1000; t <= 3000; t += 10) {
+            resampler.add(accel(t));
+            //the gyroscope drops out for longer than the largest gap, but not the partner timeout
+            if (t <= 1500 || t >= 1500 + 2 * IMUResampler.MAX_GAP)
+                resampler.add(gyro(t));
+        }
+        long lastBefore = 0, firstAfter = Long.MAX_VALUE;
+        for (IMUReading reading : combined) {
+            assertInterpolated(reading);
+            long t = reading.getTimestamp();
+            assertTrue("interpolated across the gap at " + t, t <= 1500 || t >= 1500 + 2 * IMUResampler.MAX_GAP);
+            if (t <= 1500)
+                lastBefore = Math.max(lastBefore, t);
+            else
+                firstAfter = Math.min(firstAfter, t);
+        }
+        assertEquals(3000, combined.get(combined.size() - 1).getTimestamp());
+        //the accelerometer samples in the gap are passed on, each exactly once
+        long expected = lastBefore + 10;
+        for (SensorReading reading : individual) {
+            if (reading.getTimestamp() <= 1000)
+                continue;
+            assertTrue(reading instanceof AccelerometerReading || reading.getTimestamp() < firstAfter);
+            if (reading instanceof AccelerometerReading) {
+                assertEquals(expected, reading.getTimestamp());
+                expected += 10;
+            }
+        }
+        assertEquals(firstAfter, expected);
+    }
+
+    @Test
+    public void testSingleStreamIsPassedOn() {
+        IMUResampler resampler = new IMUResampler(50, listener);
+        for (int i = 0; i < 20; i++) {
+            AccelerometerReading reading = accel(1000 + 20 * i);
+            assertTrue(resampler.add(reading));
+            assertSame(reading, individual.get(i));
+        }
+        assertEquals(0, combined.size());
+        assertEquals(20, individual.size());
+    }
+
+    @Test
+    public void testStoppedPartnerFallsBackToIndividualReadings() {
+        IMUResampler resampler = new IMUResampler(100, listener);
+        for (long t = 1000; t <= 5000; t += 10) {
+            resampler.add(accel(t));
+            if (t <= 2000)
+                resampler.add(gyro(t));
+        }
+        long lastCombined = combined.get(combined.size() - 1).getTimestamp();
+        assertEquals(2000, lastCombined);
+        //every accelerometer sample after the last combined reading is passed on, in order
+        long expected = lastCombined + 10;
+        for (SensorReading reading : individual) {
+            if (reading.getTimestamp() <= 1000)
+                continue;
+            assertTrue(reading instanceof AccelerometerReading);
+            assertEquals(expected, reading.getTimestamp());
+            expected += 10;
+        }
+        assertEquals(5010, expected);
+
+        //fusion resumes when the gyroscope returns
+        int before = combined.size();
+        for (long t = 5010; t <= 6000; t += 10) {
+            resampler.add(accel(t));
+            resampler.add(gyro(t));
+        }
+        assertTrue(combined.size() > before + 90);
+        for (IMUReading reading : combined.subList(before, combined.size()))
+            assertTrue(reading.getTimestamp() > 5000);
+    }
+
+    @Test
+    public void testNanosecondTimestamps() {
+        IMUResampler resampler = new IMUResampler(100, TimeUnit.NANOSECONDS, listener);
+        long start = 1445000000123456789L;
+        long period = 10000000L;
+        for (int i = 0; i < 50; i++) {
+            resampler.add(new AccelerometerReading("0", "MOBILE", "phone", start + i * period + 1000, (float) i, 0f, 0f));
+            resampler.add(new GyroscopeReading("0", "MOBILE", "phone", start + i * period + 3000000, 0f, (float) i, 0f));
+        }
+        assertEquals(49, combined.size());
+        double[] values = new double[6];
+        for (int i = 0; i < combined.size(); i++) {
+            IMUReading reading = combined.get(i);
+            if (i > 0)
+                assertEquals(period, reading.getTimestamp() - combined.get(i - 1).getTimestamp());
+            SensorReadingEncoder.forClass(IMUReading.class).readChannels(reading, values);
+            assertEquals((reading.getTimestamp() - start - 1000) / (double) period, values[0], 1e-3);
+            assertEquals((reading.getTimestamp() - start - 3000000) / (double) period, values[4], 1e-3);
+        }
+        //the ticks fall on whole periods since the epoch, despite the overflow of tick * 10^9
+        assertEquals(0, combined.get(0).getTimestamp() % period);
+    }
+
+    @Test
+    public void testNegativeTimestampsAreNotConsumed() {
+        IMUResampler resampler = new IMUResampler(50, listener);
+        assertFalse(resampler.add(accel(-20)));
+        assertEquals(0, individual.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRateFinerThanTimestampsIsRejected() {
+        new IMUResampler(100, TimeUnit.SECONDS, listener);
+    }
+}
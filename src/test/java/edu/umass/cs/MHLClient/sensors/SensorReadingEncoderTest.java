@@ -0,0 +1,187 @@
+package edu.umass.cs.MHLClient.sensors;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import cs.umass.edu.MHLClient.BuildConfig;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the {@link SensorReadingEncoder} writes exactly what the hand-written
+ * {@link SensorReading#toJSONObject()} implementations it replaced used to write, so that
+ * servers parsing the readings see no difference.
+ *
+ * @author Sean Noran
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class SensorReadingEncoderTest {
+
+    /** Values covering integral numbers, negative zero, float widening and large magnitudes. **/
+    private static final float[][] VALUES = {
+            {9f, -0f, 0.1f},
+            {-9.81f, 0f, 1e20f},
+            {123456789f, -1e-7f, 3.5f}
+    };
+
+    private static final String USER_ID = "0123456789";
+
+    /** Builds the reading the way the original implementations did. **/
+    private static JSONObject legacy(SensorReading reading, JSONObject data) throws JSONException {
+        JSONObject obj = reading.getBaseJSONObject();
+        obj.put("data", data);
+        return obj;
+    }
+
+    /** Orders the timestamp first, as the original implementations did. **/
+    private static JSONObject data(SensorReading reading) throws JSONException {
+        return new JSONObject().put("t", reading.getTimestamp());
+    }
+
+    @Test
+    public void testAccelerometerMatchesLegacyEncoding() throws JSONException {
+        for (float[] v : VALUES) {
+            AccelerometerReading reading = new AccelerometerReading(USER_ID, "MOBILE", "phone/1", 1445000000123L, v);
+            JSONObject data = data(reading).put("x", reading.getX()).put("y", reading.getY()).put("z", reading.getZ());
+            assertEquals(legacy(reading, data).toString(), reading.toJSONString());
+        }
+    }
+
+    @Test
+    public void testLabeledGyroscopeMatchesLegacyEncoding() throws JSONException {
+        for (float[] v : VALUES) {
+            GyroscopeReading reading = new GyroscopeReading(USER_ID, "METAWEAR", "C7:42", 1445000000123L, 2, v);
+            JSONObject data = data(reading).put("x", reading.getX()).put("y", reading.getY()).put("z", reading.getZ());
+            assertEquals(legacy(reading, data).toString(), reading.toJSONString());
+        }
+    }
+
+    @Test
+    public void testGPSMatchesLegacyEncoding() throws JSONException {
+        double[][] coordinates = {{42.3868, -72.5301}, {0, -0.0}, {-90, 180}};
+        for (double[] c : coordinates) {
+            GPSReading reading = new GPSReading(USER_ID, "MOBILE", "phone", 1445000000123L, c[0], c[1]);
+            JSONObject data = data(reading).put("latitude", c[0]).put("longitude", c[1]);
+            assertEquals(legacy(reading, data).toString(), reading.toJSONString());
+        }
+    }
+
+    @Test
+    public void testRSSIMatchesLegacyEncoding() throws JSONException {
+        for (int rssi : new int[]{-67, 0, Integer.MIN_VALUE}) {
+            RSSIReading reading = new RSSIReading(USER_ID, "MOBILE", "phone", 1445000000123L, rssi);
+            assertEquals(legacy(reading, data(reading).put("rssi", rssi)).toString(), reading.toJSONString());
+        }
+    }
+
+    @Test
+    public void testAudioBufferMatchesLegacyEncoding() throws JSONException {
+        short[] buffer = {0, -1, Short.MAX_VALUE, Short.MIN_VALUE, 42};
+        AudioBufferReading reading = new AudioBufferReading(USER_ID, "MOBILE", "phone", 1445000000123L, buffer);
+        assertEquals(legacy(reading, data(reading).put("values", new JSONArray(buffer))).toString(), reading.toJSONString());
+    }
+
+    @Test
+    public void testAnnotatedReadingsMatchJSONObject() {
+        SensorReading[] readings = {
+                new IMUReading(USER_ID, "MOBILE", "phone", 1445000000123L, -1, 1f, -0f, 0.25f, 3e9f, 7f, -2.5f),
+                new HeartbeatReading(USER_ID, 1445000000123L, 17),
+                new ControlAckReading(USER_ID, 1445000000123L, 5, false, "no \"sensor\" at a/b\n"),
+                new ControlAckReading(USER_ID, 1445000000123L, 6, true, null),
+                new QualityReading(USER_ID, 1445000000123L, "SENSOR_ACCEL", 2, "features-1000"),
+                new SummaryReading(USER_ID, "MOBILE", "phone", 1445000000123L, "SENSOR_ACCEL", "x,y,z", 1000, 50,
+                        new float[]{0.1f, 0, -0f}, new float[]{-1, 2, 3}, new float[]{1e20f, 2.5f, Float.NaN})
+        };
+        for (SensorReading reading : readings)
+            assertEquals(reading.toJSONObject().toString(), reading.toJSONString());
+    }
+
+    @Test
+    public void testBuiltInReadingsUseGeneratedAccessors() {
+        Class<?>[] classes = {AccelerometerReading.class, GyroscopeReading.class, GPSReading.class, RSSIReading.class,
+                AudioBufferReading.class, IMUReading.class, HeartbeatReading.class, ControlAckReading.class,
+                QualityReading.class, SummaryReading.class};
+        for (Class<?> cls : classes)
+            assertTrue(cls.getSimpleName(), SensorReadingEncoder.forClass(cls.asSubclass(SensorReading.class)).hasAccessor());
+    }
+
+    /** A reading with a private field, which the generated code cannot read. **/
+    private static class PrivateFieldReading extends SensorReading {
+        @SensorField("bpm")
+        private final int beatsPerMinute;
+
+        PrivateFieldReading(int beatsPerMinute){
+            super(USER_ID, "WATCH", "w", "SENSOR_HR", 1445000000123L);
+            this.beatsPerMinute = beatsPerMinute;
+        }
+    }
+
+    @Test
+    public void testPrivateFieldsAreReadByReflection() {
+        SensorReadingEncoder encoder = SensorReadingEncoder.forClass(PrivateFieldReading.class);
+        assertFalse(encoder.hasAccessor());
+        PrivateFieldReading reading = new PrivateFieldReading(72);
+        assertEquals(reading.toJSONObject().toString(), reading.toJSONString());
+        float[] channels = new float[1];
+        encoder.readChannels(reading, channels);
+        assertEquals(72, channels[0], 0);
+    }
+
+    @Test
+    public void testEscapingMatchesJSONObject() throws JSONException {
+        String value = "quote\" slash/ backslash\\ \b\f\n\r\t \u0001 \u001f é";
+        StringBuilder sb = new StringBuilder();
+        SensorReadingEncoder.appendString(sb, value);
+        assertEquals(new JSONObject().put("v", value).toString(), "{\"v\":" + sb + "}");
+    }
+
+    /** A reading that writes its own JSON, as readings did before {@link SensorField} existed. **/
+    private static class HandWrittenReading extends SensorReading {
+        private final int bpm;
+
+        HandWrittenReading(int bpm){
+            super(USER_ID, "WATCH", "w", "SENSOR_HR", 1445000000123L);
+            this.bpm = bpm;
+        }
+
+        @Override
+        protected JSONObject toJSONObject() {
+            JSONObject obj = getBaseJSONObject();
+            try {
+                obj.put("data", new JSONObject().put("t", timestamp).put("bpm", bpm));
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+            return obj;
+        }
+    }
+
+    @Test
+    public void testHandWrittenReadingNeedsNoAnnotations() {
+        HandWrittenReading reading = new HandWrittenReading(72);
+        assertEquals(reading.toJSONObject().toString(), reading.toJSONString());
+        assertNull(reading.toCompactJSONString(1));
+    }
+
+    /** A reading that neither annotates its fields nor writes its own JSON. **/
+    private static class UnencodableReading extends SensorReading {
+        UnencodableReading(){
+            super(USER_ID, "WATCH", "w", "SENSOR_HR", 1445000000123L);
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnencodableReadingFailsOnSerialization() {
+        //construction succeeds, the encoding is only resolved when the reading is serialized
+        new UnencodableReading().toJSONString();
+    }
+}
@@ -0,0 +1,100 @@
+package edu.umass.cs.MHLClient.structures;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the {@link ReadingSpillFile} delivers spilled readings at least once: a taken
+ * file that was not released, as when the connection is lost while sending it, is taken again.
+ *
+ * @author Sean Noran
+ */
+public class ReadingSpillFileTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("spill", "");
+        assertTrue(directory.delete() && directory.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files)
+                file.delete();
+        }
+        directory.delete();
+    }
+
+    private static List<String> readLines(File file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null)
+                lines.add(line);
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+
+    @Test
+    public void testTakeReturnsSpilledReadingsAndStartsANewFile() throws IOException {
+        ReadingSpillFile spill = new ReadingSpillFile(directory, "spill", 1024);
+        assertNull(spill.take());
+        assertTrue(spill.append("a"));
+        assertTrue(spill.append("b"));
+        assertEquals(2, spill.size());
+
+        File taken = spill.take();
+        assertEquals(Arrays.asList("a", "b"), readLines(taken));
+        assertEquals(0, spill.size());
+        assertTrue(spill.append("c"));
+        spill.release(taken);
+        assertFalse(taken.exists());
+
+        assertEquals(Arrays.asList("c"), readLines(spill.take()));
+    }
+
+    @Test
+    public void testUnreleasedFileIsTakenAgain() throws IOException {
+        ReadingSpillFile spill = new ReadingSpillFile(directory, "spill", 1024);
+        spill.append("a");
+        spill.append("b");
+        File taken = spill.take();
+        //the connection is lost while sending, readings spilled meanwhile wait for the next take
+        spill.append("c");
+        File retaken = spill.take();
+        assertEquals(taken, retaken);
+        assertEquals(Arrays.asList("a", "b"), readLines(retaken));
+        spill.release(retaken);
+        assertEquals(Arrays.asList("c"), readLines(spill.take()));
+    }
+
+    @Test
+    public void testFullFileRejectsReadings() {
+        ReadingSpillFile spill = new ReadingSpillFile(directory, "spill", 10);
+        assertTrue(spill.append("0123"));
+        assertTrue(spill.append("4567"));
+        assertFalse(spill.append("8"));
+        assertEquals(2, spill.size());
+    }
+}
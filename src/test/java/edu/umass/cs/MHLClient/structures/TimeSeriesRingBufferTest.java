@@ -0,0 +1,147 @@
+package edu.umass.cs.MHLClient.structures;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the {@link TimeSeriesRingBuffer} with a single writer, including readers that race
+ * with a writer overwriting a small buffer: every sample that passes validation must be
+ * consistent, i.e. all of its values must belong to the same sample.
+ *
+ * @author Sean Noran
+ */
+public class TimeSeriesRingBufferTest {
+
+    /** The number of samples added by the writer of the concurrent tests. **/
+    private static final int SAMPLES = 2000000;
+
+    @Test
+    public void testRetainsOneSampleLessThanSlots() {
+        TimeSeriesRingBuffer buffer = new TimeSeriesRingBuffer(4, 3);
+        assertEquals(8, buffer.getCapacity());
+        for (int i = 0; i < 20; i++)
+            buffer.add(i * 10, i, 2 * i, -i);
+        assertEquals(20, buffer.getCount());
+        assertEquals(13, buffer.getOldestIndex());
+        assertTrue(buffer.isAvailable(13));
+        assertTrue(!buffer.isAvailable(12));
+        assertTrue(!buffer.isAvailable(20));
+        assertEquals(190, buffer.getTimestamp(19));
+        assertEquals(-19f, buffer.getValue(19, 2), 0);
+    }
+
+    @Test
+    public void testFloorIndex() {
+        TimeSeriesRingBuffer buffer = new TimeSeriesRingBuffer(8, 1);
+        assertEquals(-1, buffer.floorIndex(100));
+        for (int i = 0; i < 30; i++)
+            buffer.add(i * 10, new float[]{i});
+        assertEquals(-1, buffer.floorIndex(100));
+        assertEquals(15, buffer.floorIndex(150));
+        assertEquals(15, buffer.floorIndex(159));
+        assertEquals(29, buffer.floorIndex(1000));
+    }
+
+    @Test
+    public void testConcurrentReadersSeeConsistentSamples() throws InterruptedException {
+        final TimeSeriesRingBuffer buffer = new TimeSeriesRingBuffer(16, 3);
+        final AtomicReference<String> failure = new AtomicReference<>();
+        final long[] validated = new long[2];
+
+        Thread[] readers = new Thread[2];
+        for (int r = 0; r < readers.length; r++) {
+            final int id = r;
+            readers[r] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(id);
+                    while (failure.get() == null && buffer.getCount() < SAMPLES) {
+                        long n = buffer.getCount();
+                        if (n == 0)
+                            continue;
+                        long oldest = buffer.getOldestIndex();
+                        long index = oldest + (long) (random.nextDouble() * (n - oldest));
+                        long t = buffer.getTimestamp(index);
+                        float x = buffer.getValue(index, 0);
+                        float y = buffer.getValue(index, 1);
+                        float z = buffer.getValue(index, 2);
+                        if (!buffer.isAvailable(index))
+                            continue;
+                        if (t != index || x != index || y != 2f * index || z != -index) {
+                            failure.set("sample " + index + " read as " + t + ": " + x + ", " + y + ", " + z);
+                            return;
+                        }
+                        validated[id]++;
+                    }
+                }
+            });
+            readers[r].start();
+        }
+        writeSamples(buffer);
+        for (Thread reader : readers)
+            reader.join();
+        assertNull(failure.get());
+        assertTrue(validated[0] > 0 && validated[1] > 0);
+    }
+
+    @Test
+    public void testConcurrentFloorIndexAndViews() throws InterruptedException {
+        final TimeSeriesRingBuffer buffer = new TimeSeriesRingBuffer(64, 3);
+        final AtomicReference<String> failure = new AtomicReference<>();
+        final long[] validated = new long[1];
+
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (failure.get() == null && buffer.getCount() < SAMPLES) {
+                    long n = buffer.getCount();
+                    if (n < 32)
+                        continue;
+                    long target = n - 16;
+                    long floor = buffer.floorIndex(target);
+                    //the result is exact if it was not overwritten, otherwise the search restarted
+                    if (floor >= 0 && floor != target) {
+                        failure.set("floor of " + target + " was " + floor);
+                        return;
+                    }
+                    TimeSeriesView view = new TimeSeriesView(buffer, target - 8, 8, 1);
+                    long sum = 0;
+                    for (int i = 0; i < view.size(); i++)
+                        sum += view.getTimestamp(i) - (long) view.getValue(i, 0);
+                    if (!view.isValid())
+                        continue;
+                    if (sum != 0) {
+                        failure.set("torn view at " + (target - 8));
+                        return;
+                    }
+                    validated[0]++;
+                }
+            }
+        });
+        reader.start();
+        writeSamples(buffer);
+        reader.join();
+        assertNull(failure.get());
+        assertTrue(validated[0] > 0);
+    }
+
+    private static void writeSamples(TimeSeriesRingBuffer buffer){
+        float[] sample = new float[3];
+        for (int i = 0; i < SAMPLES; i++) {
+            if ((i & 1) == 0) {
+                buffer.add(i, i, 2f * i, -i);
+            } else {
+                sample[0] = i;
+                sample[1] = 2f * i;
+                sample[2] = -i;
+                buffer.add(i, sample);
+            }
+        }
+    }
+}